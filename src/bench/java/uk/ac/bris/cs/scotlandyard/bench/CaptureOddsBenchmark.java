@@ -0,0 +1,66 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.CaptureOdds;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.TransportAdjacency;
+
+/**
+ * Measures {@link CaptureOdds} with five detectives on the standard map and on a large synthetic
+ * graph, MrX spread over a handful of random stations. Divide by the rounds for the cost of one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureOddsBenchmark {
+
+	@Param({"standard", "synthetic"}) public String graph;
+	@Param({"1", "5"}) public int rounds;
+
+	private CaptureOdds odds;
+	private double[] belief;
+	private int[] locations;
+	private int[] masks;
+
+	@Setup public void setUp() throws IOException {
+		var map = "standard".equals(graph)
+				? ScotlandYard.standardGraph()
+				: ReachabilityKernelBenchmark.syntheticGraph(8192, 4, 42);
+		odds = new CaptureOdds(map);
+		var nodes = map.nodes().toArray(new Integer[0]);
+		var random = new SplittableRandom(47);
+		belief = new double[nodes.length + 1];
+		for (int i = 0; i < 8; i++) belief[nodes[random.nextInt(nodes.length)]] += 1.0 / 8;
+		locations = new int[5];
+		masks = new int[5];
+		for (int d = 0; d < locations.length; d++) {
+			locations[d] = nodes[random.nextInt(nodes.length)];
+			masks[d] = d == 0 ? TransportAdjacency.mask(Transport.TAXI)
+					: TransportAdjacency.mask(Transport.TAXI, Transport.BUS, Transport.UNDERGROUND);
+		}
+	}
+
+	@Benchmark public double compute() {
+		odds.compute(belief, TransportAdjacency.ALL, locations, masks, rounds);
+		return odds.capture();
+	}
+}
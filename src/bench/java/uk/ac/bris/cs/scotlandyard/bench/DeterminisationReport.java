@@ -0,0 +1,40 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.ui.ai.IsmctsDetectiveAi;
+
+/**
+ * Measures how many determinisations {@link IsmctsDetectiveAi} searches per second on one core,
+ * over mid-game positions with the detectives to move. The first positions only warm up. Run with
+ * {@code mvn -Pbench test-compile exec:exec
+ * -Dbench.main=uk.ac.bris.cs.scotlandyard.bench.DeterminisationReport
+ * -Dbench.args="<budget ms> <positions>"}.
+ */
+public final class DeterminisationReport {
+
+	private static final int WARMUP = 4;
+
+	private DeterminisationReport() {}
+
+	public static void main(String[] args) throws IOException {
+		long budget = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		var positions = Positions.midGame(WARMUP + count, 37, false);
+		var ai = new IsmctsDetectiveAi();
+		double[] rates = new double[count];
+		for (int i = 0; i < positions.size(); i++) {
+			GameState state = positions.get(i);
+			ai.onStart();
+			ai.pickMove(state, Budget.of(budget, TimeUnit.MILLISECONDS));
+			if (i >= WARMUP) rates[i - WARMUP] = ai.determinisationsPerSecond();
+		}
+		Arrays.sort(rates);
+		System.out.printf("determinisations/s over %d positions: median %.0f, min %.0f, max %.0f%n",
+				count, rates[count / 2], rates[0], rates[count - 1]);
+	}
+}
@@ -0,0 +1,73 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.ui.ai.AlphaBetaDetectiveAi;
+
+/**
+ * Scaling of {@link AlphaBetaDetectiveAi}'s Lazy SMP search from 1 to 32 threads.
+ * <br>
+ * For every thread count this reports nodes per second and the mean time to first complete each
+ * depth the single threaded search reached on every position. Each search starts from an empty
+ * table. Run with
+ * {@code mvn -Pbench test-compile exec:exec
+ * -Dbench.main=uk.ac.bris.cs.scotlandyard.bench.LazySmpReport
+ * -Dbench.args="<max threads> <budget ms> <positions> <table MB>"}.
+ */
+public final class LazySmpReport {
+
+	private LazySmpReport() {}
+
+	public static void main(String[] args) throws IOException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		long budget = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+		int megabytes = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+		var positions = Positions.midGame(count, 11, false);
+		System.out.printf("%d positions, %d ms per move, %d MB table, %d processors%n",
+				positions.size(), budget, megabytes, Runtime.getRuntime().availableProcessors());
+		int common = Integer.MAX_VALUE;
+		StringBuilder header = new StringBuilder(String.format("%8s %14s", "threads", "nodes/s"));
+		boolean first = true;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			long nodes = 0;
+			long elapsed = 0;
+			long[] depthTotals = new long[65];
+			int[] depthCounts = new int[65];
+			for (GameState position : positions) {
+				// a fresh Ai so no position profits from the table of another
+				var ai = new AlphaBetaDetectiveAi(threads, megabytes);
+				long start = System.nanoTime();
+				ai.pickMove(position, new Pair<>(budget, TimeUnit.MILLISECONDS));
+				elapsed += System.nanoTime() - start;
+				nodes += ai.lastNodes();
+				long[] times = ai.lastDepthTimes();
+				for (int d = 1; d < times.length; d++) {
+					if (times[d] == 0) continue;
+					depthTotals[d] += times[d];
+					depthCounts[d]++;
+				}
+				if (first) common = Math.min(common, ai.lastDepth());
+				ai.onTerminate();
+			}
+			if (first) {
+				for (int d = 1; d <= common; d++) header.append(String.format(" %9s", "d" + d));
+				System.out.println(header.append("  (ms to depth)"));
+				first = false;
+			}
+			var row = new StringBuilder(String.format("%8d %14.0f", threads,
+					nodes * 1e9 / Math.max(1, elapsed)));
+			for (int d = 1; d <= common; d++) {
+				row.append(depthCounts[d] == positions.size()
+						? String.format(" %9.1f", depthTotals[d] / 1e6 / depthCounts[d])
+						: String.format(" %9s", "-"));
+			}
+			System.out.println(row);
+		}
+	}
+}
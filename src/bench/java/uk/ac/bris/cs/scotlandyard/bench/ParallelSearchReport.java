@@ -0,0 +1,66 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.ui.ai.MctsMrXAi;
+import uk.ac.bris.cs.scotlandyard.ui.ai.MctsMrXAi.Parallelism;
+
+/**
+ * Compares the {@link Parallelism} modes of {@link MctsMrXAi} as the number of threads grows.
+ * <br>
+ * Throughput is playouts per second. Decision quality is how often a mode picks the same move as
+ * a reference search given eight times the budget on all threads, over a fixed set of mid-game
+ * positions. Run with
+ * {@code mvn -Pbench test-compile exec:exec
+ * -Dbench.main=uk.ac.bris.cs.scotlandyard.bench.ParallelSearchReport
+ * -Dbench.args="<max threads> <budget ms> <positions>"}.
+ */
+public final class ParallelSearchReport {
+
+	private ParallelSearchReport() {}
+
+	public static void main(String[] args) throws IOException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+				: Math.min(32, Runtime.getRuntime().availableProcessors());
+		long budget = args.length > 1 ? Long.parseLong(args[1]) : 500;
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+		var positions = Positions.midGame(count, 7, true);
+		System.out.printf("%d positions, %d ms per move, reference %d ms on %d threads%n",
+				positions.size(), budget, budget * 8, maxThreads);
+		List<Move> reference = new ArrayList<>();
+		var referenceAi = new MctsMrXAi(maxThreads, Parallelism.TREE);
+		for (GameState position : positions) {
+			referenceAi.onStart();
+			reference.add(referenceAi.pickMove(position,
+					new Pair<>(budget * 8, TimeUnit.MILLISECONDS)));
+		}
+		referenceAi.onTerminate();
+
+		System.out.printf("%8s  %-20s %14s %10s%n", "threads", "mode", "playouts/s", "agreement");
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			for (Parallelism mode : Parallelism.values()) {
+				var ai = new MctsMrXAi(threads, mode);
+				double rate = 0;
+				int agreed = 0;
+				for (int i = 0; i < positions.size(); i++) {
+					ai.onStart();
+					Move move = ai.pickMove(positions.get(i),
+							new Pair<>(budget, TimeUnit.MILLISECONDS));
+					rate += ai.playoutsPerSecond();
+					if (move.equals(reference.get(i))) agreed++;
+				}
+				ai.onTerminate();
+				System.out.printf("%8d  %-20s %14.0f %9.0f%%%n", threads, mode,
+						rate / positions.size(), 100.0 * agreed / positions.size());
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * Reproducible positions for benchmarks and reports
+ */
+final class Positions {
+
+	private Positions() {}
+
+	/**
+	 * @param count how many positions
+	 * @param seed the seed
+	 * @param mrXToMove whether MrX or the first detective of a round is to move
+	 * @return positions a few rounds into standard five detective games played at random
+	 */
+	static ImmutableList<GameState> midGame(int count, long seed, boolean mrXToMove)
+			throws IOException {
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		var random = new SplittableRandom(seed);
+		var positions = ImmutableList.<GameState>builder();
+		int found = 0;
+		while (found < count) {
+			int game = random.nextInt();
+			var detectives = ScotlandYard.generateDetectiveLocations(game, 5);
+			var pieces = ScotlandYard.DETECTIVES.asList();
+			var players = ImmutableList.<Player>builder();
+			for (int i = 0; i < detectives.size(); i++)
+				players.add(new Player(pieces.get(i), ScotlandYard.defaultDetectiveTickets(),
+						detectives.get(i)));
+			GameState state = new MyGameStateFactory().build(setup,
+					new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+							ScotlandYard.generateMrXLocation(game)),
+					players.build());
+			// a few rounds in, so the detectives have closed in somewhat
+			int plies = 6 * (1 + random.nextInt(4)) + (mrXToMove ? 0 : 1);
+			for (int ply = 0; ply < plies && !state.getAvailableMoves().isEmpty(); ply++) {
+				var moves = state.getAvailableMoves().asList();
+				state = state.advance(moves.get(random.nextInt(moves.size())));
+			}
+			var moves = state.getAvailableMoves();
+			if (moves.isEmpty()) continue;
+			var movers = moves.stream().map(m -> m.commencedBy()).distinct().count();
+			boolean mrX = moves.iterator().next().commencedBy().isMrX();
+			if (mrX != mrXToMove || !mrX && movers != detectives.size()) continue;
+			positions.add(state);
+			found++;
+		}
+		return positions.build();
+	}
+}
@@ -0,0 +1,111 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.MutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.ReachabilityKernel;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.TransportAdjacency;
+
+/**
+ * Compares the scalar and vector {@link ReachabilityKernel}s on batches of random bitsets, on the
+ * standard map and on a large synthetic graph.
+ * <br>
+ * The vector kernel only exists when built with the {@code vector} profile; without it the
+ * {@code vector} runs fall back to scalar, which shows up in the reported kernel name.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ReachabilityKernelBenchmark {
+
+	@Param({"standard", "synthetic"}) public String graph;
+	@Param({"scalar", "vector"}) public String kernel;
+	@Param({"256"}) public int batch;
+
+	private ReachabilityKernel implementation;
+	private long[] in;
+	private long[] out;
+	private long[] exclude;
+
+	@Setup public void setUp() throws IOException {
+		var adjacency = TransportAdjacency.of("standard".equals(graph)
+				? ScotlandYard.standardGraph()
+				: syntheticGraph(8192, 4, 42));
+		implementation = "vector".equals(kernel)
+				? ReachabilityKernel.create(adjacency)
+				: ReachabilityKernel.scalar(adjacency);
+		int words = adjacency.words();
+		var random = new SplittableRandom(7);
+		in = new long[batch * words];
+		out = new long[batch * words];
+		exclude = new long[words];
+		for (int b = 0; b < batch; b++)
+			for (int i = 0; i < 8; i++) set(in, b * words, 1 + random.nextInt(adjacency.nodes() - 1));
+		for (int i = 0; i < 5; i++) set(exclude, 0, 1 + random.nextInt(adjacency.nodes() - 1));
+		System.out.println("\n# kernel: " + implementation.name());
+	}
+
+	private static void set(long[] bits, int base, int node) {
+		bits[base + (node >>> 6)] |= 1L << node;
+	}
+
+	/**
+	 * A random connected graph with the standard map's mix of transports: a taxi ring plus
+	 * random taxi, bus and underground chords.
+	 */
+	static ImmutableValueGraph<Integer, ImmutableSet<Transport>> syntheticGraph(
+			int nodes, int degree, long seed) {
+		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
+				ValueGraphBuilder.undirected().expectedNodeCount(nodes).build();
+		var random = new SplittableRandom(seed);
+		for (int n = 1; n <= nodes; n++) graph.addNode(n);
+		for (int n = 1; n <= nodes; n++) {
+			graph.putEdgeValue(n, n % nodes + 1, ImmutableSet.of(Transport.TAXI));
+			for (int d = 0; d < degree; d++) {
+				int other = 1 + random.nextInt(nodes);
+				if (other == n) continue;
+				int pick = random.nextInt(10);
+				var transport = pick < 6 ? Transport.TAXI
+						: pick < 9 ? Transport.BUS : Transport.UNDERGROUND;
+				graph.putEdgeValue(n, other, ImmutableSet.of(transport));
+			}
+		}
+		return ImmutableValueGraph.copyOf(graph);
+	}
+
+	@Benchmark public void expandAllTransports(Blackhole hole) {
+		implementation.expandBatch(in, out, batch, TransportAdjacency.ALL, exclude);
+		hole.consume(out);
+	}
+
+	@Benchmark public void expandTaxi(Blackhole hole) {
+		implementation.expandBatch(in, out, batch,
+				TransportAdjacency.mask(Transport.TAXI), exclude);
+		hole.consume(out);
+	}
+
+}
@@ -0,0 +1,100 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.BeliefTracker;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ReachabilityKernel;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.Territory;
+import uk.ac.bris.cs.scotlandyard.model.TransportAdjacency;
+
+/**
+ * Measures one {@link Territory} computation on mid game positions with five detectives, MrX
+ * either at one station or wherever the detectives believe he could be.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TerritoryBenchmark {
+
+	private static final int POSITIONS = 64;
+
+	@Param({"located", "belief"}) public String mrX;
+
+	private Territory territory;
+	private GameState[] positions;
+	private long[][] starts;
+	private int[] mrXMasks;
+	private int[][] locations;
+	private int[][] masks;
+	private int next;
+
+	@Setup public void setUp() throws IOException {
+		var kernel = ReachabilityKernel.create(TransportAdjacency.of(ScotlandYard.standardGraph()));
+		territory = new Territory(kernel);
+		var games = Positions.midGame(POSITIONS, 46, false);
+		positions = games.toArray(new GameState[0]);
+		starts = new long[POSITIONS][];
+		for (int i = 0; i < POSITIONS; i++) {
+			var tracker = BeliefTracker.forSetup(kernel, positions[i].getSetup());
+			tracker.sync(positions[i]);
+			starts[i] = tracker.stations();
+			if ("located".equals(mrX)) {
+				// any one of the places he could be
+				long[] one = new long[starts[i].length];
+				for (int w = 0; w < one.length; w++) {
+					if (starts[i][w] == 0) continue;
+					one[w] = Long.lowestOneBit(starts[i][w]);
+					break;
+				}
+				starts[i] = one;
+			}
+		}
+		mrXMasks = new int[POSITIONS];
+		locations = new int[POSITIONS][];
+		masks = new int[POSITIONS][];
+		for (int i = 0; i < POSITIONS; i++) {
+			var board = positions[i];
+			mrXMasks[i] = Territory.mask(board.getPlayerTickets(Piece.MrX.MRX).orElseThrow());
+			var detectives = board.getPlayers().stream().filter(Piece::isDetective).toList();
+			locations[i] = detectives.stream().mapToInt(piece ->
+					board.getDetectiveLocation((Piece.Detective) piece).orElseThrow()).toArray();
+			masks[i] = detectives.stream().mapToInt(piece ->
+					Territory.mask(board.getPlayerTickets(piece).orElseThrow())).toArray();
+		}
+		System.out.println("\n# kernel: " + kernel.name());
+	}
+
+	@Benchmark public int compute() {
+		int i = next++ & (POSITIONS - 1);
+		territory.compute(positions[i], starts[i]);
+		return territory.mrXSize();
+	}
+
+	/**
+	 * The search alone, with the stations and transports already read off the board
+	 */
+	@Benchmark public int computeFromArrays() {
+		int i = next++ & (POSITIONS - 1);
+		territory.compute(starts[i], mrXMasks[i], locations[i], masks[i]);
+		return territory.mrXSize();
+	}
+}
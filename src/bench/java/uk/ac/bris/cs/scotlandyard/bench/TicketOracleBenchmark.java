@@ -0,0 +1,73 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.TicketOracle;
+
+/**
+ * Measures {@link TicketOracle} queries on the standard map with random stations and detective
+ * sized ticket counts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TicketOracleBenchmark {
+
+	private static final int QUERIES = 1024;
+
+	private TicketOracle oracle;
+	private int[] queries;
+	private long[] reachable;
+	private int next;
+
+	@Setup public void setUp() throws IOException {
+		var graph = ScotlandYard.standardGraph();
+		long start = System.nanoTime();
+		oracle = TicketOracle.of(graph);
+		System.out.printf("%n# built in %d ms%n",
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		var nodes = graph.nodes().toArray(new Integer[0]);
+		var random = new SplittableRandom(11);
+		queries = new int[QUERIES * 5];
+		for (int i = 0; i < queries.length; i += 5) {
+			queries[i] = nodes[random.nextInt(nodes.length)];
+			queries[i + 1] = nodes[random.nextInt(nodes.length)];
+			queries[i + 2] = random.nextInt(12);
+			queries[i + 3] = random.nextInt(9);
+			queries[i + 4] = random.nextInt(5);
+		}
+		reachable = new long[(oracle.nodes() + 63) >>> 6];
+	}
+
+	@Benchmark public int distance() {
+		int i = next;
+		next = (next + 5) % queries.length;
+		return oracle.distance(queries[i], queries[i + 1], queries[i + 2], queries[i + 3],
+				queries[i + 4]);
+	}
+
+	@Benchmark public void reachableInThreeMoves(Blackhole hole) {
+		int i = next;
+		next = (next + 5) % queries.length;
+		oracle.reachable(queries[i], 3, queries[i + 2], queries[i + 3], queries[i + 4], reachable);
+		hole.consume(reachable);
+	}
+}
@@ -0,0 +1,96 @@
+package uk.ac.bris.cs.scotlandyard.bench;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.ui.ai.AlphaBetaDetectiveAi;
+import uk.ac.bris.cs.scotlandyard.ui.ai.MctsMrXAi;
+import uk.ac.bris.cs.scotlandyard.ui.ai.MctsMrXAi.Parallelism;
+
+/**
+ * Compares {@link MctsMrXAi} with and without progressive widening at equal time.
+ * <br>
+ * Throughput is playouts per second. Decision quality is how often a search picks the same move
+ * as a reference search without widening given eight times the budget, over mid-game positions
+ * where MrX still holds double and secret tickets, and how many of the games played on from those
+ * positions against {@link AlphaBetaDetectiveAi} detectives, each given a fifth of the budget,
+ * MrX wins. Run with
+ * {@code mvn -Pbench test-compile exec:exec
+ * -Dbench.main=uk.ac.bris.cs.scotlandyard.bench.WideningReport
+ * -Dbench.args="<threads> <budget ms> <positions>"}.
+ */
+public final class WideningReport {
+
+	private WideningReport() {}
+
+	private static MctsMrXAi ai(int threads, boolean widening) {
+		System.setProperty(MctsMrXAi.WIDENING_PROPERTY, Boolean.toString(widening));
+		System.setProperty(MctsMrXAi.PONDER_THREADS_PROPERTY, "0");
+		return new MctsMrXAi(threads, Parallelism.TREE);
+	}
+
+	/**
+	 * @return whether MrX wins the game played on from the position
+	 */
+	private static boolean mrXWins(GameState state, MctsMrXAi mrX, AlphaBetaDetectiveAi detectives,
+	                               long budget) {
+		mrX.onStart();
+		detectives.onStart();
+		while (state.getWinner().isEmpty()) {
+			boolean mrXToMove = state.getAvailableMoves().iterator().next().commencedBy().isMrX();
+			state = state.advance(mrXToMove
+					? mrX.pickMove(state, new Pair<>(budget, TimeUnit.MILLISECONDS))
+					: detectives.pickMove(state, new Pair<>(budget / 5, TimeUnit.MILLISECONDS)));
+		}
+		return state.getWinner().contains(Piece.MrX.MRX);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int threads = args.length > 0 ? Integer.parseInt(args[0])
+				: Runtime.getRuntime().availableProcessors();
+		long budget = args.length > 1 ? Long.parseLong(args[1]) : 500;
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+		var positions = Positions.midGame(count, 48, true);
+		System.out.printf("%d positions, %d ms per move on %d threads, reference %d ms%n",
+				positions.size(), budget, threads, budget * 8);
+		List<Move> reference = new ArrayList<>();
+		var referenceAi = ai(threads, false);
+		for (GameState position : positions) {
+			referenceAi.onStart();
+			reference.add(referenceAi.pickMove(position,
+					new Pair<>(budget * 8, TimeUnit.MILLISECONDS)));
+		}
+		referenceAi.onTerminate();
+
+		var detectives = new AlphaBetaDetectiveAi(threads, 16);
+		System.out.printf("%-10s %14s %10s %10s%n", "widening", "playouts/s", "agreement",
+				"MrX wins");
+		for (boolean widening : new boolean[]{false, true}) {
+			var ai = ai(threads, widening);
+			double rate = 0;
+			int agreed = 0;
+			for (int i = 0; i < positions.size(); i++) {
+				ai.onStart();
+				Move move = ai.pickMove(positions.get(i), new Pair<>(budget, TimeUnit.MILLISECONDS));
+				rate += ai.playoutsPerSecond();
+				if (move.equals(reference.get(i))) agreed++;
+			}
+			int won = 0;
+			for (GameState position : positions)
+				if (mrXWins(position, ai, detectives, budget)) won++;
+			ai.onTerminate();
+			System.out.printf("%-10s %14.0f %9.0f%% %9.0f%%%n", widening ? "on" : "off",
+					rate / positions.size(), 100.0 * agreed / positions.size(),
+					100.0 * won / positions.size());
+		}
+		detectives.onTerminate();
+	}
+}
@@ -0,0 +1,132 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * Compares the {@link Rollouts} policy with uniformly random plies through
+ * {@link GameState#advance}, the policy it replaced, on mid-game positions with MrX to move.
+ * <br>
+ * Throughput is rollouts per second. Variance is the standard deviation of the rewards of
+ * repeated rollouts from the same position, averaged over positions. Lives in the AI package to
+ * reach the package private policy. Run with
+ * {@code mvn -Pbench test-compile exec:exec
+ * -Dbench.main=uk.ac.bris.cs.scotlandyard.ui.ai.RolloutReport
+ * -Dbench.args="<positions> <rollouts per position>"}.
+ */
+public final class RolloutReport {
+
+	private static final int SAFE_DISTANCE = 5;
+
+	private RolloutReport() {}
+
+	private interface Policy {
+		double mrXReward(GameState state, int mrXLocation, SplittableRandom random);
+	}
+
+	/**
+	 * The replaced policy: {@link Rollouts#PLIES} uniformly random plies, then the nearest
+	 * detective's distance
+	 */
+	private static double uniform(GameState state, int mrXLocation, byte[][] distances,
+	                              SplittableRandom random) {
+		for (int ply = 0; ply < Rollouts.PLIES; ply++) {
+			var moves = state.getAvailableMoves().asList();
+			if (moves.isEmpty()) return state.getWinner().contains(Piece.MrX.MRX) ? 1 : 0;
+			Move move = moves.get(random.nextInt(moves.size()));
+			if (move.commencedBy().isMrX()) mrXLocation = MctsNode.destination(move);
+			state = state.advance(move);
+		}
+		if (!state.getWinner().isEmpty()) return state.getWinner().contains(Piece.MrX.MRX) ? 1 : 0;
+		int nearest = SAFE_DISTANCE;
+		for (Piece piece : state.getPlayers()) {
+			if (!piece.isDetective()) continue;
+			int distance = distances[state.getDetectiveLocation((Detective) piece).orElseThrow()]
+					[mrXLocation];
+			if (distance >= 0) nearest = Math.min(nearest, distance);
+		}
+		return (double) nearest / SAFE_DISTANCE;
+	}
+
+	private static ImmutableList<GameState> positions(int count, long seed) throws IOException {
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		var random = new SplittableRandom(seed);
+		var positions = ImmutableList.<GameState>builder();
+		int found = 0;
+		while (found < count) {
+			int game = random.nextInt();
+			var detectives = ScotlandYard.generateDetectiveLocations(game, 5);
+			var pieces = ScotlandYard.DETECTIVES.asList();
+			var players = ImmutableList.<Player>builder();
+			for (int i = 0; i < detectives.size(); i++)
+				players.add(new Player(pieces.get(i), ScotlandYard.defaultDetectiveTickets(),
+						detectives.get(i)));
+			GameState state = new MyGameStateFactory().build(setup,
+					new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(),
+							ScotlandYard.generateMrXLocation(game)),
+					players.build());
+			int plies = 6 * (1 + random.nextInt(4));
+			for (int ply = 0; ply < plies && !state.getAvailableMoves().isEmpty(); ply++) {
+				var moves = state.getAvailableMoves().asList();
+				state = state.advance(moves.get(random.nextInt(moves.size())));
+			}
+			if (!state.getWinner().isEmpty() || !Boards.isMrXTurn(state)) continue;
+			positions.add(state);
+			found++;
+		}
+		return positions.build();
+	}
+
+	private static void report(String name, Policy policy, ImmutableList<GameState> positions,
+	                           int rollouts) {
+		var random = new SplittableRandom(49);
+		double deviation = 0;
+		double mean = 0;
+		long start = System.nanoTime();
+		for (GameState position : positions) {
+			int mrX = Boards.mrXLocation(position);
+			double sum = 0;
+			double squares = 0;
+			for (int i = 0; i < rollouts; i++) {
+				double reward = policy.mrXReward(position, mrX, random);
+				sum += reward;
+				squares += reward * reward;
+			}
+			double average = sum / rollouts;
+			mean += average;
+			deviation += Math.sqrt(Math.max(0, squares / rollouts - average * average));
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%-8s %14.0f %10.3f %10.3f%n", name,
+				positions.size() * rollouts / seconds, mean / positions.size(),
+				deviation / positions.size());
+	}
+
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int rollouts = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		var positions = positions(count, 49);
+		var tables = RolloutTables.of(positions.get(0).getSetup().graph);
+		byte[][] distances = tables.distances();
+		Policy uniform = (state, mrX, random) -> uniform(state, mrX, distances, random);
+		Policy table = (state, mrX, random) -> Rollouts.mrXReward(state, mrX, tables, random);
+		System.out.printf("%d positions, %d rollouts each%n", count, rollouts);
+		System.out.printf("%-8s %14s %10s %10s%n", "policy", "rollouts/s", "mean", "stddev");
+		// once each to warm up
+		report("uniform", uniform, positions, rollouts / 4);
+		report("table", table, positions, rollouts / 4);
+		report("uniform", uniform, positions, rollouts);
+		report("table", table, positions, rollouts);
+	}
+}
@@ -0,0 +1,240 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * A dense, deterministic numbering of every move that can ever be made on a given
+ * {@link GameSetup}. Ids run from 0 to {@link #size()} - 1 so AIs can key plain arrays by them.
+ * <br>
+ * The space is made of steps: a (source, ticket, destination) triple for every edge and
+ * transport of the graph, plus a secret step for every edge. Ids are laid out as
+ * <ol>
+ * <li>MrX single moves, one per step</li>
+ * <li>MrX double moves, one per pair of consecutive steps</li>
+ * <li>single moves of each detective in {@link ScotlandYard#ALL_PIECES} order, one per
+ * non-secret step</li>
+ * </ol>
+ * Steps are numbered by source, then destination, then ticket; non-secret steps come first.
+ * The numbering only depends on the graph so it is the same on every run.
+ */
+public final class ActionSpace {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private final GameSetup setup;
+	private final int[] stepSource;
+	private final int[] stepDestination;
+	private final byte[] stepTicket;
+	// steps leaving each node, CSR style: stepsOf[stepStart[n] .. stepStart[n + 1]]
+	private final int[] stepStart;
+	private final int[] stepsOf;
+	// position of each step in stepsOf relative to stepStart of its source
+	private final int[] localIndex;
+	// first double move id (relative to the double block) starting with each step
+	private final int[] doubleStart;
+	private final int plainSteps;
+	private final int doubles;
+	private final int size;
+
+	/**
+	 * @param setup the setup to number moves for
+	 */
+	public ActionSpace(@Nonnull GameSetup setup) {
+		this.setup = Objects.requireNonNull(setup);
+		var graph = setup.graph;
+		int[] nodes = graph.nodes().stream().mapToInt(Integer::intValue).sorted().toArray();
+		int maxNode = nodes.length == 0 ? 0 : nodes[nodes.length - 1];
+		if (nodes.length > 0 && nodes[0] < 0)
+			throw new IllegalArgumentException("Graph contains negative nodes");
+
+		int edges = 0;
+		int plain = 0;
+		for (int source : nodes) {
+			for (int destination : graph.adjacentNodes(source)) {
+				edges++;
+				for (Transport t : transports(source, destination))
+					if (t.requiredTicket() != Ticket.SECRET) plain++;
+			}
+		}
+		int steps = plain + edges;
+		this.plainSteps = plain;
+		this.stepSource = new int[steps];
+		this.stepDestination = new int[steps];
+		this.stepTicket = new byte[steps];
+
+		int id = 0;
+		for (int source : nodes) {
+			for (int destination : sortedAdjacent(source)) {
+				for (Ticket ticket : TICKETS) {
+					if (ticket == Ticket.SECRET) continue;
+					for (Transport t : transports(source, destination)) {
+						if (t.requiredTicket() != ticket) continue;
+						stepSource[id] = source;
+						stepDestination[id] = destination;
+						stepTicket[id++] = (byte) ticket.ordinal();
+					}
+				}
+			}
+		}
+		for (int source : nodes) {
+			for (int destination : sortedAdjacent(source)) {
+				stepSource[id] = source;
+				stepDestination[id] = destination;
+				stepTicket[id++] = (byte) Ticket.SECRET.ordinal();
+			}
+		}
+
+		this.stepStart = new int[maxNode + 2];
+		for (int s = 0; s < steps; s++) stepStart[stepSource[s] + 1]++;
+		for (int n = 0; n <= maxNode; n++) stepStart[n + 1] += stepStart[n];
+		this.stepsOf = new int[steps];
+		this.localIndex = new int[steps];
+		int[] fill = new int[maxNode + 1];
+		for (int s = 0; s < steps; s++) {
+			int source = stepSource[s];
+			localIndex[s] = fill[source]++;
+			stepsOf[stepStart[source] + localIndex[s]] = s;
+		}
+
+		this.doubleStart = new int[steps];
+		int count = 0;
+		for (int s = 0; s < steps; s++) {
+			doubleStart[s] = count;
+			count += stepCount(stepDestination[s]);
+		}
+		this.doubles = count;
+		this.size = steps + doubles + plainSteps * (ScotlandYard.ALL_PIECES.size() - 1);
+	}
+
+	private ImmutableSet<Transport> transports(int source, int destination) {
+		return Objects.requireNonNull(
+				setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of()));
+	}
+
+	private int[] sortedAdjacent(int source) {
+		return setup.graph.adjacentNodes(source).stream()
+				.mapToInt(Integer::intValue).sorted().toArray();
+	}
+
+	private int stepCount(int node) {
+		return node + 1 < stepStart.length ? stepStart[node + 1] - stepStart[node] : 0;
+	}
+
+	/**
+	 * @return the setup this space numbers moves for
+	 */
+	@Nonnull public GameSetup setup() { return setup; }
+
+	/**
+	 * @return the number of ids in this space
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @param piece the piece
+	 * @return the first id of moves made by the given piece
+	 */
+	public int firstIndexOf(@Nonnull Piece piece) {
+		if (piece.isMrX()) return 0;
+		return stepSource.length + doubles + plainSteps * ((Detective) piece).ordinal();
+	}
+
+	/**
+	 * @param piece the piece
+	 * @return the number of ids reserved for moves made by the given piece
+	 */
+	public int sizeOf(@Nonnull Piece piece) {
+		return piece.isMrX() ? stepSource.length + doubles : plainSteps;
+	}
+
+	/**
+	 * @param move the move
+	 * @return the id of the given move
+	 * @throws IllegalArgumentException if the move can never be made on this setup
+	 */
+	public int indexOf(@Nonnull Move move) {
+		return move.accept(new Move.Visitor<Integer>() {
+			@Override public Integer visit(SingleMove move) {
+				int step = step(move.source(), move.ticket, move.destination, move);
+				if (move.commencedBy().isMrX()) return step;
+				if (step >= plainSteps) throw new IllegalArgumentException("Not in space: " + move);
+				return firstIndexOf(move.commencedBy()) + step;
+			}
+			@Override public Integer visit(DoubleMove move) {
+				if (move.commencedBy().isDetective())
+					throw new IllegalArgumentException("Not in space: " + move);
+				int first = step(move.source(), move.ticket1, move.destination1, move);
+				int second = step(move.destination1, move.ticket2, move.destination2, move);
+				return stepSource.length + doubleStart[first] + localIndex[second];
+			}
+		});
+	}
+
+	private int step(int source, Ticket ticket, int destination, Move move) {
+		if (source >= 0 && source + 1 < stepStart.length) {
+			for (int i = stepStart[source]; i < stepStart[source + 1]; i++) {
+				int s = stepsOf[i];
+				if (stepDestination[s] == destination && stepTicket[s] == ticket.ordinal())
+					return s;
+			}
+		}
+		throw new IllegalArgumentException("Not in space: " + move);
+	}
+
+	/**
+	 * @param index the id
+	 * @return the move with the given id
+	 * @throws IndexOutOfBoundsException if the id is not in [0, {@link #size()})
+	 */
+	@Nonnull public Move moveAt(int index) {
+		Objects.checkIndex(index, size);
+		int steps = stepSource.length;
+		if (index < steps) return single(Piece.MrX.MRX, index);
+		if (index < steps + doubles) {
+			int relative = index - steps;
+			int first = Arrays.binarySearch(doubleStart, relative);
+			// several steps never share a start as every destination has at least one step
+			if (first < 0) first = -first - 2;
+			int second = stepsOf[stepStart[stepDestination[first]] + relative - doubleStart[first]];
+			return new DoubleMove(Piece.MrX.MRX, stepSource[first],
+					TICKETS[stepTicket[first]], stepDestination[first],
+					TICKETS[stepTicket[second]], stepDestination[second]);
+		}
+		int relative = index - steps - doubles;
+		var detective = Detective.values()[relative / plainSteps];
+		return single(detective, relative % plainSteps);
+	}
+
+	private SingleMove single(Piece piece, int step) {
+		return new SingleMove(piece, stepSource[step], TICKETS[stepTicket[step]],
+				stepDestination[step]);
+	}
+
+	/**
+	 * @param moves the moves
+	 * @return the given moves ordered by id
+	 */
+	@Nonnull public ImmutableList<Move> ordered(@Nonnull Collection<? extends Move> moves) {
+		long[] keyed = new long[moves.size()];
+		Move[] byIndex = moves.toArray(new Move[0]);
+		for (int i = 0; i < byIndex.length; i++)
+			keyed[i] = ((long) indexOf(byIndex[i]) << 32) | i;
+		Arrays.sort(keyed);
+		var builder = ImmutableList.<Move>builderWithExpectedSize(keyed.length);
+		for (long k : keyed) builder.add(byIndex[(int) k]);
+		return builder.build();
+	}
+}
@@ -34,6 +34,29 @@ public interface Ai {
 	 */
 	@Nonnull Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair);
 
+	/**
+	 * Called instead of {@link #pickMove(Board, Pair)} by the game, which made the budget when
+	 * it asked for the move and cancels it if the game is reset or closed meanwhile. Override to
+	 * search up to the budget's deadlines and return early once it is cancelled.
+	 * Defaults to {@link #pickMove(Board, Pair)} with the budget's {@link Budget#timeout()}, in
+	 * whole seconds as the game always gave it
+	 *
+	 * @param board  the game board
+	 * @param budget the time for this move
+	 * @return a correct move from {@link Board#getAvailableMoves()} in the game board
+	 */
+	@Nonnull default Move pickMove(@Nonnull Board board, @Nonnull Budget budget) {
+		return pickMove(board, budget.timeout());
+	}
+
+	/**
+	 * An Ai may keep searching in the background after returning a move (pondering) as long as
+	 * it caps the CPU it takes from the other side and stops when its next pickMove starts.
+	 * Called when this Ai ran out of time; must return once background searching has stopped.
+	 * Defaults to no-op
+	 */
+	default void stopPondering() {}
+
 
 	/**
 	 * Called after the game has ended and that this Ai is about to be terminated
@@ -0,0 +1,213 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Per-map artefacts shared by everything in the JVM, so the AIs of one game, or of games in a row,
+ * analyse a graph only once between them.
+ * <br>
+ * Artefacts are named by a {@link Key} and filed under the graph's
+ * {@link DistanceOracle#fingerprint}, so equal graphs share them however they were loaded. The
+ * first thread to ask for an artefact computes it on its own thread while later ones wait for it;
+ * a computation that fails is not kept and the next request tries again. Artefacts are only
+ * softly held and computed again when the collector has reclaimed them. Artefacts must be
+ * immutable, and a key's computation may ask for other artefacts but not, even indirectly, for
+ * its own.
+ */
+public final class AnalysisRegistry {
+
+	/**
+	 * An artefact of a graph
+	 *
+	 * @param <T> the type of the artefact
+	 */
+	public static final class Key<T> {
+		private final String name;
+		private final Function<ImmutableValueGraph<Integer, ImmutableSet<Transport>>, T> compute;
+
+		/**
+		 * @param name the name of the artefact, for logs
+		 * @param compute computes the artefact of a graph; must not return null
+		 */
+		public Key(@Nonnull String name,
+		           @Nonnull Function<ImmutableValueGraph<Integer, ImmutableSet<Transport>>, T> compute) {
+			this.name = Objects.requireNonNull(name);
+			this.compute = Objects.requireNonNull(compute);
+		}
+
+		@Override public String toString() { return name; }
+	}
+
+	/**
+	 * The per-transport bitset adjacency of the graph
+	 */
+	public static final Key<TransportAdjacency> ADJACENCY =
+			new Key<>("adjacency", TransportAdjacency::of);
+
+	/**
+	 * The fastest reachability kernel over {@link #ADJACENCY}
+	 */
+	public static final Key<ReachabilityKernel> KERNEL =
+			new Key<>("kernel", graph -> ReachabilityKernel.create(get(graph, ADJACENCY)));
+
+	/**
+	 * The distance matrices of the graph, cached in the default directory
+	 */
+	public static final Key<DistanceOracle> DISTANCES = new Key<>("distances", DistanceOracle::of);
+
+	/**
+	 * The stations whose removal disconnects the graph over any transport
+	 */
+	public static final Key<ImmutableSet<Integer>> CHOKEPOINTS =
+			new Key<>("chokepoints", AnalysisRegistry::chokepoints);
+
+	private static final ConcurrentMap<ImmutableValueGraph<Integer, ImmutableSet<Transport>>, String>
+			FINGERPRINTS = new MapMaker().weakKeys().makeMap();
+	private static final ConcurrentMap<Slot, Entry> ENTRIES = new ConcurrentHashMap<>();
+	private static final ReferenceQueue<CompletableFuture<?>> CLEARED = new ReferenceQueue<>();
+
+	private AnalysisRegistry() {}
+
+	/**
+	 * @param graph the game graph
+	 * @param key the artefact
+	 * @param <T> the type of the artefact
+	 * @return the artefact of the graph, computed by this or another thread if it is not held
+	 */
+	@Nonnull public static <T> T get(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+			@Nonnull Key<T> key) {
+		expunge();
+		var slot = new Slot(FINGERPRINTS.computeIfAbsent(graph, DistanceOracle::fingerprint), key);
+		while (true) {
+			Entry entry = ENTRIES.get(slot);
+			CompletableFuture<?> future = entry == null ? null : entry.get();
+			if (future != null) return await(future);
+			var computing = new CompletableFuture<T>();
+			var mine = new Entry(slot, computing);
+			if (entry == null ? ENTRIES.putIfAbsent(slot, mine) != null
+					: !ENTRIES.replace(slot, entry, mine)) continue;
+			try {
+				T value = Objects.requireNonNull(key.compute.apply(graph), key.name);
+				computing.complete(value);
+				return value;
+			} catch (RuntimeException | Error e) {
+				ENTRIES.remove(slot, mine);
+				computing.completeExceptionally(e);
+				throw e;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T await(CompletableFuture<?> future) {
+		try {
+			return (T) future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) throw cause;
+			if (e.getCause() instanceof Error cause) throw cause;
+			throw e;
+		}
+	}
+
+	private static void expunge() {
+		for (var cleared = CLEARED.poll(); cleared != null; cleared = CLEARED.poll()) {
+			var entry = (Entry) cleared;
+			ENTRIES.remove(entry.slot, entry);
+		}
+	}
+
+	/**
+	 * Articulation points by an iterative depth first search over every edge, keeping for each
+	 * station its discovery order and the earliest station its subtree reaches back to.
+	 */
+	private static ImmutableSet<Integer> chokepoints(
+			ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		int nodes = graph.nodes().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+		int[][] neighbours = new int[nodes][];
+		for (int station : graph.nodes())
+			neighbours[station] = graph.adjacentNodes(station).stream()
+					.mapToInt(Integer::intValue).toArray();
+		int[] order = new int[nodes];
+		int[] low = new int[nodes];
+		int[] parent = new int[nodes];
+		int[] next = new int[nodes];
+		int[] stack = new int[nodes];
+		boolean[] cut = new boolean[nodes];
+		int visited = 0;
+		for (int root : graph.nodes()) {
+			if (order[root] != 0) continue;
+			int children = 0;
+			int depth = 0;
+			stack[depth++] = root;
+			parent[root] = -1;
+			order[root] = low[root] = ++visited;
+			while (depth > 0) {
+				int at = stack[depth - 1];
+				if (next[at] < neighbours[at].length) {
+					int to = neighbours[at][next[at]++];
+					if (order[to] == 0) {
+						parent[to] = at;
+						order[to] = low[to] = ++visited;
+						stack[depth++] = to;
+						if (at == root) children++;
+					} else if (to != parent[at]) {
+						low[at] = Math.min(low[at], order[to]);
+					}
+					continue;
+				}
+				depth--;
+				int up = parent[at];
+				if (up < 0) continue;
+				low[up] = Math.min(low[up], low[at]);
+				if (up != root && low[at] >= order[up]) cut[up] = true;
+			}
+			if (children > 1) cut[root] = true;
+		}
+		var builder = ImmutableSet.<Integer>builder();
+		for (int station = 0; station < nodes; station++) if (cut[station]) builder.add(station);
+		return builder.build();
+	}
+
+	private static final class Slot {
+		final String fingerprint;
+		final Key<?> key;
+
+		Slot(String fingerprint, Key<?> key) {
+			this.fingerprint = fingerprint;
+			this.key = key;
+		}
+
+		@Override public boolean equals(Object o) {
+			return o instanceof Slot that && fingerprint.equals(that.fingerprint) && key == that.key;
+		}
+
+		@Override public int hashCode() {
+			return 31 * fingerprint.hashCode() + System.identityHashCode(key);
+		}
+	}
+
+	private static final class Entry extends SoftReference<CompletableFuture<?>> {
+		final Slot slot;
+
+		Entry(Slot slot, CompletableFuture<?> future) {
+			super(future, CLEARED);
+			this.slot = slot;
+		}
+	}
+}
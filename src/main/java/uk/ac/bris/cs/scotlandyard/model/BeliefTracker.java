@@ -0,0 +1,271 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+
+/**
+ * Every station MrX could be at, following the travel log one entry at a time.
+ * <br>
+ * The stations are a bitset as in {@link TransportAdjacency}. A hidden entry moves the set along
+ * every edge its ticket allows, a revealed one collapses it to the revealed station, and stations
+ * detectives stand on are dropped since MrX would have been caught there. Alongside the set each
+ * station has a probability, spread evenly over a station's neighbours on every hidden move as if
+ * MrX picked any of them at random.
+ * <br>
+ * Updates cost one bitset expansion and one pass over the possible stations per entry. A tracker
+ * is meant to be owned by one player and is not thread safe.
+ */
+public final class BeliefTracker {
+
+	private final ReachabilityKernel kernel;
+	private final TransportAdjacency adjacency;
+	private final long[] starts;
+	private final long[] stations;
+	private final long[] next;
+	private final double[] weights;
+	private final double[] nextWeights;
+	private final List<LogEntry> applied = new ArrayList<>();
+
+	/**
+	 * @param kernel the kernel of the game graph
+	 * @param starts the stations MrX may have started at
+	 */
+	public BeliefTracker(@Nonnull ReachabilityKernel kernel, @Nonnull Collection<Integer> starts) {
+		this.kernel = Objects.requireNonNull(kernel);
+		this.adjacency = kernel.adjacency();
+		this.starts = new long[adjacency.words()];
+		for (int start : starts) set(this.starts, start);
+		if (isEmpty(this.starts)) throw new IllegalArgumentException("No starting stations");
+		this.stations = new long[adjacency.words()];
+		this.next = new long[adjacency.words()];
+		this.weights = new double[adjacency.nodes()];
+		this.nextWeights = new double[adjacency.nodes()];
+		reset();
+	}
+
+	/**
+	 * @param that the tracker to start as a copy of, sharing its kernel and starting stations
+	 */
+	public BeliefTracker(@Nonnull BeliefTracker that) {
+		this.kernel = that.kernel;
+		this.adjacency = that.adjacency;
+		this.starts = that.starts;
+		this.stations = new long[that.stations.length];
+		this.next = new long[that.next.length];
+		this.weights = new double[that.weights.length];
+		this.nextWeights = new double[that.nextWeights.length];
+		copy(that);
+	}
+
+	/**
+	 * @param kernel the kernel of the setup's graph
+	 * @param setup the setup
+	 * @return a tracker starting from {@link ScotlandYard#MRX_LOCATIONS}, or every station of
+	 * maps that do not have them
+	 */
+	@Nonnull public static BeliefTracker forSetup(@Nonnull ReachabilityKernel kernel,
+	                                              @Nonnull GameSetup setup) {
+		var nodes = setup.graph.nodes();
+		return new BeliefTracker(kernel, nodes.containsAll(ScotlandYard.MRX_LOCATIONS)
+				? ScotlandYard.MRX_LOCATIONS : nodes);
+	}
+
+	/**
+	 * Forgets every entry, MrX could be at any starting station again
+	 */
+	public void reset() {
+		System.arraycopy(starts, 0, stations, 0, stations.length);
+		Arrays.fill(weights, 0);
+		normalise();
+		applied.clear();
+	}
+
+	/**
+	 * Resets this tracker to the stations, weights and applied entries of another one over the
+	 * same graph.
+	 *
+	 * @param that the tracker
+	 */
+	public void copy(@Nonnull BeliefTracker that) {
+		if (that.adjacency != adjacency)
+			throw new IllegalArgumentException("Trackers of different graphs");
+		System.arraycopy(that.stations, 0, stations, 0, stations.length);
+		System.arraycopy(that.weights, 0, weights, 0, weights.length);
+		applied.clear();
+		applied.addAll(that.applied);
+	}
+
+	/**
+	 * Applies the log entries of the board not seen yet, then drops the stations detectives are
+	 * on now. Starts over if the board's log is not a continuation of what was seen, that is
+	 * unless every entry applied so far is the board's entry at the same place.
+	 *
+	 * @param board the board
+	 */
+	public void sync(@Nonnull Board board) {
+		List<LogEntry> log = board.getMrXTravelLog();
+		if (!continues(log)) reset();
+		for (int i = applied.size(); i < log.size(); i++) update(log.get(i));
+		long[] occupied = new long[stations.length];
+		for (Piece piece : board.getPlayers())
+			if (piece.isDetective())
+				board.getDetectiveLocation((Detective) piece).ifPresent(at -> set(occupied, at));
+		exclude(occupied);
+	}
+
+	/**
+	 * Moves MrX along one log entry.
+	 *
+	 * @param entry the next entry of the travel log
+	 */
+	public void update(@Nonnull LogEntry entry) {
+		applied.add(entry);
+		if (entry.location().isPresent()) {
+			int at = entry.location().get();
+			Arrays.fill(stations, 0L);
+			Arrays.fill(weights, 0);
+			set(stations, at);
+			weights[at] = 1;
+			return;
+		}
+		int mask = TransportAdjacency.mask(entry.ticket());
+		kernel.expand(stations, next, mask);
+		long[] rows = adjacency.rows(mask);
+		int words = stations.length;
+		Arrays.fill(nextWeights, 0);
+		for (int w = 0; w < words; w++) {
+			long bits = stations[w];
+			while (bits != 0) {
+				int from = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				int base = from * words;
+				int degree = 0;
+				for (int i = 0; i < words; i++) degree += Long.bitCount(rows[base + i]);
+				if (degree == 0) continue;
+				double share = weights[from] / degree;
+				for (int i = 0; i < words; i++) {
+					long to = rows[base + i];
+					while (to != 0) {
+						nextWeights[(i << 6) + Long.numberOfTrailingZeros(to)] += share;
+						to &= to - 1;
+					}
+				}
+			}
+		}
+		System.arraycopy(next, 0, stations, 0, words);
+		System.arraycopy(nextWeights, 0, weights, 0, weights.length);
+		normalise();
+	}
+
+	/**
+	 * Drops stations MrX cannot be at.
+	 *
+	 * @param occupied a bitset of the stations
+	 */
+	public void exclude(@Nonnull long[] occupied) {
+		boolean changed = false;
+		for (int w = 0; w < stations.length; w++) {
+			long dropped = stations[w] & occupied[w];
+			if (dropped == 0) continue;
+			changed = true;
+			stations[w] &= ~dropped;
+			while (dropped != 0) {
+				weights[(w << 6) + Long.numberOfTrailingZeros(dropped)] = 0;
+				dropped &= dropped - 1;
+			}
+		}
+		if (changed) normalise();
+	}
+
+	/**
+	 * @return how many log entries have been applied
+	 */
+	public int entries() { return applied.size(); }
+
+	/**
+	 * @param log a travel log
+	 * @return whether the log starts with every entry applied so far
+	 */
+	private boolean continues(List<LogEntry> log) {
+		if (log.size() < applied.size()) return false;
+		for (int i = applied.size() - 1; i >= 0; i--)
+			if (!log.get(i).equals(applied.get(i))) return false;
+		return true;
+	}
+
+	/**
+	 * @return the number of stations MrX could be at, 0 only if the log contradicts the map
+	 */
+	public int size() {
+		int size = 0;
+		for (long word : stations) size += Long.bitCount(word);
+		return size;
+	}
+
+	/**
+	 * @param station the station
+	 * @return whether MrX could be there
+	 */
+	public boolean contains(int station) {
+		return station >= 0 && station < adjacency.nodes()
+				&& (stations[station >>> 6] & 1L << station) != 0;
+	}
+
+	/**
+	 * @return a copy of the stations as a bitset
+	 */
+	@Nonnull public long[] stations() { return stations.clone(); }
+
+	/**
+	 * @param station the station
+	 * @return the probability of MrX being there
+	 */
+	public double weight(int station) {
+		return contains(station) ? weights[station] : 0;
+	}
+
+	/**
+	 * @return a copy of every station's probability, indexed by station
+	 */
+	@Nonnull public double[] weights() { return weights.clone(); }
+
+	/**
+	 * Rescales the weights of the possible stations to sum to one, spreading evenly if they have
+	 * none left between them
+	 */
+	private void normalise() {
+		double total = 0;
+		int count = 0;
+		for (int w = 0; w < stations.length; w++) {
+			long bits = stations[w];
+			while (bits != 0) {
+				total += weights[(w << 6) + Long.numberOfTrailingZeros(bits)];
+				count++;
+				bits &= bits - 1;
+			}
+		}
+		if (count == 0) return;
+		for (int w = 0; w < stations.length; w++) {
+			long bits = stations[w];
+			while (bits != 0) {
+				int at = (w << 6) + Long.numberOfTrailingZeros(bits);
+				weights[at] = total > 0 ? weights[at] / total : 1.0 / count;
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	private static void set(long[] bits, int node) { bits[node >>> 6] |= 1L << node; }
+
+	private static boolean isEmpty(long[] bits) {
+		for (long word : bits) if (word != 0) return false;
+		return true;
+	}
+}
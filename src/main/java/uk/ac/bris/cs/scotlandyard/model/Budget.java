@@ -0,0 +1,129 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The time an {@link Ai} has for one move, fixed when the move is requested rather than when the
+ * Ai gets round to looking at it.
+ * <br>
+ * Deadlines are absolute {@link System#nanoTime()} values. The hard deadline is when the move is
+ * due; the soft deadline, never later, is when the Ai should stop starting new work such as
+ * another iteration of a deepening search. Whoever asked for the move may also cancel it, after
+ * which the Ai should return whatever it has as soon as it can. Budgets are safe to share
+ * between threads.
+ */
+public final class Budget {
+
+	private final long start;
+	private final long softDeadline;
+	private final long hardDeadline;
+	private volatile boolean cancelled;
+
+	private Budget(long start, long softDeadline, long hardDeadline) {
+		this.start = start;
+		this.softDeadline = softDeadline;
+		this.hardDeadline = hardDeadline;
+	}
+
+	/**
+	 * @param duration the time from now until the move is due, not negative
+	 * @param unit the unit of the duration
+	 * @return a budget without a separate soft deadline
+	 */
+	@Nonnull public static Budget of(long duration, @Nonnull TimeUnit unit) {
+		return of(duration, duration, unit);
+	}
+
+	/**
+	 * @param timeout the time from now until the move is due, as {@link Ai} used to be given it
+	 * @return a budget without a separate soft deadline
+	 */
+	@Nonnull public static Budget of(@Nonnull Pair<Long, TimeUnit> timeout) {
+		return of(Objects.requireNonNull(timeout.left()), Objects.requireNonNull(timeout.right()));
+	}
+
+	/**
+	 * @param soft the time from now until new work should stop, at most the hard duration
+	 * @param hard the time from now until the move is due
+	 * @param unit the unit of both durations
+	 * @return a budget with a soft and a hard deadline
+	 */
+	@Nonnull public static Budget of(long soft, long hard, @Nonnull TimeUnit unit) {
+		if (soft < 0 || hard < soft)
+			throw new IllegalArgumentException("Need 0 <= soft <= hard, got " + soft + ", " + hard);
+		long now = System.nanoTime();
+		return new Budget(now, now + unit.toNanos(soft), now + unit.toNanos(hard));
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} the budget was made at
+	 */
+	public long start() { return start; }
+
+	/**
+	 * @return the {@link System#nanoTime()} after which no new work should start
+	 */
+	public long softDeadline() { return softDeadline; }
+
+	/**
+	 * @return the {@link System#nanoTime()} the move is due at
+	 */
+	public long hardDeadline() { return hardDeadline; }
+
+	/**
+	 * @return nanoseconds until the hard deadline, 0 once it has passed
+	 */
+	public long remainingNanos() { return Math.max(0, hardDeadline - System.nanoTime()); }
+
+	/**
+	 * @return nanoseconds since the budget was made
+	 */
+	public long elapsedNanos() { return System.nanoTime() - start; }
+
+	/**
+	 * Asks the Ai to return as soon as it can. Cancelling twice does nothing more.
+	 */
+	public void cancel() { cancelled = true; }
+
+	/**
+	 * @return whether {@link #cancel()} was called
+	 */
+	public boolean cancelled() { return cancelled; }
+
+	/**
+	 * @return whether the move is cancelled or due
+	 */
+	public boolean exhausted() { return cancelled || System.nanoTime() - hardDeadline >= 0; }
+
+	/**
+	 * A search stops at the soft deadline but, to leave time to return its move, no later than a
+	 * tenth of the time remaining now, at most the given margin, before the hard deadline.
+	 *
+	 * @param maxMargin the largest margin in nanoseconds
+	 * @return the {@link System#nanoTime()} a search should stop at
+	 */
+	public long searchDeadline(long maxMargin) {
+		long margin = Math.min(remainingNanos() / 10, maxMargin);
+		return Math.min(softDeadline, hardDeadline - margin);
+	}
+
+	/**
+	 * @return the whole seconds from when the budget was made until the hard deadline, as
+	 * {@link Ai} used to be given its timeout
+	 */
+	@Nonnull public Pair<Long, TimeUnit> timeout() {
+		return new Pair<>(TimeUnit.NANOSECONDS.toSeconds(hardDeadline - start), TimeUnit.SECONDS);
+	}
+
+	@Override public String toString() {
+		return "Budget{remaining=" + TimeUnit.NANOSECONDS.toMillis(remainingNanos())
+				+ "ms, soft=" + TimeUnit.NANOSECONDS.toMillis(softDeadline - start)
+				+ "ms, hard=" + TimeUnit.NANOSECONDS.toMillis(hardDeadline - start)
+				+ "ms, cancelled=" + cancelled + "}";
+	}
+}
@@ -0,0 +1,169 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * How likely every station is to be under detective control within a number of rounds, and how
+ * likely MrX is to be caught, from where he could be.
+ * <br>
+ * Detectives and MrX move as in a {@link TransitionMatrix}, each along the transports they hold
+ * tickets for. Every detective starts as one probability vector; detectives sharing a mask are
+ * stepped together as one batch, all rounds at once. A station is controlled in a round when a
+ * detective is there after that round's moves, rounds and detectives taken as independent. MrX's
+ * belief steps the same way, and he is caught in a round with the probability that he is on a
+ * controlled station.
+ * <br>
+ * Matrices are built once per mask and shared. Computations reuse their buffers, so one instance
+ * is not thread safe.
+ */
+public final class CaptureOdds {
+
+	private final ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private final AtomicReferenceArray<TransitionMatrix> matrices =
+			new AtomicReferenceArray<>(TransportAdjacency.ALL + 1);
+	private final int nodes;
+	private final double[] heatmap;
+	private double[] control = new double[0];
+	private double[] batch = new double[0];
+	private double[] steps = new double[0];
+	private double[] mrX = new double[0];
+	private double capture;
+	private int rounds;
+
+	/**
+	 * @param graph the game graph; nodes must be non-negative
+	 */
+	public CaptureOdds(@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		this.graph = Objects.requireNonNull(graph);
+		this.nodes = graph.nodes().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+		this.heatmap = new double[nodes];
+	}
+
+	/**
+	 * @param mask the transport mask
+	 * @return the random walk over the given transports, built on first use
+	 */
+	@Nonnull public TransitionMatrix matrix(int mask) {
+		var matrix = matrices.get(mask);
+		if (matrix != null) return matrix;
+		matrix = TransitionMatrix.of(graph, mask);
+		return matrices.compareAndSet(mask, null, matrix) ? matrix : matrices.get(mask);
+	}
+
+	/**
+	 * Computes the odds for the board's detectives with their tickets against MrX with his.
+	 *
+	 * @param board the board
+	 * @param belief the probability of MrX being at every station, indexed by station as in
+	 * {@link BeliefTracker#weights()}
+	 * @param rounds how many rounds to look ahead
+	 */
+	public void compute(@Nonnull Board board, @Nonnull double[] belief, int rounds) {
+		var pieces = board.getPlayers().stream().filter(Piece::isDetective).toArray(Piece[]::new);
+		int[] locations = new int[pieces.length];
+		int[] masks = new int[pieces.length];
+		for (int d = 0; d < pieces.length; d++) {
+			locations[d] = board.getDetectiveLocation((Detective) pieces[d]).orElseThrow();
+			masks[d] = Territory.mask(board.getPlayerTickets(pieces[d]).orElseThrow());
+		}
+		compute(belief, Territory.mask(board.getPlayerTickets(Piece.MrX.MRX).orElseThrow()),
+				locations, masks, rounds);
+	}
+
+	/**
+	 * Computes the odds from the given positions.
+	 *
+	 * @param belief the probability of MrX being at every station
+	 * @param mrXMask the transports MrX can use, see {@link TransportAdjacency#mask}
+	 * @param locations the station of every detective
+	 * @param masks the transports every detective can use
+	 * @param rounds how many rounds to look ahead
+	 */
+	public void compute(@Nonnull double[] belief, int mrXMask, @Nonnull int[] locations,
+	                    @Nonnull int[] masks, int rounds) {
+		if (locations.length != masks.length)
+			throw new IllegalArgumentException("A mask is needed for every detective");
+		if (rounds < 1) throw new IllegalArgumentException("Rounds must be positive");
+		this.rounds = rounds;
+		int size = nodes * rounds;
+		if (control.length < size) {
+			control = new double[size];
+			mrX = new double[size];
+		}
+		// the chance no detective is at a station after each round
+		Arrays.fill(control, 0, size, 1);
+		boolean[] done = new boolean[locations.length];
+		for (int d = 0; d < locations.length; d++) {
+			if (done[d]) continue;
+			int count = 0;
+			for (int e = d; e < locations.length; e++) if (masks[e] == masks[d]) count++;
+			if (batch.length < nodes * count) batch = new double[nodes * count];
+			if (steps.length < size * count) steps = new double[size * count];
+			Arrays.fill(batch, 0, nodes * count, 0);
+			int b = 0;
+			for (int e = d; e < locations.length; e++) {
+				if (masks[e] != masks[d]) continue;
+				batch[locations[e] * count + b++] = 1;
+				done[e] = true;
+			}
+			matrix(masks[d]).propagate(batch, steps, count, rounds);
+			for (int k = 0; k < rounds; k++)
+				for (int s = 0; s < nodes; s++)
+					for (b = 0; b < count; b++)
+						control[k * nodes + s] *= 1 - steps[(k * nodes + s) * count + b];
+		}
+		matrix(mrXMask).propagate(Arrays.copyOf(belief, nodes), mrX, 1, rounds);
+
+		Arrays.fill(heatmap, 1);
+		double escape = 1;
+		for (int k = 0; k < rounds; k++) {
+			double caught = 0;
+			for (int s = 0; s < nodes; s++) {
+				double free = control[k * nodes + s];
+				heatmap[s] *= free;
+				caught += mrX[k * nodes + s] * (1 - free);
+			}
+			escape *= 1 - Math.min(1, caught);
+		}
+		for (int s = 0; s < nodes; s++) heatmap[s] = 1 - heatmap[s];
+		capture = 1 - escape;
+	}
+
+	/**
+	 * @return the number of rounds of the last computation
+	 */
+	public int rounds() { return rounds; }
+
+	/**
+	 * @return the probability of every station being under detective control within the rounds,
+	 * indexed by station; shared, must not be modified
+	 */
+	@Nonnull public double[] heatmap() { return heatmap; }
+
+	/**
+	 * @param round the round from 1 up to {@link #rounds()}
+	 * @return the probability of a detective being at every station after that round's moves,
+	 * indexed by station
+	 */
+	@Nonnull public double[] control(int round) {
+		Objects.checkIndex(round - 1, rounds);
+		double[] control = new double[nodes];
+		for (int s = 0; s < nodes; s++) control[s] = 1 - this.control[(round - 1) * nodes + s];
+		return control;
+	}
+
+	/**
+	 * @return the probability of MrX being caught within the rounds
+	 */
+	public double capture() { return capture; }
+}
@@ -0,0 +1,252 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * All pairs shortest move counts of a game graph for every non-empty transport mask.
+ * <br>
+ * Each mask has a {@code nodes * nodes} byte matrix, row {@code from} column {@code to}, holding
+ * -1 where unreachable or more than {@link Byte#MAX_VALUE} moves away. Matrices are built with one
+ * {@link ReachabilityKernel#distanceField} per source and mask, sources in parallel, and written
+ * to a file named after the graph's {@link #fingerprint} in the cache directory. Later loads of
+ * the same graph map that file instead of searching again. Files are only ever replaced by
+ * renaming, never rewritten, since mappings of a file changed in place fault.
+ * <br>
+ * The cache directory is {@value #CACHE_PROPERTY}, or {@code scotlandyard} under
+ * {@code java.io.tmpdir}. An oracle whose file cannot be read or written keeps its matrices on the
+ * heap. Oracles are immutable and safe to share between threads.
+ */
+public final class DistanceOracle {
+
+	/**
+	 * System property naming the cache directory
+	 */
+	public static final String CACHE_PROPERTY = "scotlandyard.cache.dir";
+
+	private static final int MAGIC = 0x53594430;
+	private static final int VERSION = 1;
+	private static final int HEADER = 4 * Integer.BYTES;
+	private static final int MASKS = TransportAdjacency.ALL;
+
+	private final ReachabilityKernel kernel;
+	private final String fingerprint;
+	private final int nodes;
+	private final ByteBuffer matrices;
+	private final boolean cached;
+
+	private DistanceOracle(ReachabilityKernel kernel, String fingerprint, ByteBuffer matrices,
+	                       boolean cached) {
+		this.kernel = kernel;
+		this.fingerprint = fingerprint;
+		this.nodes = kernel.adjacency().nodes();
+		this.matrices = matrices;
+		this.cached = cached;
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return the oracle of the graph, cached in the default directory
+	 */
+	@Nonnull public static DistanceOracle of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return load(graph, cacheDirectory());
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @param directory the cache directory, null to build on the heap only
+	 * @return the oracle of the graph, loaded from the directory if it has been built there
+	 */
+	@Nonnull public static DistanceOracle load(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+			@Nullable Path directory) {
+		var kernel = ReachabilityKernel.create(TransportAdjacency.of(graph));
+		String fingerprint = fingerprint(graph);
+		if (directory == null) return new DistanceOracle(kernel, fingerprint, build(kernel), false);
+		Path file = directory.resolve("distances-" + fingerprint + ".bin");
+		int nodes = kernel.adjacency().nodes();
+		try {
+			ByteBuffer mapped = map(file, nodes);
+			if (mapped != null) return new DistanceOracle(kernel, fingerprint, mapped, true);
+		} catch (IOException ignored) {
+			// unreadable, built again below
+		}
+		ByteBuffer built = build(kernel);
+		try {
+			write(directory, file, nodes, built);
+			ByteBuffer mapped = map(file, nodes);
+			if (mapped != null) return new DistanceOracle(kernel, fingerprint, mapped, false);
+		} catch (IOException ignored) {
+			// read-only or full disk, the heap copy still works
+		}
+		return new DistanceOracle(kernel, fingerprint, built, false);
+	}
+
+	/**
+	 * @return the directory named by {@value #CACHE_PROPERTY}, or one under the temporary directory
+	 */
+	@Nonnull public static Path cacheDirectory() {
+		String directory = System.getProperty(CACHE_PROPERTY);
+		return directory != null ? Paths.get(directory)
+				: Paths.get(System.getProperty("java.io.tmpdir"), "scotlandyard");
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return a SHA-256 over the graph's nodes and edges, equal for equal graphs
+	 */
+	@Nonnull public static String fingerprint(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		Hasher hasher = Hashing.sha256().newHasher().putInt(VERSION);
+		graph.nodes().stream().sorted().forEach(hasher::putInt);
+		graph.edges().stream()
+				.map(edge -> new int[]{
+						Math.min(edge.nodeU(), edge.nodeV()), Math.max(edge.nodeU(), edge.nodeV()),
+						TransportAdjacency.mask(Objects.requireNonNull(graph.edgeValueOrDefault(
+								edge.nodeU(), edge.nodeV(), ImmutableSet.of()))
+								.toArray(new Transport[0]))})
+				.sorted((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0])
+						: Integer.compare(a[1], b[1]))
+				.forEach(edge -> hasher.putInt(edge[0]).putInt(edge[1]).putInt(edge[2]));
+		return hasher.hash().toString();
+	}
+
+	private static ByteBuffer build(ReachabilityKernel kernel) {
+		int nodes = kernel.adjacency().nodes();
+		long size = (long) MASKS * nodes * nodes;
+		if (size > Integer.MAX_VALUE - HEADER)
+			throw new IllegalArgumentException("Graph of " + nodes + " nodes is too large");
+		byte[] matrices = new byte[(int) size];
+		IntStream.range(0, nodes).parallel().forEach(source -> {
+			byte[] row = new byte[nodes];
+			for (int mask = 1; mask <= MASKS; mask++) {
+				kernel.distanceField(source, mask, row);
+				System.arraycopy(row, 0, matrices, offset(nodes, mask, source), nodes);
+			}
+		});
+		return ByteBuffer.wrap(matrices).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return the matrices of the file, null if it is missing or not for this many nodes
+	 */
+	@Nullable private static ByteBuffer map(Path file, int nodes) throws IOException {
+		if (!Files.isRegularFile(file)) return null;
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = (long) MASKS * nodes * nodes;
+			if (channel.size() != HEADER + size) return null;
+			var header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining()) if (channel.read(header, header.position()) < 0) return null;
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != VERSION
+					|| header.getInt() != nodes || header.getInt() != MASKS) return null;
+			// the mapping stays valid once the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, HEADER, size);
+		}
+	}
+
+	/**
+	 * Writes to a temporary file first so a racing JVM never maps a partial file
+	 */
+	private static void write(Path directory, Path file, int nodes, ByteBuffer matrices)
+			throws IOException {
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, "distances-", ".tmp");
+		try {
+			try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				var header = ByteBuffer.allocate(HEADER)
+						.putInt(MAGIC).putInt(VERSION).putInt(nodes).putInt(MASKS).flip();
+				while (header.hasRemaining()) channel.write(header);
+				var body = matrices.duplicate().clear();
+				while (body.hasRemaining()) channel.write(body);
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static int offset(int nodes, int mask, int from) {
+		return ((mask - 1) * nodes + from) * nodes;
+	}
+
+	/**
+	 * @return the kernel over the graph the oracle was built from
+	 */
+	@Nonnull public ReachabilityKernel kernel() { return kernel; }
+
+	/**
+	 * @return the fingerprint of the graph the oracle was built from
+	 */
+	@Nonnull public String fingerprint() { return fingerprint; }
+
+	/**
+	 * @return the number of stations, one more than the largest
+	 */
+	public int nodes() { return nodes; }
+
+	/**
+	 * @return whether the matrices were mapped from a file built by an earlier load
+	 */
+	public boolean cached() { return cached; }
+
+	/**
+	 * @param mask the transports edges may use, not 0
+	 * @param from the source station
+	 * @param to the target station
+	 * @return the fewest moves between the stations, -1 if unreachable
+	 */
+	public int distance(int mask, int from, int to) {
+		checkMask(mask);
+		Objects.checkIndex(to, nodes);
+		return matrices.get(offset(nodes, mask, Objects.checkIndex(from, nodes)) + to);
+	}
+
+	/**
+	 * @param from the source station
+	 * @param to the target station
+	 * @return the fewest moves between the stations by any transport, -1 if unreachable
+	 */
+	public int distance(int from, int to) { return distance(TransportAdjacency.ALL, from, to); }
+
+	/**
+	 * Copies out one row of a matrix.
+	 *
+	 * @param mask the transports edges may use, not 0
+	 * @param from the source station
+	 * @param distances the output indexed by target station, at least {@link #nodes()} long
+	 */
+	public void row(int mask, int from, @Nonnull byte[] distances) {
+		checkMask(mask);
+		matrices.get(offset(nodes, mask, Objects.checkIndex(from, nodes)), distances, 0, nodes);
+	}
+
+	private static void checkMask(int mask) {
+		if (mask < 1 || mask > MASKS) throw new IllegalArgumentException("Bad mask " + mask);
+	}
+}
@@ -16,9 +16,10 @@ public interface Model {
 	 */
 	interface Observer {
 		/**
-		 * Game events
+		 * Game events; {@link #UNDO} and {@link #REDO} are only fired by models that support
+		 * {@link Model#undo()} and {@link Model#redo()}
 		 */
-		enum Event {MOVE_MADE, GAME_OVER}
+		enum Event {MOVE_MADE, GAME_OVER, UNDO, REDO}
 		/**
 		 * Called once game state changes
 		 *
@@ -27,6 +28,27 @@ public interface Model {
 		 */
 		default void onModelChanged(@Nonnull Board board, @Nonnull Event event) {}
 	}
+	/**
+	 * An observer that also wants to know what changed, not just the resulting board.
+	 * The model calls {@link #onModelChanged(Board, Event, ModelDelta)} instead of
+	 * {@link #onModelChanged(Board, Event)} for observers of this type.
+	 * <br>
+	 * Undo and redo may jump over several moves so they carry no delta, they are delivered
+	 * through {@link #onModelChanged(Board, Event)} and observers should rebuild from the board.
+	 */
+	interface DeltaObserver extends Observer {
+		/**
+		 * Called once game state changes as the result of a move. Defaults to
+		 * {@link #onModelChanged(Board, Event)}
+		 *
+		 * @param board the board at the time of change
+		 * @param event the event that triggered this call
+		 * @param delta the changes made by the move; shared between all observers
+		 */
+		default void onModelChanged(@Nonnull Board board,
+		                            @Nonnull Event event,
+		                            @Nonnull ModelDelta delta) { onModelChanged(board, event); }
+	}
 	/**
 	 * @return the current game board
 	 */
@@ -54,4 +76,52 @@ public interface Model {
 	 * {@link uk.ac.bris.cs.scotlandyard.model.Board.GameState}
 	 */
 	void chooseMove(@Nonnull Move move);
+	/**
+	 * @return the number of moves made to reach the current board; 0 for a new game
+	 */
+	int getPly();
+	/**
+	 * @return the highest ply that can be reached with {@link #redo()}; equal to
+	 * {@link #getPly()} when there is nothing to redo
+	 */
+	int getLastPly();
+	/**
+	 * Steps back one move, see {@link #seek(int)}
+	 *
+	 * @throws IllegalStateException if the model is at the start of the game
+	 */
+	default void undo() {
+		if (getPly() == 0) throw new IllegalStateException("Nothing to undo");
+		seek(getPly() - 1);
+	}
+	/**
+	 * Steps forward one previously undone move, see {@link #seek(int)}
+	 *
+	 * @throws IllegalStateException if there is nothing to redo
+	 */
+	default void redo() {
+		if (getPly() == getLastPly()) throw new IllegalStateException("Nothing to redo");
+		seek(getPly() + 1);
+	}
+	/**
+	 * Moves the current board to any ply between 0 and {@link #getLastPly()}. Observers are
+	 * notified with {@link Observer.Event#UNDO} or {@link Observer.Event#REDO}. Calling
+	 * {@link #chooseMove(Move)} afterwards starts a new line of play and discards everything
+	 * after the current ply.
+	 *
+	 * @param ply the ply to go to
+	 * @throws IndexOutOfBoundsException if the ply is out of range
+	 */
+	void seek(int ply);
+	/**
+	 * Creates an independent model starting from the current board. The fork has no observers
+	 * and its history starts at the current ply; moves made on either model do not affect the
+	 * other. Forks share the underlying immutable game state so forking is cheap and a fork can
+	 * simply be dropped when no longer needed.
+	 * <br>
+	 * A model is not thread safe, but a fork may be handed to and advanced on any other thread.
+	 *
+	 * @return the forked model
+	 */
+	@Nonnull Model fork();
 }
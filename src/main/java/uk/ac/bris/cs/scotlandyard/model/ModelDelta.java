@@ -0,0 +1,115 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A POJO describing what a single {@link Model#chooseMove(Move)} changed on the board.
+ * <br>
+ * Use {@link #of(Board, Move, Board)} to create new instances; the model computes one delta per
+ * move and hands the same instance to every {@link Model.DeltaObserver}.
+ */
+public final class ModelDelta {
+	private final Move move;
+	private final int destination;
+	private final ImmutableMap<Piece, ImmutableMap<Ticket, Integer>> ticketChanges;
+	private final ImmutableList<LogEntry> appendedLog;
+	private final ImmutableSet<Piece> winner;
+
+	/**
+	 * @param before the board before the move was made
+	 * @param move the move that was made
+	 * @param after the board after the move was made
+	 * @return the delta between the two boards
+	 */
+	@Nonnull public static ModelDelta of(@Nonnull Board before,
+	                                     @Nonnull Move move,
+	                                     @Nonnull Board after) {
+		int destination = move.accept(new FunctionalVisitor<>(
+				m -> m.destination, m -> m.destination2));
+		Map<Ticket, Integer> used = new EnumMap<>(Ticket.class);
+		for (Ticket ticket : move.tickets()) used.merge(ticket, -1, Integer::sum);
+		var changes = ImmutableMap.<Piece, ImmutableMap<Ticket, Integer>>builder()
+				.put(move.commencedBy(), ImmutableMap.copyOf(used));
+		// tickets used by detectives are handed over to MrX
+		if (move.commencedBy().isDetective()) {
+			Map<Ticket, Integer> given = new EnumMap<>(Ticket.class);
+			used.forEach((ticket, n) -> given.put(ticket, -n));
+			changes.put(Piece.MrX.MRX, ImmutableMap.copyOf(given));
+		}
+		var log = after.getMrXTravelLog();
+		return new ModelDelta(move, destination, changes.build(),
+				log.subList(before.getMrXTravelLog().size(), log.size()),
+				after.getWinner());
+	}
+
+	private ModelDelta(@Nonnull Move move,
+	                   int destination,
+	                   @Nonnull ImmutableMap<Piece, ImmutableMap<Ticket, Integer>> ticketChanges,
+	                   @Nonnull ImmutableList<LogEntry> appendedLog,
+	                   @Nonnull ImmutableSet<Piece> winner) {
+		this.move = Objects.requireNonNull(move);
+		this.destination = destination;
+		this.ticketChanges = Objects.requireNonNull(ticketChanges);
+		this.appendedLog = Objects.requireNonNull(appendedLog);
+		this.winner = Objects.requireNonNull(winner);
+	}
+	/**
+	 * @return the move that was made
+	 */
+	@Nonnull public Move move() { return move; }
+	/**
+	 * @return the piece that moved
+	 */
+	@Nonnull public Piece piece() { return move.commencedBy(); }
+	/**
+	 * @return where the piece was before the move
+	 */
+	public int source() { return move.source(); }
+	/**
+	 * @return where the piece is after the move
+	 */
+	public int destination() { return destination; }
+	/**
+	 * @return the signed ticket count changes of every player affected by the move; players
+	 * not present in this map were not affected
+	 */
+	@Nonnull public ImmutableMap<Piece, ImmutableMap<Ticket, Integer>> ticketChanges() {
+		return ticketChanges;
+	}
+	/**
+	 * @return the entries appended to MrX's travel log by the move; empty for detective moves
+	 */
+	@Nonnull public ImmutableList<LogEntry> appendedLog() { return appendedLog; }
+	/**
+	 * @return the winner after the move; empty if the game has no winners yet
+	 */
+	@Nonnull public ImmutableSet<Piece> winner() { return winner; }
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		ModelDelta that = (ModelDelta) o;
+		return destination == that.destination &&
+				move.equals(that.move) &&
+				ticketChanges.equals(that.ticketChanges) &&
+				appendedLog.equals(that.appendedLog) &&
+				winner.equals(that.winner);
+	}
+	@Override public int hashCode() {
+		return Objects.hash(move, destination, ticketChanges, appendedLog, winner);
+	}
+	@Override public String toString() {
+		return "ModelDelta{" + move + ", tickets=" + ticketChanges + ", log=" + appendedLog +
+				", winner=" + winner + "}";
+	}
+}
@@ -7,7 +7,9 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 
 import javax.annotation.Nonnull;
+import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -15,22 +17,28 @@ public final class MyGameStateFactory implements Factory<GameState> {
 	private static final class MyGameState implements GameState {
 		private final GameSetup setup;
 		private final ImmutableSet<Piece> remaining;
-		private static ImmutableList<LogEntry> log;
-		private Player mrX;
-		private final List<Player> detectives;
-		private ImmutableSet<Move> moves;
-		private ImmutableSet<Piece> winner;
+		private final LogStore log;
+		private final int logSize;
+		private final Player mrX;
+		private final ImmutableList<Player> detectives;
+		// derived from the fields above on first use, racing threads compute equal values; the
+		// log view and moves are only softly held so states kept around for undo do not pin them
+		private volatile ImmutableSet<Piece> winner;
+		private volatile SoftReference<ImmutableList<LogEntry>> logView;
+		private volatile SoftReference<ImmutableSet<Move>> moves;
 
 
 		private MyGameState(
 				final GameSetup setup,
 				final ImmutableSet<Piece> remaining,
-				final ImmutableList<LogEntry> log,
+				final LogStore log,
+				final int logSize,
 				final Player mrX,
-				final List<Player> detectives) {
+				final ImmutableList<Player> detectives) {
 			this.setup = setup;
 			this.remaining = remaining;
 			this.log = log;
+			this.logSize = logSize;
 			this.mrX = mrX;
 			this.detectives = detectives;
 
@@ -69,7 +77,13 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		@Nonnull
 		@Override
 		public ImmutableList<LogEntry> getMrXTravelLog() {
-			return log;
+			SoftReference<ImmutableList<LogEntry>> cached = logView;
+			ImmutableList<LogEntry> view = cached == null ? null : cached.get();
+			if (view == null) {
+				view = ImmutableList.copyOf(Arrays.asList(log.entries).subList(0, logSize));
+				logView = new SoftReference<>(view);
+			}
+			return view;
 		}
 
 		@Nonnull
@@ -107,17 +121,19 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		@Nonnull
 		@Override
 		public ImmutableSet<Piece> getWinner() {
+			ImmutableSet<Piece> w = winner;
+			if (w == null) winner = w = computeWinner();
+			return w;
+		}
+
+		private ImmutableSet<Piece> computeWinner() {
 			Set<Piece> detectivesPiece = detectives.stream()
 					.map(Player::piece)
 					.collect(Collectors.toSet());
 
-			Set<Move> mrXMove = new HashSet<>();
-			mrXMove.addAll(makeSingleMoves(setup, detectives, mrX, mrX.location()));
-			mrXMove.addAll(makeDoubleMoves(setup, detectives, mrX, mrX.location()));
-
-			Set<Move.SingleMove> detectivesMove = detectives.stream()
-					.flatMap(player -> makeSingleMoves(setup, detectives, player, player.location()).stream())
-					.collect(Collectors.toSet());
+			// only whether anyone can move matters here, and a double move needs a single first
+			boolean detectivesCanMove = detectives.stream()
+					.anyMatch(player -> !makeSingleMoves(setup, detectives, player, player.location()).isEmpty());
 
 			Set<Integer> mrxDestination = new HashSet<>(setup.graph.adjacentNodes(mrX.location()));
 
@@ -127,7 +143,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 			List<Piece> tmpRemaining = new ArrayList<>(remaining);
 
-			if (log.size() == setup.moves.size() && tmpRemaining.contains(mrX.piece())) {
+			if (logSize == setup.moves.size() && tmpRemaining.contains(mrX.piece())) {
 				return ImmutableSet.of(mrX.piece());
 			}
 
@@ -135,7 +151,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				return ImmutableSet.copyOf(detectivesPiece);
 			}
 
-			if (detectivesMove.isEmpty()) {
+			if (!detectivesCanMove) {
 				return detectiveLocation.contains(mrX.location()) ? ImmutableSet.copyOf(detectivesPiece) : ImmutableSet.of(mrX.piece());
 			}
 
@@ -145,7 +161,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				}
 			}
 
-			if (mrXMove.isEmpty() && tmpRemaining.get(0) == mrX.piece()) {
+			if (makeSingleMoves(setup, detectives, mrX, mrX.location()).isEmpty() && tmpRemaining.get(0) == mrX.piece()) {
 				for (Player player : detectives) {
 					if (player.location() == mrX.location()) {
 						return ImmutableSet.copyOf(detectivesPiece);
@@ -160,7 +176,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 
 		private static Set<Move.SingleMove> makeSingleMoves(GameSetup setup, List<Player> detectives, Player player, int source) {
-			Set<Move.SingleMove> singleMoves = new HashSet<>();
+			Set<Move.SingleMove> singleMoves = new LinkedHashSet<>();
 
 			for (int destination : setup.graph.adjacentNodes(source)) {
 				boolean locationOccupiedByDetective = false;
@@ -192,7 +208,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		}
 
 		private static Set<Move.DoubleMove> makeDoubleMoves(GameSetup setup, List<Player> detectives, Player player, int source) {
-			Set<Move.DoubleMove> doubleMoves = new HashSet<>();
+			Set<Move.DoubleMove> doubleMoves = new LinkedHashSet<>();
 
 			for (int firstDestination : setup.graph.adjacentNodes(source)) {
 				boolean firstLocationOccupiedByDetective = false;
@@ -284,16 +300,26 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		@Nonnull
 		@Override
 		public ImmutableSet<Move> getAvailableMoves() {
-			Set<Move> allMoves = new HashSet<>();
+			SoftReference<ImmutableSet<Move>> cached = moves;
+			ImmutableSet<Move> m = cached == null ? null : cached.get();
+			if (m == null) {
+				m = computeAvailableMoves();
+				moves = new SoftReference<>(m);
+			}
+			return m;
+		}
+
+		private ImmutableSet<Move> computeAvailableMoves() {
+			// insertion ordered so moves come out in the same order on every run
+			Set<Move> allMoves = new LinkedHashSet<>();
 			List<Piece> availablePieces = new ArrayList<>(remaining);
 			Piece currentPieceMove = availablePieces.get(0);
-			winner = getWinner();
-			if (!winner.isEmpty()) {
+			if (!getWinner().isEmpty()) {
 				return ImmutableSet.of();
 			}
 
 			if (currentPieceMove.isMrX()) {
-				if (!(!mrX.has(Ticket.DOUBLE) || !(setup.moves.size() - log.size() >= 2))) {
+				if (!(!mrX.has(Ticket.DOUBLE) || !(setup.moves.size() - logSize >= 2))) {
 					allMoves.addAll(makeSingleMoves(setup, detectives, mrX, mrX.location()));
 					allMoves.addAll(makeDoubleMoves(setup, detectives, mrX, mrX.location()));
 				} else {
@@ -314,14 +340,11 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		@Nonnull
 		@Override
 		public GameState advance(Move move) {
-			moves = getAvailableMoves();
-			if(!moves.contains(move)) {
+			if(!getAvailableMoves().contains(move)) {
 				throw new IllegalArgumentException("Illegal move: "+move);
 			}
 
 			List<Piece> pieces = new ArrayList<>();
-			List<Player> detective = new ArrayList<>(detectives);
-			List<LogEntry> logList = new ArrayList<>(log);
 
 			int destination = move.accept(new Move.Visitor<>() {
                 @Override
@@ -341,7 +364,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				@Override
 				public List<LogEntry> visit(Move.SingleMove move) {
 					if (move.commencedBy().isMrX()) {
-						if (setup.moves.get(log.size())) {
+						if (setup.moves.get(logSize)) {
 							logEntries.add(LogEntry.reveal(move.ticket, move.destination));
 						} else logEntries.add(LogEntry.hidden(move.ticket));
 					}
@@ -351,12 +374,12 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				@Override
 				public List<LogEntry> visit(Move.DoubleMove move) {
 					if (move.commencedBy().isMrX()) {
-						if (setup.moves.get(log.size())) {
+						if (setup.moves.get(logSize)) {
 							logEntries.add(LogEntry.reveal(move.ticket1, move.destination1));
 						} else {
 							logEntries.add(LogEntry.hidden(move.ticket1));
 						}
-						if (setup.moves.get(log.size() + 1)) {
+						if (setup.moves.get(logSize + 1)) {
 							logEntries.add(LogEntry.reveal(move.ticket2, move.destination2));
 						} else logEntries.add(LogEntry.hidden(move.ticket2));
 					}
@@ -364,28 +387,32 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				}
 			});
 
+			// the new state shares everything the move did not touch with this one, this state
+			// must stay as it is as models keep previous states around for undo
+			Player nextMrX = mrX;
+			ImmutableList<Player> nextDetectives = detectives;
+			LogStore nextLog = log;
+
 			if (move.commencedBy().isMrX()){
-				mrX = mrX.use(move.tickets());
-				mrX = mrX.at(destination);
+				nextMrX = mrX.use(move.tickets()).at(destination);
 
 				for (Player player : detectives) {
 					if (!makeSingleMoves(setup,detectives,player,player.location()).isEmpty()){
 						pieces.add(player.piece());
 					}
 				}
-				logList.addAll(newLog);
+				nextLog = log.append(logSize, newLog);
 			}
 
 			if (move.commencedBy().isDetective()) {
-                for (Player player : detectives) {
-                    if (player.piece().equals(move.commencedBy())) {
-                        detective.remove(player);
-                        player = player.at(destination);
-                        player = player.use(move.tickets());
-                        detective.add(player);
-                        mrX = mrX.give(move.tickets());
-                    }
-                }
+				ImmutableList.Builder<Player> builder = ImmutableList.builder();
+				for (Player player : detectives) {
+					if (player.piece().equals(move.commencedBy())) {
+						builder.add(player.at(destination).use(move.tickets()));
+						nextMrX = mrX.give(move.tickets());
+					} else builder.add(player);
+				}
+				nextDetectives = builder.build();
 				pieces.addAll(remaining);
 				pieces.remove(move.commencedBy());
 				if (pieces.isEmpty()) {
@@ -393,12 +420,43 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				}
 			}
 
-			return new MyGameState(setup, ImmutableSet.copyOf(pieces), ImmutableList.copyOf(logList), mrX, detective);
+			return new MyGameState(setup, ImmutableSet.copyOf(pieces), nextLog,
+					logSize + newLog.size(), nextMrX, nextDetectives);
 		}
 
 
 	}
 
+	/**
+	 * MrX's travel log shared by a line of play, each state seeing the first entries up to its
+	 * own log size. The first state to append past the used part writes in place, any other state
+	 * appending copies the part it sees, so a ply only costs the entries it adds while undone and
+	 * forked lines still never see each other's entries.
+	 */
+	private static final class LogStore {
+		final LogEntry[] entries;
+		final AtomicInteger used;
+
+		LogStore(LogEntry[] entries, int used) {
+			this.entries = entries;
+			this.used = new AtomicInteger(used);
+		}
+
+		/**
+		 * @param size the log size of the state appending
+		 * @param added the entries to append
+		 * @return the store holding the state's log followed by the added entries
+		 */
+		LogStore append(int size, List<LogEntry> added) {
+			int end = size + added.size();
+			LogStore store = this;
+			if (end > entries.length || !used.compareAndSet(size, end))
+				store = new LogStore(Arrays.copyOf(entries, Math.max(end, entries.length)), end);
+			for (int i = 0; i < added.size(); i++) store.entries[size + i] = added.get(i);
+			return store;
+		}
+	}
+
 	@Nonnull
 	public GameState build(
 			GameSetup setup,
@@ -413,6 +471,40 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				detectives.stream().map(Player::piece)
 		).collect(ImmutableSet.toImmutableSet());
 
-		return new MyGameState(setup, remainingPieces, ImmutableList.of(), mrX, detectives);
+		return new MyGameState(setup, remainingPieces,
+				new LogStore(new LogEntry[setup.moves.size()], 0), 0, mrX, detectives);
+	}
+
+	/**
+	 * Builds a game state part way through a game, e.g. to search from a board given to an
+	 * {@link Ai} or from a position where MrX's location is only guessed.
+	 *
+	 * @param setup the game setup
+	 * @param mrX MrX player
+	 * @param detectives detective players
+	 * @param log MrX's travel log so far
+	 * @param remaining the pieces still to move; MrX alone when it is his turn
+	 * @return the game state
+	 */
+	@Nonnull
+	public GameState resume(
+			GameSetup setup,
+			Player mrX,
+			ImmutableList<Player> detectives,
+			ImmutableList<LogEntry> log,
+			ImmutableSet<Piece> remaining) {
+		if (setup.graph.nodes().isEmpty()) {
+			throw new IllegalArgumentException("Graph cannot be empty");
+		}
+		if (remaining.isEmpty()) {
+			throw new IllegalArgumentException("At least one piece must be remaining");
+		}
+		if (log.size() > setup.moves.size()) {
+			throw new IllegalArgumentException("Travel log is longer than the game");
+		}
+
+		var entries = Arrays.copyOf(log.toArray(new LogEntry[0]), setup.moves.size());
+		return new MyGameState(setup, remaining, new LogStore(entries, log.size()), log.size(),
+				mrX, detectives);
 	}
 }
\ No newline at end of file
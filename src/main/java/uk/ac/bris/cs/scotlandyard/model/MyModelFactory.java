@@ -3,7 +3,9 @@ package uk.ac.bris.cs.scotlandyard.model;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import javax.annotation.Nonnull;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 public final class MyModelFactory implements ScotlandYard.Factory<Model> {
@@ -17,9 +19,19 @@ public final class MyModelFactory implements ScotlandYard.Factory<Model> {
 	private static class MyModel implements Model {
 		private final Set<Observer> observers = new HashSet<>();
 		private Board.GameState gameState;
+		// game states by ply; states are immutable and share whatever a move did not change so
+		// each ply only costs the slot and the parts of the state the move replaced
+		private Board.GameState[] history = new Board.GameState[32];
+		private int ply;
+		private int lastPly;
 
 		private MyModel(final GameSetup setup, final Player mrX, final ImmutableList<Player> detectives) {
-			this.gameState = new MyGameStateFactory().build(setup, mrX, detectives);
+			this(new MyGameStateFactory().build(setup, mrX, detectives));
+		}
+
+		private MyModel(final Board.GameState gameState) {
+			this.gameState = gameState;
+			this.history[0] = gameState;
 		}
 
 		@Nonnull
@@ -52,9 +64,40 @@ public final class MyModelFactory implements ScotlandYard.Factory<Model> {
 
 		@Override
 		public void chooseMove(@Nonnull Move move) {
+			Board.GameState before = gameState;
 			gameState = gameState.advance(move);
-			Observer.Event event = gameState.getWinner().isEmpty() ? Observer.Event.MOVE_MADE : Observer.Event.GAME_OVER;
+			if (ply + 1 == history.length) history = Arrays.copyOf(history, history.length * 2);
+			// slots after the new ply belong to the discarded line and get overwritten as the new
+			// line grows, so branching never has to clear anything
+			history[++ply] = gameState;
+			lastPly = ply;
+			ModelDelta delta = ModelDelta.of(before, move, gameState);
+			Observer.Event event = delta.winner().isEmpty() ? Observer.Event.MOVE_MADE : Observer.Event.GAME_OVER;
+			observers.forEach(observer -> {
+				if (observer instanceof DeltaObserver)
+					((DeltaObserver) observer).onModelChanged(gameState, event, delta);
+				else observer.onModelChanged(gameState, event);
+			});
+		}
+
+		@Override public int getPly() { return ply; }
+
+		@Override public int getLastPly() { return lastPly; }
+
+		@Override
+		public void seek(int ply) {
+			Objects.checkIndex(ply, lastPly + 1);
+			if (ply == this.ply) return;
+			Observer.Event event = ply < this.ply ? Observer.Event.UNDO : Observer.Event.REDO;
+			this.ply = ply;
+			gameState = history[ply];
 			observers.forEach(observer -> observer.onModelChanged(gameState, event));
 		}
+
+		@Nonnull
+		@Override
+		public Model fork() {
+			return new MyModel(gameState);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Expands station bitsets to their neighbours over a {@link TransportAdjacency}. This is the
+ * common step of belief tracking, flood fills and distance fields.
+ * <br>
+ * Batches are flat arrays of {@code count} bitsets of {@link TransportAdjacency#words()} longs
+ * each, for example one bitset per sampled game.
+ * <br>
+ * {@link #create(TransportAdjacency)} uses the {@code jdk.incubator.vector} implementation when
+ * it was compiled in (the {@code vector} build profile) and the module is available at runtime
+ * ({@code --add-modules jdk.incubator.vector}), otherwise the scalar one.
+ */
+public abstract class ReachabilityKernel {
+
+	private static final String VECTOR_KERNEL =
+			"uk.ac.bris.cs.scotlandyard.model.VectorReachabilityKernel";
+
+	protected final TransportAdjacency adjacency;
+
+	protected ReachabilityKernel(@Nonnull TransportAdjacency adjacency) {
+		this.adjacency = Objects.requireNonNull(adjacency);
+	}
+
+	/**
+	 * @param adjacency the adjacency to expand over
+	 * @return the fastest kernel available in this JVM
+	 */
+	@Nonnull public static ReachabilityKernel create(@Nonnull TransportAdjacency adjacency) {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (ReachabilityKernel) Class.forName(VECTOR_KERNEL)
+						.getDeclaredConstructor(TransportAdjacency.class)
+						.newInstance(adjacency);
+			} catch (ReflectiveOperationException | LinkageError ignored) {
+				// not compiled in, use the scalar kernel
+			}
+		}
+		return scalar(adjacency);
+	}
+
+	/**
+	 * @param adjacency the adjacency to expand over
+	 * @return the scalar kernel
+	 */
+	@Nonnull public static ReachabilityKernel scalar(@Nonnull TransportAdjacency adjacency) {
+		return new ScalarKernel(adjacency);
+	}
+
+	/**
+	 * @return the adjacency this kernel expands over
+	 */
+	@Nonnull public TransportAdjacency adjacency() { return adjacency; }
+
+	/**
+	 * @return a short name of the implementation
+	 */
+	@Nonnull public abstract String name();
+
+	/**
+	 * Writes the neighbours of every bitset in a batch to the matching bitset of the output.
+	 *
+	 * @param in the input batch
+	 * @param out the output batch, must not be the input
+	 * @param count the number of bitsets in the batch
+	 * @param mask the transports edges may use, see {@link TransportAdjacency#mask}
+	 * @param exclude bits cleared from the outputs; either one bitset shared by the whole batch
+	 * or one per bitset laid out like the batch; or null
+	 */
+	public abstract void expandBatch(@Nonnull long[] in, @Nonnull long[] out, int count,
+	                                 int mask, @Nullable long[] exclude);
+
+	/**
+	 * Writes the neighbours of one bitset to another, see
+	 * {@link #expandBatch(long[], long[], int, int, long[])}
+	 */
+	public void expand(@Nonnull long[] in, @Nonnull long[] out, int mask) {
+		expandBatch(in, out, 1, mask, null);
+	}
+
+	/**
+	 * @param seeds the starting stations as a bitset
+	 * @param mask the transports edges may use
+	 * @param steps the maximum number of moves
+	 * @return every station reachable from the seeds within the given number of moves
+	 */
+	@Nonnull public long[] floodFill(@Nonnull long[] seeds, int mask, int steps) {
+		int words = adjacency.words();
+		long[] reached = Arrays.copyOf(seeds, words);
+		long[] frontier = reached.clone();
+		long[] next = new long[words];
+		for (int i = 0; i < steps; i++) {
+			expand(frontier, next, mask);
+			boolean grew = false;
+			for (int w = 0; w < words; w++) {
+				frontier[w] = next[w] & ~reached[w];
+				reached[w] |= frontier[w];
+				grew |= frontier[w] != 0;
+			}
+			if (!grew) break;
+		}
+		return reached;
+	}
+
+	/**
+	 * Fills in the number of moves from the source to every station, -1 where unreachable or
+	 * more than {@link Byte#MAX_VALUE} moves away.
+	 *
+	 * @param source the source station
+	 * @param mask the transports edges may use
+	 * @param distances the output, at least {@link TransportAdjacency#nodes()} long
+	 */
+	public void distanceField(int source, int mask, @Nonnull byte[] distances) {
+		int words = adjacency.words();
+		Arrays.fill(distances, 0, adjacency.nodes(), (byte) -1);
+		long[] reached = new long[words];
+		reached[source >>> 6] |= 1L << source;
+		long[] frontier = reached.clone();
+		long[] next = new long[words];
+		distances[source] = 0;
+		for (int depth = 1; depth <= Byte.MAX_VALUE; depth++) {
+			expand(frontier, next, mask);
+			boolean grew = false;
+			for (int w = 0; w < words; w++) {
+				long fresh = next[w] & ~reached[w];
+				frontier[w] = fresh;
+				reached[w] |= fresh;
+				grew |= fresh != 0;
+				while (fresh != 0) {
+					distances[(w << 6) + Long.numberOfTrailingZeros(fresh)] = (byte) depth;
+					fresh &= fresh - 1;
+				}
+			}
+			if (!grew) break;
+		}
+	}
+
+	private static final class ScalarKernel extends ReachabilityKernel {
+		ScalarKernel(TransportAdjacency adjacency) { super(adjacency); }
+
+		@Nonnull @Override public String name() { return "scalar"; }
+
+		@Override public void expandBatch(@Nonnull long[] in, @Nonnull long[] out, int count,
+		                                  int mask, @Nullable long[] exclude) {
+			long[] rows = adjacency.rows(mask);
+			int words = adjacency.words();
+			for (int b = 0; b < count; b++) {
+				int base = b * words;
+				Arrays.fill(out, base, base + words, 0L);
+				for (int w = 0; w < words; w++) {
+					long bits = in[base + w];
+					while (bits != 0) {
+						int row = ((w << 6) + Long.numberOfTrailingZeros(bits)) * words;
+						bits &= bits - 1;
+						for (int i = 0; i < words; i++) out[base + i] |= rows[row + i];
+					}
+				}
+				if (exclude != null) {
+					int e = exclude.length == words ? 0 : base;
+					for (int i = 0; i < words; i++) out[base + i] &= ~exclude[e + i];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,413 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Solved endgames of MrX against one or two detectives, everyone seeing everyone.
+ * <br>
+ * Tickets are abstracted away: everyone moves by taxi, bus or underground as often as they like,
+ * MrX has no double moves and nobody takes ferries. For every MrX station and detective stations,
+ * detectives listed in turn order, the table holds how many more rounds MrX survives with MrX to
+ * move, capped at {@link #FOREVER}. MrX facing {@code r} rounds left wins if the value is at least
+ * {@code r}; otherwise the detectives catch him on the round after the value, at best for MrX.
+ * <br>
+ * Values are built round by round backwards from the last: MrX survives {@code r} rounds where
+ * one of his moves leads to a station every reply of the detectives leaves him alive on with
+ * {@code r - 1} rounds to go. Per detective stations that is a few bitset ANDs and one
+ * {@link ReachabilityKernel#expand}, spread over all processors. Values are five bits, twelve to a
+ * long, in a file mapped like {@link DistanceOracle}'s and named after the graph's fingerprint.
+ * <br>
+ * {@link #outcome} only answers positions whose real tickets cannot make the abstraction wrong,
+ * which late in a larger game includes those where all but one or two detectives are out of
+ * tickets and too far away to matter.
+ * Tablebases are immutable and safe to share between threads.
+ */
+public final class Tablebase {
+
+	/**
+	 * Survival value of positions MrX survives any game from
+	 */
+	public static final int FOREVER = 31;
+
+	/**
+	 * {@link #outcome} of positions the tablebase cannot decide
+	 */
+	public static final int UNKNOWN = -1;
+	/**
+	 * {@link #outcome} of positions MrX wins
+	 */
+	public static final int MRX_WINS = 1;
+	/**
+	 * {@link #outcome} of positions the detectives win
+	 */
+	public static final int DETECTIVES_WIN = 0;
+
+	/**
+	 * The most detectives solved
+	 */
+	public static final int MAX_DETECTIVES = 2;
+
+	private static final long MAGIC = 0x5359544241534501L;
+	private static final int HEADER = 3 * Long.BYTES;
+	private static final int BITS = 5;
+	private static final int PER_LONG = Long.SIZE / BITS;
+	private static final int MASK = TransportAdjacency.mask(
+			Transport.TAXI, Transport.BUS, Transport.UNDERGROUND);
+
+	private final int nodes;
+	private final String fingerprint;
+	// one table per detective count, from 1
+	private final LongBuffer[] tables;
+
+	private Tablebase(int nodes, String fingerprint, LongBuffer[] tables) {
+		this.nodes = nodes;
+		this.fingerprint = fingerprint;
+		this.tables = tables;
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return the tablebase of the graph, solved in memory
+	 */
+	@Nonnull public static Tablebase build(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		var kernel = ReachabilityKernel.create(TransportAdjacency.of(graph));
+		var tables = new LongBuffer[MAX_DETECTIVES];
+		for (int k = 1; k <= MAX_DETECTIVES; k++)
+			tables[k - 1] = LongBuffer.wrap(pack(new Solver(kernel, k).solve())).asReadOnlyBuffer();
+		return new Tablebase(kernel.adjacency().nodes(), DistanceOracle.fingerprint(graph), tables);
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @param directory the directory the tablebase was written to
+	 * @return the tablebase of the graph mapped from the directory, null if it has not been
+	 * written there
+	 */
+	@Nullable public static Tablebase open(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+			@Nonnull Path directory) {
+		String fingerprint = DistanceOracle.fingerprint(graph);
+		int nodes = TransportAdjacency.of(graph).nodes();
+		Path file = file(directory, fingerprint);
+		if (!Files.isRegularFile(file)) return null;
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long expected = HEADER;
+			for (int k = 1; k <= MAX_DETECTIVES; k++) expected += longs(nodes, k) * Long.BYTES;
+			if (channel.size() != expected) return null;
+			var header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining()) if (channel.read(header, header.position()) < 0) return null;
+			header.flip();
+			if (header.getLong() != MAGIC || header.getLong() != nodes
+					|| header.getLong() != MAX_DETECTIVES) return null;
+			var tables = new LongBuffer[MAX_DETECTIVES];
+			long offset = HEADER;
+			for (int k = 1; k <= MAX_DETECTIVES; k++) {
+				long size = longs(nodes, k) * Long.BYTES;
+				// the mapping stays valid once the channel is closed
+				tables[k - 1] = channel.map(FileChannel.MapMode.READ_ONLY, offset, size)
+						.asLongBuffer();
+				offset += size;
+			}
+			return new Tablebase(nodes, fingerprint, tables);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the tablebase where {@link #open} finds it, replacing any file by renaming.
+	 *
+	 * @param directory the directory
+	 */
+	public void write(@Nonnull Path directory) throws IOException {
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, "tablebase-", ".tmp");
+		try {
+			try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				var header = ByteBuffer.allocate(HEADER)
+						.putLong(MAGIC).putLong(nodes).putLong(MAX_DETECTIVES).flip();
+				while (header.hasRemaining()) channel.write(header);
+				for (LongBuffer table : tables) {
+					var bytes = ByteBuffer.allocate(table.limit() * Long.BYTES);
+					bytes.asLongBuffer().put(table.duplicate().clear());
+					while (bytes.hasRemaining()) channel.write(bytes);
+				}
+			}
+			try {
+				Files.move(temporary, file(directory, fingerprint), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file(directory, fingerprint),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static Path file(Path directory, String fingerprint) {
+		return directory.resolve("tablebase-" + fingerprint + ".bin");
+	}
+
+	private static long longs(int nodes, int detectives) {
+		long values = 1;
+		for (int i = 0; i <= detectives; i++) values *= nodes;
+		return (values + PER_LONG - 1) / PER_LONG;
+	}
+
+	private static long[] pack(byte[] values) {
+		long[] packed = new long[(values.length + PER_LONG - 1) / PER_LONG];
+		for (int i = 0; i < values.length; i++)
+			packed[i / PER_LONG] |= (long) values[i] << (i % PER_LONG * BITS);
+		return packed;
+	}
+
+	/**
+	 * @return the fingerprint of the graph the tablebase was built from
+	 */
+	@Nonnull public String fingerprint() { return fingerprint; }
+
+	/**
+	 * @param mrX MrX's station
+	 * @param detective the detective's station
+	 * @return the rounds MrX survives against one detective, MrX to move
+	 */
+	public int survival(int mrX, int detective) {
+		return value(0, (long) Objects.checkIndex(detective, nodes) * nodes
+				+ Objects.checkIndex(mrX, nodes));
+	}
+
+	/**
+	 * @param mrX MrX's station
+	 * @param first the station of the detective moving first
+	 * @param second the station of the detective moving second
+	 * @return the rounds MrX survives against two detectives, MrX to move
+	 */
+	public int survival(int mrX, int first, int second) {
+		return value(1, ((long) Objects.checkIndex(first, nodes) * nodes
+				+ Objects.checkIndex(second, nodes)) * nodes + Objects.checkIndex(mrX, nodes));
+	}
+
+	private int value(int table, long index) {
+		return (int) (tables[table].get((int) (index / PER_LONG))
+				>>> (index % PER_LONG * BITS)) & ((1 << BITS) - 1);
+	}
+
+	/**
+	 * Decides a position if at most {@link #MAX_DETECTIVES} detectives still hold a taxi, bus or
+	 * underground ticket and the tickets held cannot make the abstraction wrong: MrX's win needs
+	 * him to afford his abstract moves for every round left, the detectives' win needs them to
+	 * afford theirs and MrX to have nothing beyond his. Detectives without tickets never move
+	 * again and are left out, but only while their stations are more moves away from MrX and
+	 * from every other detective than there are rounds left, so nobody could ever step on them.
+	 *
+	 * @param state the state, MrX to move and on the graph the tablebase was built from
+	 * @param mrX MrX's station
+	 * @return {@link #MRX_WINS}, {@link #DETECTIVES_WIN} or {@link #UNKNOWN}
+	 */
+	public int outcome(@Nonnull Board state, int mrX) {
+		var players = state.getPlayers();
+		int rounds = state.getSetup().moves.size() - state.getMrXTravelLog().size();
+		int[] at = new int[MAX_DETECTIVES];
+		int[] stuck = new int[players.size()];
+		int detectives = 0;
+		int blocked = 0;
+		boolean detectivesAfford = true;
+		for (Piece piece : players) {
+			if (piece.isMrX()) continue;
+			int station = state.getDetectiveLocation((Detective) piece).orElseThrow();
+			var tickets = state.getPlayerTickets(piece).orElseThrow();
+			if (!mobile(tickets)) {
+				stuck[blocked++] = station;
+				continue;
+			}
+			if (detectives == MAX_DETECTIVES) return UNKNOWN;
+			at[detectives++] = station;
+			detectivesAfford &= affords(tickets, rounds);
+		}
+		if (detectives == 0) return UNKNOWN;
+		if (blocked > 0) {
+			var distances =
+					AnalysisRegistry.get(state.getSetup().graph, AnalysisRegistry.DISTANCES);
+			for (int b = 0; b < blocked; b++) {
+				if (reaches(distances, mrX, stuck[b], rounds)) return UNKNOWN;
+				for (int d = 0; d < detectives; d++)
+					if (reaches(distances, at[d], stuck[b], rounds)) return UNKNOWN;
+			}
+		}
+		int survival = detectives == 1 ? survival(mrX, at[0]) : survival(mrX, at[0], at[1]);
+		var mrXTickets = state.getPlayerTickets(Piece.MrX.MRX).orElseThrow();
+		if (survival >= rounds) return affords(mrXTickets, rounds) ? MRX_WINS : UNKNOWN;
+		boolean mrXHasMore = mrXTickets.getCount(Ticket.DOUBLE) > 0
+				|| mrXTickets.getCount(Ticket.SECRET) > 0;
+		return detectivesAfford && !mrXHasMore ? DETECTIVES_WIN : UNKNOWN;
+	}
+
+	private static boolean mobile(Board.TicketBoard tickets) {
+		return tickets.getCount(Ticket.TAXI) > 0 || tickets.getCount(Ticket.BUS) > 0
+				|| tickets.getCount(Ticket.UNDERGROUND) > 0;
+	}
+
+	private static boolean reaches(DistanceOracle distances, int from, int to, int rounds) {
+		int distance = distances.distance(MASK, from, to);
+		return distance >= 0 && distance <= rounds;
+	}
+
+	private static boolean affords(Board.TicketBoard tickets, int rounds) {
+		return tickets.getCount(Ticket.TAXI) >= rounds && tickets.getCount(Ticket.BUS) >= rounds
+				&& tickets.getCount(Ticket.UNDERGROUND) >= rounds;
+	}
+
+	/**
+	 * Solves one detective count. Detective stations index as a base {@code nodes} number, first
+	 * detective most significant, and each has a bitset of the MrX stations alive.
+	 */
+	private static final class Solver {
+
+		private final ReachabilityKernel kernel;
+		private final int nodes;
+		private final int words;
+		private final int detectives;
+		private final int[][] successors;
+
+		Solver(ReachabilityKernel kernel, int detectives) {
+			this.kernel = kernel;
+			this.nodes = kernel.adjacency().nodes();
+			this.words = kernel.adjacency().words();
+			this.detectives = detectives;
+			long[] rows = kernel.adjacency().rows(MASK);
+			this.successors = new int[nodes][];
+			for (int n = 0; n < nodes; n++) {
+				int[] next = new int[nodes];
+				int count = 0;
+				for (int w = 0; w < words; w++) {
+					long bits = rows[n * words + w];
+					while (bits != 0) {
+						next[count++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+					}
+				}
+				successors[n] = Arrays.copyOf(next, count);
+			}
+		}
+
+		byte[] solve() {
+			int positions = 1;
+			for (int i = 0; i < detectives; i++) positions *= nodes;
+			// before any round MrX is alive wherever no detective stands
+			long[] alive = new long[positions * words];
+			for (int p = 0; p < positions; p++) {
+				for (int n = 0; n < nodes; n++) alive[p * words + (n >>> 6)] |= 1L << n;
+				for (int w = 0; w < words; w++) alive[p * words + w] &= ~occupied(p, w);
+			}
+			byte[] survival = new byte[positions * nodes];
+			long[] next = new long[alive.length];
+			for (int round = 1; round <= FOREVER; round++) {
+				long[] previous = alive;
+				long[] current = next;
+				IntStream.range(0, positions).parallel()
+						.forEach(p -> step(previous, current, p));
+				boolean changed = false;
+				for (int p = 0; p < positions; p++) {
+					for (int w = 0; w < words; w++) {
+						long bits = current[p * words + w];
+						changed |= bits != previous[p * words + w];
+						while (bits != 0) {
+							survival[p * nodes + (w << 6) + Long.numberOfTrailingZeros(bits)]++;
+							bits &= bits - 1;
+						}
+					}
+				}
+				next = previous;
+				alive = current;
+				if (!changed) {
+					// nothing changes from here on, whoever is still alive always will be
+					for (int p = 0; p < positions; p++)
+						for (int mrX = 0; mrX < nodes; mrX++)
+							if ((alive[p * words + (mrX >>> 6)] & 1L << mrX) != 0)
+								survival[p * nodes + mrX] = FOREVER;
+					break;
+				}
+			}
+			return survival;
+		}
+
+		/**
+		 * Finds where MrX survives one more round with the detectives at the given position:
+		 * next to a station alive after every reply.
+		 */
+		private void step(long[] previous, long[] current, int position) {
+			long[] safe = new long[words];
+			Arrays.fill(safe, -1L);
+			if (detectives == 1) {
+				int[] moves = successors[position];
+				if (moves.length == 0) and(safe, previous, position, position, position);
+				for (int to : moves) and(safe, previous, to, to, to);
+			} else {
+				int first = position / nodes;
+				int second = position % nodes;
+				boolean firstMoved = false;
+				for (int a : successors[first]) {
+					if (a == second) continue;
+					firstMoved = true;
+					replies(safe, previous, a, second);
+				}
+				if (!firstMoved) replies(safe, previous, first, second);
+			}
+			int base = position * words;
+			long[] out = new long[words];
+			for (int w = 0; w < words; w++) safe[w] &= ~occupied(position, w);
+			kernel.expand(safe, out, MASK);
+			for (int w = 0; w < words; w++) current[base + w] = out[w] & ~occupied(position, w);
+		}
+
+		private void replies(long[] safe, long[] previous, int first, int second) {
+			boolean moved = false;
+			for (int b : successors[second]) {
+				if (b == first) continue;
+				moved = true;
+				and(safe, previous, first * nodes + b, first, b);
+			}
+			if (!moved) and(safe, previous, first * nodes + second, first, second);
+		}
+
+		private void and(long[] safe, long[] previous, int position, int first, int second) {
+			int base = position * words;
+			for (int w = 0; w < words; w++) safe[w] &= previous[base + w];
+			// caught on arrival
+			safe[first >>> 6] &= ~(1L << first);
+			safe[second >>> 6] &= ~(1L << second);
+		}
+
+		private long occupied(int position, int word) {
+			long bits = 0;
+			for (int i = 0, p = position; i < detectives; i++, p /= nodes) {
+				int station = p % nodes;
+				if (station >>> 6 == word) bits |= 1L << station;
+			}
+			return bits;
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Which stations every detective reaches first and which MrX reaches before any of them, the
+ * Voronoi regions of the graph with distance in moves.
+ * <br>
+ * One breadth first search runs from every player at once, each player's frontier a bitset as in
+ * {@link TransportAdjacency} expanded along the transports they still hold tickets for. Players
+ * pass through each other's regions; a station goes to whoever reaches it in the fewest moves.
+ * Detectives win ties with MrX since one arriving with him catches him there; a station two or
+ * more detectives reach first is contested and in no detective's region. MrX may start from a
+ * set of stations, such as a {@link BeliefTracker}'s, and his region is then every station some
+ * start of his reaches first.
+ * <br>
+ * The search stops once every station has gone to someone. Ticket counts only filter
+ * transports, running out part way is not modelled. One instance reuses its bitsets between
+ * computations and is not thread safe.
+ */
+public final class Territory {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private final ReachabilityKernel kernel;
+	private final int words;
+	private final long[] stations;
+	private final long[] claimed;
+	private final long[] contested;
+	private final long[] any;
+	private final long[] twice;
+	private final long[] mrXRegion;
+	private final long[] mrXFrontier;
+	private final long[] mrXSeen;
+	private final long[] next;
+	private final long[] mrXNext;
+	private long[][] regions = new long[0][];
+	private long[][] frontiers = new long[0][];
+	private long[][] seen = new long[0][];
+	private boolean[] live = new boolean[0];
+	private int detectives;
+
+	/**
+	 * @param kernel the kernel of the game graph
+	 */
+	public Territory(@Nonnull ReachabilityKernel kernel) {
+		this.kernel = Objects.requireNonNull(kernel);
+		this.words = kernel.adjacency().words();
+		this.stations = new long[words];
+		long[] rows = kernel.adjacency().rows(TransportAdjacency.ALL);
+		for (int n = 0; n < kernel.adjacency().nodes(); n++)
+			for (int w = 0; w < words; w++)
+				if (rows[n * words + w] != 0) stations[n >>> 6] |= 1L << n;
+		this.claimed = new long[words];
+		this.contested = new long[words];
+		this.any = new long[words];
+		this.twice = new long[words];
+		this.mrXRegion = new long[words];
+		this.mrXFrontier = new long[words];
+		this.mrXSeen = new long[words];
+		this.next = new long[words];
+		this.mrXNext = new long[words];
+	}
+
+	/**
+	 * @param tickets the tickets of a player
+	 * @return a mask of the transports the player holds at least one ticket for
+	 */
+	public static int mask(@Nonnull Board.TicketBoard tickets) {
+		int mask = 0;
+		for (Ticket ticket : TICKETS)
+			if (tickets.getCount(ticket) > 0) mask |= TransportAdjacency.mask(ticket);
+		return mask;
+	}
+
+	/**
+	 * Computes the regions of the board's detectives with their tickets against MrX with his.
+	 *
+	 * @param board the board
+	 * @param mrX the stations MrX could be at
+	 */
+	public void compute(@Nonnull Board board, @Nonnull long[] mrX) {
+		var players = board.getPlayers();
+		int[] locations = new int[players.size() - 1];
+		int[] masks = new int[locations.length];
+		int d = 0;
+		for (Piece piece : players) {
+			if (piece.isMrX()) continue;
+			locations[d] = board.getDetectiveLocation((Detective) piece).orElseThrow();
+			masks[d++] = mask(board.getPlayerTickets(piece).orElseThrow());
+		}
+		compute(mrX, mask(board.getPlayerTickets(Piece.MrX.MRX).orElseThrow()), locations, masks);
+	}
+
+	/**
+	 * Computes the regions from the given starts.
+	 *
+	 * @param mrX the stations MrX could be at
+	 * @param mrXMask the transports MrX can use, see {@link TransportAdjacency#mask}
+	 * @param locations the station of every detective
+	 * @param masks the transports every detective can use
+	 */
+	public void compute(@Nonnull long[] mrX, int mrXMask, @Nonnull int[] locations,
+	                    @Nonnull int[] masks) {
+		if (locations.length != masks.length)
+			throw new IllegalArgumentException("A mask is needed for every detective");
+		detectives = locations.length;
+		if (regions.length < detectives) {
+			regions = new long[detectives][words];
+			frontiers = new long[detectives][words];
+			seen = new long[detectives][words];
+			live = new boolean[detectives];
+		}
+		Arrays.fill(claimed, 0L);
+		Arrays.fill(contested, 0L);
+		Arrays.fill(any, 0L);
+		Arrays.fill(twice, 0L);
+		for (int d = 0; d < detectives; d++) {
+			Arrays.fill(regions[d], 0L);
+			Arrays.fill(frontiers[d], 0L);
+			int w = locations[d] >>> 6;
+			long bit = 1L << locations[d];
+			contested[w] |= claimed[w] & bit;
+			claimed[w] |= bit;
+			regions[d][w] = bit;
+			frontiers[d][w] = bit;
+			System.arraycopy(frontiers[d], 0, seen[d], 0, words);
+			live[d] = true;
+		}
+		long uncovered = 0;
+		boolean mrXLive = false;
+		for (int w = 0; w < words; w++) {
+			for (int d = 0; d < detectives; d++) regions[d][w] &= ~contested[w];
+			mrXFrontier[w] = mrX[w];
+			mrXSeen[w] = mrX[w];
+			mrXRegion[w] = mrX[w] & ~claimed[w];
+			claimed[w] |= mrXRegion[w];
+			mrXLive |= mrX[w] != 0;
+			uncovered |= stations[w] & ~claimed[w];
+		}
+
+		// each layer expands every live frontier, then settles the layer in one pass over the words
+		while (uncovered != 0) {
+			boolean searching = false;
+			for (int d = 0; d < detectives; d++) {
+				if (!live[d]) continue;
+				long[] frontier = frontiers[d];
+				long[] reachedBy = seen[d];
+				kernel.expandBatch(frontier, next, 1, masks[d], reachedBy);
+				boolean reachedAny = false;
+				for (int w = 0; w < words; w++) {
+					long reached = next[w];
+					frontier[w] = reached;
+					reachedBy[w] |= reached;
+					long fresh = reached & ~claimed[w];
+					twice[w] |= any[w] & fresh;
+					any[w] |= fresh;
+					reachedAny |= reached != 0;
+				}
+				live[d] = reachedAny;
+				searching |= reachedAny;
+			}
+			// MrX expands from his own seen set, so he can go before the detectives' layer settles
+			if (mrXLive) kernel.expandBatch(mrXFrontier, mrXNext, 1, mrXMask, mrXSeen);
+			boolean mrXReached = false;
+			uncovered = 0;
+			for (int w = 0; w < words; w++) {
+				// detectives arrive first, so they take the stations MrX reaches in as many moves
+				long taken = ~claimed[w] & ~twice[w];
+				for (int d = 0; d < detectives; d++) regions[d][w] |= frontiers[d][w] & taken;
+				contested[w] |= twice[w];
+				long owned = claimed[w] | any[w];
+				any[w] = 0;
+				twice[w] = 0;
+				if (mrXLive) {
+					long reached = mrXNext[w];
+					mrXFrontier[w] = reached;
+					mrXSeen[w] |= reached;
+					mrXRegion[w] |= reached & ~owned;
+					owned |= reached;
+					mrXReached |= reached != 0;
+				}
+				claimed[w] = owned;
+				uncovered |= stations[w] & ~owned;
+			}
+			mrXLive = mrXReached;
+			if (!searching && !mrXReached) break;
+		}
+	}
+
+	/**
+	 * @return the number of detectives of the last computation
+	 */
+	public int detectives() { return detectives; }
+
+	/**
+	 * @return the stations MrX reaches before any detective; shared, must not be modified
+	 */
+	@Nonnull public long[] mrXRegion() { return mrXRegion; }
+
+	/**
+	 * @return the number of stations MrX reaches before any detective
+	 */
+	public int mrXSize() { return count(mrXRegion); }
+
+	/**
+	 * @param detective the index of the detective in the last computation
+	 * @return the stations only the given detective reaches first; shared, must not be modified
+	 */
+	@Nonnull public long[] region(int detective) {
+		return regions[Objects.checkIndex(detective, detectives)];
+	}
+
+	/**
+	 * @param detective the index of the detective in the last computation
+	 * @return the number of stations only the given detective reaches first
+	 */
+	public int size(int detective) { return count(region(detective)); }
+
+	/**
+	 * @return the stations more than one detective reaches first; shared, must not be modified
+	 */
+	@Nonnull public long[] contested() { return contested; }
+
+	private static int count(long[] bits) {
+		int count = 0;
+		for (long word : bits) count += Long.bitCount(word);
+		return count;
+	}
+}
@@ -0,0 +1,231 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Fewest moves between stations for a player holding limited taxi, bus and underground tickets,
+ * as detectives do.
+ * <br>
+ * For every pair of stations the oracle keeps the Pareto frontier of ticket usage: each
+ * {@code (taxi, bus, underground)} count some path between them needs, leaving out any needing at
+ * least as many of every ticket as another. A query walks the pair's frontier, fewest moves first,
+ * to the first entry the tickets held cover. Frontiers come from one layered search per source,
+ * sources in parallel, over paths of at most {@link #MAX_MOVES} moves; ferries take secret tickets
+ * detectives never hold and are left out.
+ * <br>
+ * Entries are packed five bits per ticket into one char, so the standard map's frontiers take a
+ * couple of megabytes. Oracles are immutable and safe to share between threads.
+ */
+public final class TicketOracle {
+
+	/**
+	 * The longest path considered, no more than a game's rounds
+	 */
+	public static final int MAX_MOVES = 31;
+
+	private static final int BITS = 5;
+	private static final int FIELD = (1 << BITS) - 1;
+	private static final Transport[] TRANSPORTS =
+			{Transport.TAXI, Transport.BUS, Transport.UNDERGROUND};
+
+	private final int nodes;
+	private final int words;
+	private final int[] offsets;
+	private final char[] entries;
+
+	private TicketOracle(int nodes, int[] offsets, char[] entries) {
+		this.nodes = nodes;
+		this.words = (nodes + 63) >>> 6;
+		this.offsets = offsets;
+		this.entries = entries;
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return the oracle of the graph
+	 */
+	@Nonnull public static TicketOracle of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		var adjacency = TransportAdjacency.of(graph);
+		int nodes = adjacency.nodes();
+		char[][][] frontiers = IntStream.range(0, nodes).parallel()
+				.mapToObj(source -> frontiers(adjacency, source))
+				.toArray(char[][][]::new);
+		int[] offsets = new int[nodes * nodes + 1];
+		int total = 0;
+		for (int pair = 0; pair < nodes * nodes; pair++) {
+			offsets[pair] = total;
+			total += frontiers[pair / nodes][pair % nodes].length;
+		}
+		offsets[nodes * nodes] = total;
+		char[] entries = new char[total];
+		for (int pair = 0; pair < nodes * nodes; pair++) {
+			char[] frontier = frontiers[pair / nodes][pair % nodes];
+			System.arraycopy(frontier, 0, entries, offsets[pair], frontier.length);
+		}
+		return new TicketOracle(nodes, offsets, entries);
+	}
+
+	/**
+	 * Searches out from the source one move per layer. A usage first reached in a layer uses that
+	 * many tickets, so it can only be dominated by usages of earlier layers, which are all known.
+	 *
+	 * @return every station's frontier, fewest moves first
+	 */
+	private static char[][] frontiers(TransportAdjacency adjacency, int source) {
+		int nodes = adjacency.nodes();
+		int words = adjacency.words();
+		long[][] rows = new long[TRANSPORTS.length][];
+		for (int i = 0; i < TRANSPORTS.length; i++)
+			rows[i] = adjacency.rows(TransportAdjacency.mask(TRANSPORTS[i]));
+		char[][] labels = new char[nodes][];
+		int[] counts = new int[nodes];
+		int[] layer = new int[16];
+		int[] next = new int[16];
+		labels[source] = new char[]{0};
+		counts[source] = 1;
+		layer[0] = source << 16;
+		int size = 1;
+		for (int moves = 1; moves <= MAX_MOVES && size > 0; moves++) {
+			int nextSize = 0;
+			for (int k = 0; k < size; k++) {
+				int from = layer[k] >>> 16;
+				int usage = layer[k] & 0xFFFF;
+				for (int i = 0; i < TRANSPORTS.length; i++) {
+					int extended = usage + (1 << (i * BITS));
+					int base = from * words;
+					for (int w = 0; w < words; w++) {
+						long bits = rows[i][base + w];
+						while (bits != 0) {
+							int to = (w << 6) + Long.numberOfTrailingZeros(bits);
+							bits &= bits - 1;
+							if (dominated(labels[to], counts[to], extended)) continue;
+							if (labels[to] == null) labels[to] = new char[4];
+							else if (counts[to] == labels[to].length)
+								labels[to] = Arrays.copyOf(labels[to], counts[to] * 2);
+							labels[to][counts[to]++] = (char) extended;
+							if (nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+							next[nextSize++] = to << 16 | extended;
+						}
+					}
+				}
+			}
+			int[] swap = layer;
+			layer = next;
+			next = swap;
+			size = nextSize;
+		}
+		char[][] frontiers = new char[nodes][];
+		for (int n = 0; n < nodes; n++)
+			frontiers[n] = labels[n] == null ? new char[0] : Arrays.copyOf(labels[n], counts[n]);
+		return frontiers;
+	}
+
+	private static boolean dominated(char[] labels, int count, int usage) {
+		for (int i = 0; i < count; i++)
+			if (covers(usage & FIELD, usage >>> BITS & FIELD, usage >>> 2 * BITS, labels[i]))
+				return true;
+		return false;
+	}
+
+	private static boolean covers(int taxi, int bus, int underground, int usage) {
+		return (usage & FIELD) <= taxi && (usage >>> BITS & FIELD) <= bus
+				&& usage >>> 2 * BITS <= underground;
+	}
+
+	/**
+	 * @return the number of stations, one more than the largest
+	 */
+	public int nodes() { return nodes; }
+
+	/**
+	 * @param from the source station
+	 * @param to the target station
+	 * @param taxi the taxi tickets held
+	 * @param bus the bus tickets held
+	 * @param underground the underground tickets held
+	 * @return the fewest moves between the stations the tickets pay for, -1 if they pay for none
+	 * of at most {@link #MAX_MOVES} moves
+	 */
+	public int distance(int from, int to, int taxi, int bus, int underground) {
+		int pair = pair(from, to);
+		taxi = clamp(taxi);
+		bus = clamp(bus);
+		underground = clamp(underground);
+		for (int i = offsets[pair], end = offsets[pair + 1]; i < end; i++) {
+			int usage = entries[i];
+			if (covers(taxi, bus, underground, usage))
+				return (usage & FIELD) + (usage >>> BITS & FIELD) + (usage >>> 2 * BITS);
+		}
+		return -1;
+	}
+
+	/**
+	 * @param player the player, whose location and tickets are used
+	 * @param to the target station
+	 * @return the fewest moves from the player's location the player's tickets pay for, -1 if
+	 * they pay for none
+	 */
+	public int distance(@Nonnull Player player, int to) {
+		var tickets = player.tickets();
+		return distance(player.location(), to,
+				tickets.getOrDefault(Ticket.TAXI, 0), tickets.getOrDefault(Ticket.BUS, 0),
+				tickets.getOrDefault(Ticket.UNDERGROUND, 0));
+	}
+
+	/**
+	 * @param from the source station
+	 * @param moves the most moves to make
+	 * @param taxi the taxi tickets held
+	 * @param bus the bus tickets held
+	 * @param underground the underground tickets held
+	 * @param reachable the output bitset as in {@link TransportAdjacency}, overwritten with every
+	 * station the tickets reach within the given moves
+	 */
+	public void reachable(int from, int moves, int taxi, int bus, int underground,
+	                      @Nonnull long[] reachable) {
+		Arrays.fill(reachable, 0, words, 0L);
+		taxi = clamp(taxi);
+		bus = clamp(bus);
+		underground = clamp(underground);
+		int row = pair(from, 0);
+		for (int to = 0; to < nodes; to++) {
+			for (int i = offsets[row + to], end = offsets[row + to + 1]; i < end; i++) {
+				int usage = entries[i];
+				int length = (usage & FIELD) + (usage >>> BITS & FIELD) + (usage >>> 2 * BITS);
+				if (length > moves) break;
+				if (covers(taxi, bus, underground, usage)) {
+					reachable[to >>> 6] |= 1L << to;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a new bitset of every station the tickets reach within the given moves
+	 * @see #reachable(int, int, int, int, int, long[])
+	 */
+	@Nonnull public long[] reachable(int from, int moves, int taxi, int bus, int underground) {
+		long[] reachable = new long[words];
+		reachable(from, moves, taxi, bus, underground, reachable);
+		return reachable;
+	}
+
+	private int pair(int from, int to) {
+		return Objects.checkIndex(from, nodes) * nodes
+				+ Objects.checkIndex(to, nodes);
+	}
+
+	private static int clamp(int tickets) { return Math.max(0, Math.min(tickets, MAX_MOVES)); }
+}
@@ -0,0 +1,130 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * The random walk over a game graph as a sparse matrix: a player at a station moves to each
+ * neighbour the transport mask allows with equal probability, and stays put where there is none.
+ * <br>
+ * Rows are stored compressed (CSR) by destination, so one step pulls every station's new
+ * probability from its neighbours and memory grows with the number of edges rather than the
+ * square of the number of stations. Vectors are indexed by station; a batch of {@code batch}
+ * vectors is interleaved, station {@code s} of vector {@code b} at {@code s * batch + b}, so one
+ * pass over the matrix steps them all. Matrices are immutable and safe to share between threads.
+ */
+public final class TransitionMatrix {
+
+	private final int nodes;
+	private final int[] rows;
+	private final int[] columns;
+	private final double[] weights;
+
+	private TransitionMatrix(int nodes, int[] rows, int[] columns, double[] weights) {
+		this.nodes = nodes;
+		this.rows = rows;
+		this.columns = columns;
+		this.weights = weights;
+	}
+
+	/**
+	 * @param graph the game graph; nodes must be non-negative
+	 * @param mask the transports a player may use, see {@link TransportAdjacency#mask}
+	 * @return the random walk over the given transports of the graph
+	 */
+	@Nonnull public static TransitionMatrix of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph, int mask) {
+		if ((mask & ~TransportAdjacency.ALL) != 0)
+			throw new IllegalArgumentException("Bad transport mask " + mask);
+		int nodes = graph.nodes().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+		int[] degree = new int[nodes];
+		for (int from : graph.nodes()) {
+			for (int to : graph.adjacentNodes(from)) if (usable(graph, from, to, mask)) degree[from]++;
+		}
+		int[] rows = new int[nodes + 1];
+		for (int to : graph.nodes()) {
+			int entries = degree[to] == 0 ? 1 : 0;
+			for (int from : graph.adjacentNodes(to)) if (usable(graph, from, to, mask)) entries++;
+			rows[to + 1] = entries;
+		}
+		for (int i = 0; i < nodes; i++) rows[i + 1] += rows[i];
+		int[] columns = new int[rows[nodes]];
+		double[] weights = new double[rows[nodes]];
+		int[] fill = Arrays.copyOf(rows, nodes);
+		for (int to : graph.nodes()) {
+			if (degree[to] == 0) {
+				columns[fill[to]] = to;
+				weights[fill[to]++] = 1;
+			}
+			for (int from : graph.adjacentNodes(to)) {
+				if (!usable(graph, from, to, mask)) continue;
+				columns[fill[to]] = from;
+				weights[fill[to]++] = 1.0 / degree[from];
+			}
+		}
+		return new TransitionMatrix(nodes, rows, columns, weights);
+	}
+
+	private static boolean usable(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                              int from, int to, int mask) {
+		for (Transport t : Objects.requireNonNull(graph.edgeValueOrDefault(from, to, ImmutableSet.of())))
+			if ((mask & (1 << t.ordinal())) != 0) return true;
+		return false;
+	}
+
+	/**
+	 * @return one more than the largest station number, the length of a vector
+	 */
+	public int nodes() { return nodes; }
+
+	/**
+	 * @return the number of stored entries
+	 */
+	public int entries() { return columns.length; }
+
+	/**
+	 * Moves every vector of a batch one step.
+	 *
+	 * @param in the interleaved input batch
+	 * @param out the interleaved output batch, must not be the input
+	 * @param batch the number of vectors in the batch
+	 */
+	public void step(@Nonnull double[] in, @Nonnull double[] out, int batch) {
+		step(in, 0, out, 0, batch);
+	}
+
+	/**
+	 * Moves every vector of a batch the given number of steps, keeping each step.
+	 *
+	 * @param in the interleaved input batch
+	 * @param out the batch after every step, step {@code k} (from 1) starting at
+	 * {@code (k - 1) * nodes() * batch}; at least {@code steps * nodes() * batch} long
+	 * @param batch the number of vectors in the batch
+	 * @param steps the number of steps
+	 */
+	public void propagate(@Nonnull double[] in, @Nonnull double[] out, int batch, int steps) {
+		int size = nodes * batch;
+		if (steps <= 0) return;
+		step(in, 0, out, 0, batch);
+		for (int k = 1; k < steps; k++) step(out, (k - 1) * size, out, k * size, batch);
+	}
+
+	private void step(double[] in, int inBase, double[] out, int outBase, int batch) {
+		for (int to = 0; to < nodes; to++) {
+			int row = outBase + to * batch;
+			Arrays.fill(out, row, row + batch, 0);
+			for (int e = rows[to]; e < rows[to + 1]; e++) {
+				int column = inBase + columns[e] * batch;
+				double weight = weights[e];
+				for (int b = 0; b < batch; b++) out[row + b] += weight * in[column + b];
+			}
+		}
+	}
+}
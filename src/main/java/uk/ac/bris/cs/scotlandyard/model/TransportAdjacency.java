@@ -0,0 +1,115 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Per-transport adjacency of a game graph as bitsets. Bit {@code n} of a bitset is station
+ * {@code n}, a bitset spans {@link #words()} longs and row {@code n} of a table starts at
+ * {@code n * words()}.
+ * <br>
+ * Transport masks have bit {@code 1 << t.ordinal()} set for every allowed {@link Transport} t.
+ */
+public final class TransportAdjacency {
+
+	/**
+	 * Mask allowing every transport
+	 */
+	public static final int ALL = (1 << Transport.values().length) - 1;
+
+	private final int nodes;
+	private final int words;
+	private final long[][] transportRows;
+	private final AtomicReferenceArray<long[]> maskRows;
+
+	private TransportAdjacency(int nodes, long[][] transportRows) {
+		this.nodes = nodes;
+		this.words = (nodes + 63) >>> 6;
+		this.transportRows = transportRows;
+		this.maskRows = new AtomicReferenceArray<>(ALL + 1);
+	}
+
+	/**
+	 * @param graph the game graph; nodes must be non-negative
+	 * @return the adjacency of the given graph
+	 */
+	@Nonnull public static TransportAdjacency of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		int nodes = graph.nodes().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+		int words = (nodes + 63) >>> 6;
+		long[][] rows = new long[Transport.values().length][nodes * words];
+		for (var edge : graph.edges()) {
+			int u = edge.nodeU();
+			int v = edge.nodeV();
+			if (u < 0 || v < 0) throw new IllegalArgumentException("Negative node in " + edge);
+			for (Transport t : Objects.requireNonNull(graph.edgeValueOrDefault(u, v, ImmutableSet.of()))) {
+				rows[t.ordinal()][u * words + (v >>> 6)] |= 1L << v;
+				rows[t.ordinal()][v * words + (u >>> 6)] |= 1L << u;
+			}
+		}
+		return new TransportAdjacency(nodes, rows);
+	}
+
+	/**
+	 * @param transports the transports
+	 * @return a mask allowing the given transports
+	 */
+	public static int mask(@Nonnull Transport... transports) {
+		int mask = 0;
+		for (Transport t : transports) mask |= 1 << t.ordinal();
+		return mask;
+	}
+
+	/**
+	 * @param ticket the ticket
+	 * @return a mask of the transports the given ticket can be used on; every transport for
+	 * {@link Ticket#SECRET} and none for {@link Ticket#DOUBLE}
+	 */
+	public static int mask(@Nonnull Ticket ticket) {
+		switch (ticket) {
+			case TAXI: return mask(Transport.TAXI);
+			case BUS: return mask(Transport.BUS);
+			case UNDERGROUND: return mask(Transport.UNDERGROUND);
+			case SECRET: return ALL;
+			case DOUBLE: return 0;
+			default: throw new AssertionError();
+		}
+	}
+
+	/**
+	 * @return one more than the largest station number
+	 */
+	public int nodes() { return nodes; }
+
+	/**
+	 * @return the number of longs in one bitset
+	 */
+	public int words() { return words; }
+
+	/**
+	 * @param mask the transport mask
+	 * @return the neighbour bitsets of every node using any of the transports in the mask; the
+	 * returned array is shared and must not be modified
+	 */
+	@Nonnull public long[] rows(int mask) {
+		if ((mask & ~ALL) != 0) throw new IllegalArgumentException("Bad transport mask " + mask);
+		long[] rows = maskRows.get(mask);
+		if (rows != null) return rows;
+		rows = new long[nodes * words];
+		for (Transport t : Transport.values()) {
+			if ((mask & (1 << t.ordinal())) == 0) continue;
+			long[] source = transportRows[t.ordinal()];
+			for (int i = 0; i < rows.length; i++) rows[i] |= source[i];
+		}
+		// racing threads compute the same rows, keep whichever landed first
+		return maskRows.compareAndSet(mask, null, rows) ? rows : maskRows.get(mask);
+	}
+}
@@ -0,0 +1,373 @@
+package uk.ac.bris.cs.scotlandyard.ui;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+/**
+ * Runs an {@link Ai} on threads of its own and accounts for the resources it uses.
+ * <br>
+ * Every call into the Ai runs on a thread of a {@link ThreadGroup} owned by the sandbox, so the
+ * threads the Ai starts from its callbacks, search pools for example, join the group. For every
+ * {@link #pickMove} the sandbox sums wall-clock time, CPU time and allocated bytes over the
+ * group's threads, and it counts CPU time spent between moves, pondering for example, separately.
+ * Threads that start and finish within one move are missed, as is work handed to shared pools
+ * such as the common fork-join pool.
+ * <br>
+ * When the budget's hard deadline passes the budget is cancelled and every thread in the group is
+ * interrupted. If the Ai has still not returned after a grace period it is fenced off: its threads
+ * drop to the lowest priority and it is not asked for any more moves.
+ */
+public final class AiSandbox {
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final long DEFAULT_GRACE = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * What one {@link #pickMove} took
+	 */
+	public static final class Turn {
+		@Nullable private final Move move;
+		private final long wallNanos;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+		private final boolean overran;
+
+		Turn(@Nullable Move move, long wallNanos, long cpuNanos, long allocatedBytes,
+		     boolean overran) {
+			this.move = move;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.overran = overran;
+		}
+
+		/**
+		 * @return the move picked, null if the Ai is fenced off or did not return in time
+		 */
+		@Nullable public Move move() { return move; }
+
+		/**
+		 * @return nanoseconds from the call until the move or the end of the grace period
+		 */
+		public long wallNanos() { return wallNanos; }
+
+		/**
+		 * @return CPU nanoseconds of all the Ai's threads over the move
+		 */
+		public long cpuNanos() { return cpuNanos; }
+
+		/**
+		 * @return bytes all the Ai's threads allocated over the move, 0 if the JVM cannot tell
+		 */
+		public long allocatedBytes() { return allocatedBytes; }
+
+		/**
+		 * @return whether the Ai missed the hard deadline
+		 */
+		public boolean overran() { return overran; }
+
+		@Override public String toString() {
+			return "Turn{move=" + move + ", wall=" + TimeUnit.NANOSECONDS.toMillis(wallNanos)
+					+ "ms, cpu=" + TimeUnit.NANOSECONDS.toMillis(cpuNanos)
+					+ "ms, allocated=" + allocatedBytes + ", overran=" + overran + "}";
+		}
+	}
+
+	/**
+	 * The totals of every move so far
+	 */
+	public static final class Usage {
+		private final int moves;
+		private final int overruns;
+		private final long wallNanos;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+		private final long maxCpuNanos;
+		private final long backgroundCpuNanos;
+
+		Usage(int moves, int overruns, long wallNanos, long cpuNanos, long allocatedBytes,
+		      long maxCpuNanos, long backgroundCpuNanos) {
+			this.moves = moves;
+			this.overruns = overruns;
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.maxCpuNanos = maxCpuNanos;
+			this.backgroundCpuNanos = backgroundCpuNanos;
+		}
+
+		/**
+		 * @return the number of moves asked for
+		 */
+		public int moves() { return moves; }
+
+		/**
+		 * @return the number of moves that missed the hard deadline
+		 */
+		public int overruns() { return overruns; }
+
+		/**
+		 * @return total wall-clock nanoseconds of all moves
+		 */
+		public long wallNanos() { return wallNanos; }
+
+		/**
+		 * @return total CPU nanoseconds of all moves
+		 */
+		public long cpuNanos() { return cpuNanos; }
+
+		/**
+		 * @return total bytes allocated during all moves
+		 */
+		public long allocatedBytes() { return allocatedBytes; }
+
+		/**
+		 * @return the most CPU nanoseconds any one move took
+		 */
+		public long maxCpuNanos() { return maxCpuNanos; }
+
+		/**
+		 * @return CPU nanoseconds the Ai's threads used between moves
+		 */
+		public long backgroundCpuNanos() { return backgroundCpuNanos; }
+
+		@Override public String toString() {
+			return "Usage{moves=" + moves + ", overruns=" + overruns
+					+ ", wall=" + TimeUnit.NANOSECONDS.toMillis(wallNanos)
+					+ "ms, cpu=" + TimeUnit.NANOSECONDS.toMillis(cpuNanos)
+					+ "ms, maxCpu=" + TimeUnit.NANOSECONDS.toMillis(maxCpuNanos)
+					+ "ms, background=" + TimeUnit.NANOSECONDS.toMillis(backgroundCpuNanos)
+					+ "ms, allocated=" + allocatedBytes + "}";
+		}
+	}
+
+	private final Ai ai;
+	private final long graceNanos;
+	private final ThreadGroup group;
+	private final ExecutorService caller;
+	private Map<Long, long[]> lastSnapshot = new HashMap<>();
+	private volatile boolean fenced;
+	private int moves;
+	private int overruns;
+	private long wallNanos;
+	private long cpuNanos;
+	private long allocatedBytes;
+	private long maxCpuNanos;
+	private long backgroundCpuNanos;
+
+	/**
+	 * @param ai the Ai to run, with a grace period of one second
+	 */
+	public AiSandbox(@Nonnull Ai ai) { this(ai, DEFAULT_GRACE, TimeUnit.NANOSECONDS); }
+
+	/**
+	 * @param ai the Ai to run
+	 * @param grace how long after the hard deadline to wait before fencing the Ai off
+	 * @param unit the unit of the grace period
+	 */
+	public AiSandbox(@Nonnull Ai ai, long grace, @Nonnull TimeUnit unit) {
+		if (grace < 0) throw new IllegalArgumentException("Negative grace period");
+		this.ai = Objects.requireNonNull(ai);
+		this.graceNanos = unit.toNanos(grace);
+		this.group = new ThreadGroup("ai-sandbox-" + ai.name());
+		this.caller = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("ai-sandbox-" + ai.name().replace("%", "%%") + "-%d")
+				.setDaemon(true)
+				.setThreadFactory(runnable -> new Thread(group, runnable))
+				.build());
+		if (THREADS.isThreadCpuTimeSupported() && !THREADS.isThreadCpuTimeEnabled())
+			THREADS.setThreadCpuTimeEnabled(true);
+	}
+
+	/**
+	 * @return the Ai run by this sandbox
+	 */
+	@Nonnull public Ai ai() { return ai; }
+
+	/**
+	 * @return whether the Ai overran a move by more than the grace period
+	 */
+	public boolean fenced() { return fenced; }
+
+	/**
+	 * Calls {@link Ai#onStart()} inside the sandbox
+	 */
+	public void onStart() {
+		call(() -> {
+			ai.onStart();
+			return null;
+		});
+		lastSnapshot = snapshot();
+	}
+
+	/**
+	 * Asks the Ai for a move, cancelling the budget and interrupting the Ai's threads at its hard
+	 * deadline and fencing the Ai off if it has not returned after the grace period. Only one
+	 * move may be asked for at a time.
+	 *
+	 * @param board the board
+	 * @param budget the time for the move
+	 * @return the move and what it took
+	 */
+	@Nonnull public Turn pickMove(@Nonnull Board board, @Nonnull Budget budget) {
+		if (fenced) return new Turn(null, 0, 0, 0, true);
+		Map<Long, long[]> before = snapshot();
+		long background = used(lastSnapshot, before)[0];
+		synchronized (this) { backgroundCpuNanos += background; }
+		long start = System.nanoTime();
+		Future<Move> future = caller.submit(() -> ai.pickMove(board, budget));
+		Move move = null;
+		boolean overran = false;
+		try {
+			try {
+				move = future.get(Math.max(0, budget.hardDeadline() - start), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				overran = true;
+				budget.cancel();
+				interruptAll();
+				move = future.get(graceNanos, TimeUnit.NANOSECONDS);
+			}
+		} catch (TimeoutException e) {
+			fence();
+		} catch (InterruptedException e) {
+			budget.cancel();
+			interruptAll();
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			lastSnapshot = snapshot();
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new IllegalStateException(ai.name() + " failed to pick a move", e.getCause());
+		}
+		long wall = System.nanoTime() - start;
+		Map<Long, long[]> after = snapshot();
+		long[] used = used(before, after);
+		lastSnapshot = after;
+		synchronized (this) {
+			moves++;
+			if (overran) overruns++;
+			wallNanos += wall;
+			cpuNanos += used[0];
+			allocatedBytes += used[1];
+			maxCpuNanos = Math.max(maxCpuNanos, used[0]);
+		}
+		return new Turn(move, wall, used[0], used[1], overran);
+	}
+
+	/**
+	 * Calls {@link Ai#stopPondering()}, which must return promptly
+	 */
+	public void stopPondering() { ai.stopPondering(); }
+
+	/**
+	 * Calls {@link Ai#onTerminate()} inside the sandbox, or directly once the Ai is fenced off,
+	 * and stops the sandbox's own thread
+	 */
+	public void onTerminate() {
+		if (fenced) ai.onTerminate();
+		else call(() -> {
+			ai.onTerminate();
+			return null;
+		});
+		caller.shutdownNow();
+	}
+
+	/**
+	 * @return the totals of every move so far
+	 */
+	@Nonnull public synchronized Usage usage() {
+		return new Usage(moves, overruns, wallNanos, cpuNanos, allocatedBytes, maxCpuNanos,
+				backgroundCpuNanos);
+	}
+
+	/**
+	 * Runs a callback on the sandbox's thread and waits for it
+	 */
+	private void call(Callable<Void> callback) {
+		Future<Void> future = caller.submit(callback);
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new IllegalStateException(ai.name() + " failed", e.getCause());
+		}
+	}
+
+	private Thread[] threads() {
+		Thread[] threads = new Thread[group.activeCount() * 2 + 8];
+		int count = group.enumerate(threads);
+		Thread[] live = new Thread[count];
+		System.arraycopy(threads, 0, live, 0, count);
+		return live;
+	}
+
+	private void interruptAll() {
+		for (Thread thread : threads()) thread.interrupt();
+	}
+
+	private void fence() {
+		fenced = true;
+		group.setMaxPriority(Thread.MIN_PRIORITY);
+		for (Thread thread : threads()) thread.setPriority(Thread.MIN_PRIORITY);
+	}
+
+	/**
+	 * @return CPU nanoseconds and allocated bytes so far of every live thread in the group, by
+	 * thread id
+	 */
+	private Map<Long, long[]> snapshot() {
+		Map<Long, long[]> snapshot = new HashMap<>();
+		for (Thread thread : threads()) {
+			long id = thread.getId();
+			long cpu = THREADS.isThreadCpuTimeEnabled() ? THREADS.getThreadCpuTime(id) : -1;
+			if (cpu < 0) continue;
+			snapshot.put(id, new long[]{cpu, allocated(id)});
+		}
+		return snapshot;
+	}
+
+	private static long allocated(long id) {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			var extended = (com.sun.management.ThreadMXBean) THREADS;
+			if (extended.isThreadAllocatedMemoryEnabled())
+				return Math.max(0, extended.getThreadAllocatedBytes(id));
+		}
+		return 0;
+	}
+
+	/**
+	 * @return CPU nanoseconds and allocated bytes between two snapshots, counting threads that
+	 * appeared in between from 0
+	 */
+	private static long[] used(Map<Long, long[]> before, Map<Long, long[]> after) {
+		long[] used = new long[2];
+		after.forEach((id, now) -> {
+			long[] then = before.getOrDefault(id, new long[2]);
+			used[0] += Math.max(0, now[0] - then[0]);
+			used[1] += Math.max(0, now[1] - then[1]);
+		});
+		return used;
+	}
+}
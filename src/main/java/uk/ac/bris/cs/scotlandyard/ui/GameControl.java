@@ -5,7 +5,7 @@ import com.google.common.collect.ImmutableSet;
 import java.util.function.Consumer;
 
 import uk.ac.bris.cs.scotlandyard.model.Model;
-import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Model.DeltaObserver;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.ui.model.ModelProperty;
 
@@ -13,9 +13,14 @@ import uk.ac.bris.cs.scotlandyard.ui.model.ModelProperty;
  * Classes wishing to be notified of game changes should implement this
  * interface, all methods have a default implementation of no-op.
  * <br>
+ * The UI never undoes, redoes or seeks its model. The travel log, ticket board and status bar
+ * redraw from the board on any event, but the map follows moves only and ignores
+ * {@link Model.Observer.Event#UNDO} and {@link Model.Observer.Event#REDO}, since a board does not
+ * say where MrX is to move his counter back to.
+ * <br>
  * Not required for the coursework.
  */
-public interface GameControl extends Observer {
+public interface GameControl extends DeltaObserver {
 
 	default void onGameAttach(Model model, ModelProperty configuration,
 	                          Consumer<ImmutableSet<Piece>> timeout) {}
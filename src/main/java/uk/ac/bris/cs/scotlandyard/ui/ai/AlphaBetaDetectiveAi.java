@@ -0,0 +1,221 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.BeliefTracker;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+
+/**
+ * Detective {@link Ai} running an iterative deepening, paranoid alpha-beta {@link ParanoidSearch}
+ * over every station the travel log says MrX could be at, kept by a {@link BeliefTracker}.
+ * <br>
+ * A {@link CaptureProver} first spends a tenth of the time looking for a capture the detectives
+ * can force within a few rounds, which is played straight away if found.
+ * <br>
+ * The search checks the deadline as it goes and is abandoned a safety margin before the timeout
+ * or as soon as the {@link Budget} is cancelled; no new iteration starts after the budget's soft
+ * deadline. The best move of the deepest iteration that completed is played.
+ * <br>
+ * With more than one thread the search runs Lazy SMP: every thread searches the same position,
+ * odd helpers one ply deeper than the rest, sharing a lock-free {@link TranspositionTable}. The
+ * number of threads defaults to the {@code scotlandyard.ai.threads} system property and the table
+ * size to {@code scotlandyard.ai.table.mb}.
+ */
+public class AlphaBetaDetectiveAi implements Ai {
+
+	/**
+	 * System property holding the default transposition table size in MB
+	 */
+	public static final String TABLE_PROPERTY = "scotlandyard.ai.table.mb";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AlphaBetaDetectiveAi.class);
+	private static final long MAX_MARGIN = TimeUnit.MILLISECONDS.toNanos(250);
+	private static final int DEFAULT_TABLE_MB = 16;
+
+	private final int threads;
+	private final int tableMegabytes;
+	@Nullable private TranspositionTable table;
+	@Nullable private BeliefTracker tracker;
+	@Nullable private GameSetup trackedSetup;
+	@Nullable private ExecutorService workers;
+	private volatile int lastDepth;
+	private volatile long lastNodes;
+	private volatile long[] lastDepthTimes = new long[0];
+
+	public AlphaBetaDetectiveAi() {
+		this(Integer.getInteger(MctsMrXAi.THREADS_PROPERTY,
+						Runtime.getRuntime().availableProcessors()),
+				Integer.getInteger(TABLE_PROPERTY, DEFAULT_TABLE_MB));
+	}
+
+	/**
+	 * @param threads the number of search threads, at least 1
+	 * @param tableMegabytes the transposition table size, at least 1
+	 */
+	public AlphaBetaDetectiveAi(int threads, int tableMegabytes) {
+		if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+		if (tableMegabytes < 1) throw new IllegalArgumentException("Need at least 1 MB of table");
+		this.threads = threads;
+		this.tableMegabytes = tableMegabytes;
+	}
+
+	@Nonnull @Override public String name() { return "Alpha-beta detectives"; }
+
+	/**
+	 * @return the depth the last search completed, 0 before the first one
+	 */
+	public int lastDepth() { return lastDepth; }
+
+	/**
+	 * @return positions all threads searched in the last search
+	 */
+	public long lastNodes() { return lastNodes; }
+
+	/**
+	 * @return nanoseconds from the start of the last search until each depth was first completed,
+	 * indexed by depth, 0 for depths never completed
+	 */
+	@Nonnull public long[] lastDepthTimes() { return lastDepthTimes.clone(); }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair) {
+		return pickMove(board, Budget.of(timeoutPair));
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, @Nonnull Budget budget) {
+		long start = System.nanoTime();
+		var moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		if (moves.size() == 1 || Boards.isMrXTurn(board)) return moves.get(0);
+
+		long deadline = budget.searchDeadline(MAX_MARGIN);
+		var distances = Distances.of(board.getSetup().graph);
+		long[] belief = belief(board, distances);
+		int forced = CaptureProver.quickestCapture(distances.kernel(), board, belief,
+				start + (deadline - start) / CaptureProver.SHARE, budget);
+		if (forced >= 0) {
+			LOGGER.info("Forced capture starting with {} found in {} ms", moves.get(forced),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			return moves.get(forced);
+		}
+		var table = table();
+		table.nextSearch();
+		var stop = new AtomicBoolean();
+		var depthTimes = new AtomicLongArray(ParanoidSearch.MAX_PLY + 1);
+		var searches = new ParanoidSearch[threads];
+		for (int i = 0; i < threads; i++)
+			searches[i] = new ParanoidSearch(distances, board, belief, budget, deadline, table,
+					stop, depthTimes);
+		List<Future<?>> helpers = new ArrayList<>(threads - 1);
+		for (int i = 1; i < threads; i++) {
+			var helper = searches[i];
+			int offset = i & 1;
+			helpers.add(workers().submit(() -> helper.run(offset)));
+		}
+		searches[0].run(0);
+		stop.set(true);
+		awaitAll(helpers, budget.hardDeadline());
+
+		// the deepest completed iteration of any thread, the main thread's on ties
+		ParanoidSearch deepest = searches[0];
+		long nodes = 0;
+		for (ParanoidSearch search : searches) {
+			if (search.depth() > deepest.depth()) deepest = search;
+			nodes += search.nodes();
+		}
+		long[] times = new long[depthTimes.length()];
+		for (int d = 0; d < times.length; d++)
+			if (depthTimes.get(d) != 0) times[d] = depthTimes.get(d) - start;
+		lastDepth = deepest.depth();
+		lastNodes = nodes;
+		lastDepthTimes = times;
+		LOGGER.info("depth {}, {} nodes in {} ms on {} threads, score {}", deepest.depth(), nodes,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), threads,
+				deepest.score());
+		return moves.get(deepest.best());
+	}
+
+	@Override public void onStart() { tracker = null; }
+
+	@Override public void onTerminate() {
+		tracker = null;
+		if (workers != null) workers.shutdownNow();
+		workers = null;
+		table = null;
+	}
+
+	private TranspositionTable table() {
+		if (table == null) table = new TranspositionTable(tableMegabytes);
+		return table;
+	}
+
+	private ExecutorService workers() {
+		if (workers == null) workers = Executors.newFixedThreadPool(threads - 1,
+				new ThreadFactoryBuilder().setNameFormat("alpha-beta-%d").setDaemon(true).build());
+		return workers;
+	}
+
+	private static void awaitAll(List<Future<?>> running, long until) {
+		try {
+			for (Future<?> future : running)
+				future.get(Math.max(0, until - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOGGER.warn("Search helper failed", e.getCause());
+		} catch (TimeoutException e) {
+			LOGGER.warn("Search helpers overran the deadline");
+		}
+		running.forEach(future -> future.cancel(true));
+	}
+
+	/**
+	 * Brings the tracker up to date with the board.
+	 *
+	 * @return every station MrX could be at now, never empty
+	 */
+	@Nonnull private long[] belief(Board board, Distances distances) {
+		if (tracker == null || !board.getSetup().equals(trackedSetup)) {
+			tracker = BeliefTracker.forSetup(distances.kernel(), board.getSetup());
+			trackedSetup = board.getSetup();
+		}
+		tracker.sync(board);
+		if (tracker.size() > 0) return tracker.stations();
+		// only when the log contradicts the starting stations, e.g. a custom map
+		long[] everywhere = new long[distances.kernel().adjacency().words()];
+		for (int node : board.getSetup().graph.nodes()) set(everywhere, node);
+		for (Piece piece : board.getPlayers()) {
+			if (!piece.isDetective()) continue;
+			int at = board.getDetectiveLocation((Detective) piece).orElseThrow();
+			everywhere[at >>> 6] &= ~(1L << at);
+		}
+		return everywhere;
+	}
+
+	private static void set(long[] bits, int node) { bits[node >>> 6] |= 1L << node; }
+}
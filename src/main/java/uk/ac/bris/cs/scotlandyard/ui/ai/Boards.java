@@ -0,0 +1,113 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * Helpers for turning the {@link Board} an {@link uk.ac.bris.cs.scotlandyard.model.Ai} is given
+ * into something it can search.
+ */
+final class Boards {
+
+	private Boards() {}
+
+	/**
+	 * @param board the board
+	 * @return whether MrX is the one to move
+	 */
+	static boolean isMrXTurn(@Nonnull Board board) {
+		var moves = board.getAvailableMoves();
+		return !moves.isEmpty() && moves.iterator().next().commencedBy().isMrX();
+	}
+
+	/**
+	 * @param board the board, must be MrX's turn
+	 * @return MrX's location, which only MrX can see through the source of his moves
+	 */
+	static int mrXLocation(@Nonnull Board board) {
+		if (!isMrXTurn(board)) throw new IllegalArgumentException("Not MrX's turn");
+		return board.getAvailableMoves().iterator().next().source();
+	}
+
+	/**
+	 * @param board the board
+	 * @param piece the piece
+	 * @return every ticket count of the given piece
+	 */
+	@Nonnull static ImmutableMap<Ticket, Integer> tickets(@Nonnull Board board,
+	                                                      @Nonnull Piece piece) {
+		var ticketBoard = board.getPlayerTickets(piece).orElseThrow();
+		Map<Ticket, Integer> tickets = new EnumMap<>(Ticket.class);
+		for (Ticket ticket : Ticket.values()) tickets.put(ticket, ticketBoard.getCount(ticket));
+		return ImmutableMap.copyOf(tickets);
+	}
+
+	/**
+	 * @param board the board
+	 * @return the detectives in {@link Board#getPlayers()} order
+	 */
+	@Nonnull static ImmutableList<Player> detectives(@Nonnull Board board) {
+		return board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.map(p -> new Player(p, tickets(board, p),
+						board.getDetectiveLocation((Detective) p).orElseThrow()))
+				.collect(ImmutableList.toImmutableList());
+	}
+
+	/**
+	 * Rebuilds a searchable game state from a board that still has moves to make.
+	 *
+	 * @param board the board
+	 * @param mrXLocation where MrX is, known or assumed
+	 * @return a game state equal to the board with MrX at the given location
+	 */
+	@Nonnull static GameState toGameState(@Nonnull Board board, int mrXLocation) {
+		var remaining = remaining(board);
+		if (remaining.isEmpty()) throw new IllegalArgumentException("Game is over");
+		return new MyGameStateFactory().resume(board.getSetup(),
+				new Player(Piece.MrX.MRX, tickets(board, Piece.MrX.MRX), mrXLocation),
+				detectives(board),
+				board.getMrXTravelLog(),
+				remaining);
+	}
+
+	/**
+	 * Compares what both boards show about the game: the travel log, every ticket count and
+	 * detective location, and whose turn it is. MrX's location is not part of this.
+	 *
+	 * @param a a board
+	 * @param b another board
+	 * @return whether the boards are indistinguishable
+	 */
+	static boolean samePosition(@Nonnull Board a, @Nonnull Board b) {
+		if (!a.getMrXTravelLog().equals(b.getMrXTravelLog())) return false;
+		if (!a.getPlayers().equals(b.getPlayers())) return false;
+		for (Piece piece : a.getPlayers()) {
+			if (!tickets(a, piece).equals(tickets(b, piece))) return false;
+			if (piece.isDetective() && !a.getDetectiveLocation((Detective) piece)
+					.equals(b.getDetectiveLocation((Detective) piece))) return false;
+		}
+		return remaining(a).equals(remaining(b));
+	}
+
+	private static ImmutableSet<Piece> remaining(Board board) {
+		return board.getAvailableMoves().stream()
+				.map(Move::commencedBy)
+				.collect(ImmutableSet.toImmutableSet());
+	}
+}
@@ -0,0 +1,588 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ReachabilityKernel;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.TransportAdjacency;
+
+/**
+ * Depth-first proof-number search (df-pn) for whether the detectives can capture MrX within a
+ * number of rounds whatever he does.
+ * <br>
+ * Positions are modelled as in {@link ParanoidSearch}: MrX is the bitset of every station he could
+ * be at, a detective landing on a station removes it and the detectives have won once the bitset
+ * is empty, so a proof is a strategy using only what the detectives can see. Unlike the paranoid
+ * search the model must never make MrX weaker than he is, so he keeps his double moves and the
+ * tickets the detectives hand him. A reveal at the end of his move splits the bitset into one
+ * position per station, if there are at most {@value #MAX_REVEAL_SPLIT}; reveals halfway through
+ * a double move are ignored. After the first move at the root, detectives move in a fixed order.
+ * All of these simplifications only take options away from the detectives.
+ * <br>
+ * Proof and disproof numbers go into a bounded {@link Table}, which searches from the same turn
+ * may share. One instance is not thread safe.
+ */
+final class CaptureProver {
+
+	/**
+	 * The detectives can force a capture
+	 */
+	static final int PROVEN = 1;
+
+	/**
+	 * MrX can escape for the rounds searched
+	 */
+	static final int DISPROVEN = 0;
+
+	/**
+	 * The search ran out of time
+	 */
+	static final int UNKNOWN = -1;
+
+	/**
+	 * The most rounds {@link #quickestCapture} looks ahead
+	 */
+	static final int MAX_ROUNDS = 3;
+
+	/**
+	 * The share of a move's search time the bundled AIs spend proving, as a divisor
+	 */
+	static final int SHARE = 10;
+
+	/**
+	 * Entries of the table the bundled AIs prove with
+	 */
+	static final int TABLE_ENTRIES = 1 << 16;
+
+	private static final int INFINITY = 1 << 28;
+	private static final int MRX = -1;
+	private static final int PASS = -1;
+	private static final int MAX_REVEAL_SPLIT = 24;
+	private static final Ticket[] DETECTIVE_TICKETS = {Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND};
+	private static final Ticket[] MRX_TICKETS =
+			{Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND, Ticket.SECRET};
+	private static final int[] MASKS = Arrays.stream(MRX_TICKETS)
+			.mapToInt(TransportAdjacency::mask).toArray();
+
+	/**
+	 * Thrown through the search once the deadline passes
+	 */
+	private static final class Timeout extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		Timeout() { super(null, null, false, false); }
+	}
+
+	private static final Timeout TIMEOUT = new Timeout();
+
+	/**
+	 * Proof and disproof numbers by position key, always replacing on collision
+	 */
+	static final class Table {
+		private final long[] keys;
+		private final int[] proofs;
+		private final int[] disproofs;
+		private final int mask;
+
+		/**
+		 * @param entries the number of entries, rounded down to a power of two, at least 2
+		 */
+		Table(int entries) {
+			if (entries < 2) throw new IllegalArgumentException("Need at least 2 entries");
+			int size = Integer.highestOneBit(entries);
+			keys = new long[size];
+			proofs = new int[size];
+			disproofs = new int[size];
+			mask = size - 1;
+		}
+
+		private int slot(long key) { return (int) (key ^ key >>> 32) & mask; }
+
+		private int find(long key) {
+			int slot = slot(key);
+			return keys[slot] == key ? slot : -1;
+		}
+
+		private void store(long key, int proof, int disproof) {
+			int slot = slot(key);
+			keys[slot] = key;
+			proofs[slot] = proof;
+			disproofs[slot] = disproof;
+		}
+	}
+
+	/**
+	 * A position on the current line and its children
+	 */
+	private static final class Node {
+		final long[] belief;
+		int mover;
+		int count;
+		int[] who = new int[16];
+		int[] to = new int[16];
+		int[] ticket = new int[16];
+		int[] second = new int[16];
+		long[][] beliefs = new long[16][];
+		long[] keys = new long[16];
+		int[] proofs = new int[16];
+		int[] disproofs = new int[16];
+		int savedToMove;
+		int savedLocation;
+
+		Node(int words) { belief = new long[words]; }
+
+		int add() {
+			if (count == keys.length) {
+				int size = 2 * count;
+				who = Arrays.copyOf(who, size);
+				to = Arrays.copyOf(to, size);
+				ticket = Arrays.copyOf(ticket, size);
+				second = Arrays.copyOf(second, size);
+				beliefs = Arrays.copyOf(beliefs, size);
+				keys = Arrays.copyOf(keys, size);
+				proofs = Arrays.copyOf(proofs, size);
+				disproofs = Arrays.copyOf(disproofs, size);
+			}
+			return count++;
+		}
+	}
+
+	private final ReachabilityKernel kernel;
+	private final TransportAdjacency adjacency;
+	private final int words;
+	private final Table table;
+	private final boolean[] reveals;
+	private final int lastRound;
+	private final int allDetectives;
+	private final int[] location;
+	private final int[][] tickets;
+	private final int[] mrXTickets;
+	private final long[] taken;
+	private final long[] first;
+	private final long[] scratch;
+	private final Node[] line;
+	private final long rootKey;
+	private int doubles;
+	private int mrXRound;
+	private int toMove;
+	private long nodes;
+	private long deadline;
+	private Budget budget;
+	private int result = UNKNOWN;
+	private int proof = -1;
+
+	/**
+	 * @param kernel the kernel of the board's graph
+	 * @param board the board, a detective must be to move
+	 * @param belief where MrX could be
+	 * @param rounds the rounds, this one included, the detectives have to capture MrX in
+	 * @param table the table, which may be shared with searches from the same turn
+	 */
+	CaptureProver(@Nonnull ReachabilityKernel kernel, @Nonnull Board board,
+	              @Nonnull long[] belief, int rounds, @Nonnull Table table) {
+		if (rounds < 1) throw new IllegalArgumentException("Need at least one round");
+		this.kernel = kernel;
+		this.adjacency = kernel.adjacency();
+		this.words = adjacency.words();
+		this.table = table;
+		var moves = board.getSetup().moves;
+		this.reveals = new boolean[moves.size()];
+		for (int i = 0; i < reveals.length; i++) reveals[i] = moves.get(i);
+		this.mrXRound = board.getMrXTravelLog().size();
+		this.lastRound = Math.min(reveals.length, mrXRound + rounds - 1);
+
+		var detectives = board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.collect(ImmutableList.toImmutableList());
+		if (detectives.size() > Integer.SIZE - 1)
+			throw new IllegalArgumentException("Too many detectives");
+		this.allDetectives = (1 << detectives.size()) - 1;
+		this.location = new int[detectives.size()];
+		this.tickets = new int[detectives.size()][DETECTIVE_TICKETS.length];
+		for (int d = 0; d < location.length; d++) {
+			Piece piece = detectives.get(d);
+			location[d] = board.getDetectiveLocation((Detective) piece).orElseThrow();
+			var ticketBoard = board.getPlayerTickets(piece).orElseThrow();
+			for (int t = 0; t < DETECTIVE_TICKETS.length; t++)
+				tickets[d][t] = ticketBoard.getCount(DETECTIVE_TICKETS[t]);
+		}
+		var mrX = board.getPlayerTickets(Piece.MrX.MRX).orElseThrow();
+		this.mrXTickets = Arrays.stream(MRX_TICKETS).mapToInt(mrX::getCount).toArray();
+		this.doubles = mrX.getCount(Ticket.DOUBLE);
+		this.taken = new long[words];
+		this.first = new long[words];
+		this.scratch = new long[words];
+		// every detective and MrX move once per round, with one more ply for the terminal position
+		this.line = new Node[(lastRound - mrXRound + 2) * (detectives.size() + 1) + 2];
+
+		var available = board.getAvailableMoves().asList();
+		if (available.isEmpty() || available.get(0).commencedBy().isMrX())
+			throw new IllegalArgumentException("Not the detectives' turn");
+		Node root = node(0);
+		System.arraycopy(belief, 0, root.belief, 0, words);
+		for (Move move : available) {
+			var single = (SingleMove) move;
+			int d = detectives.indexOf(single.commencedBy());
+			toMove |= 1 << d;
+			int i = root.add();
+			root.who[i] = d;
+			root.to[i] = single.destination;
+			root.ticket[i] = Arrays.asList(DETECTIVE_TICKETS).indexOf(single.ticket);
+		}
+		root.mover = 0;
+		initialise(0);
+		this.rootKey = hash(root.belief);
+	}
+
+	/**
+	 * Looks for a forced capture within one round, then two, up to {@value #MAX_ROUNDS}.
+	 *
+	 * @param kernel the kernel of the board's graph
+	 * @param board the board, a detective must be to move
+	 * @param belief where MrX could be, not empty
+	 * @param deadline {@link System#nanoTime()} after which to give up
+	 * @param budget the budget of the move, the search gives up once it is cancelled
+	 * @return the index into the board's available moves of the first move of the quickest
+	 * capture found, -1 if none was found
+	 */
+	static int quickestCapture(@Nonnull ReachabilityKernel kernel, @Nonnull Board board,
+	                           @Nonnull long[] belief, long deadline, @Nonnull Budget budget) {
+		var table = new Table(TABLE_ENTRIES);
+		for (int rounds = 1; rounds <= MAX_ROUNDS; rounds++) {
+			var prover = new CaptureProver(kernel, board, belief, rounds, table);
+			int result = prover.solve(deadline, budget);
+			if (result == PROVEN) return prover.proof();
+			if (result == UNKNOWN) break;
+		}
+		return -1;
+	}
+
+	/**
+	 * Searches until the question is settled, the deadline passes or the budget is cancelled.
+	 *
+	 * @param deadline {@link System#nanoTime()} after which the search gives up
+	 * @param budget the budget of the move, the search gives up once it is cancelled
+	 * @return {@link #PROVEN}, {@link #DISPROVEN} or {@link #UNKNOWN}
+	 */
+	int solve(long deadline, @Nonnull Budget budget) {
+		this.deadline = deadline;
+		this.budget = budget;
+		try {
+			mid(0, rootKey, INFINITY, INFINITY);
+		} catch (Timeout e) {
+			return UNKNOWN;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the index into the board's available moves of the first move of the proof, -1
+	 * unless {@link #solve} proved a capture
+	 */
+	int proof() { return result == PROVEN ? proof : -1; }
+
+	/**
+	 * @return positions searched so far
+	 */
+	long nodes() { return nodes; }
+
+	private Node node(int ply) {
+		if (line[ply] == null) line[ply] = new Node(words);
+		return line[ply];
+	}
+
+	private void mid(int ply, long key, int proofThreshold, int disproofThreshold) {
+		if ((++nodes & 255) == 0 && (budget.cancelled() || System.nanoTime() > deadline))
+			throw TIMEOUT;
+		Node node = node(ply);
+		if (ply > 0) {
+			// only reached through a table collision, the initial numbers settle these
+			if (isEmpty(node.belief)) {
+				table.store(key, 0, INFINITY);
+				return;
+			}
+			if (toMove == 0 && mrXRound >= lastRound) {
+				table.store(key, INFINITY, 0);
+				return;
+			}
+			generate(ply);
+		}
+		boolean detectives = node.mover != MRX;
+		while (true) {
+			int proof = detectives ? INFINITY : 0;
+			int disproof = detectives ? 0 : INFINITY;
+			int best = 0;
+			int next = INFINITY;
+			for (int i = 0; i < node.count; i++) {
+				int slot = table.find(node.keys[i]);
+				int p = slot >= 0 ? table.proofs[slot] : node.proofs[i];
+				int d = slot >= 0 ? table.disproofs[slot] : node.disproofs[i];
+				if (detectives) {
+					disproof = add(disproof, d);
+					if (p < proof) {
+						next = proof;
+						proof = p;
+						best = i;
+					} else if (p < next) next = p;
+				} else {
+					proof = add(proof, p);
+					if (d < disproof) {
+						next = disproof;
+						disproof = d;
+						best = i;
+					} else if (d < next) next = d;
+				}
+			}
+			if (proof == 0 || disproof == 0
+					|| proof >= proofThreshold || disproof >= disproofThreshold) {
+				table.store(key, proof, disproof);
+				if (ply == 0) {
+					result = proof == 0 ? PROVEN : disproof == 0 ? DISPROVEN : UNKNOWN;
+					this.proof = best;
+				}
+				return;
+			}
+			int slot = table.find(node.keys[best]);
+			int childProof = slot >= 0 ? table.proofs[slot] : node.proofs[best];
+			int childDisproof = slot >= 0 ? table.disproofs[slot] : node.disproofs[best];
+			int proofLimit;
+			int disproofLimit;
+			if (detectives) {
+				proofLimit = Math.min(proofThreshold, add(next, 1));
+				disproofLimit = rest(disproofThreshold, disproof, childDisproof);
+			} else {
+				disproofLimit = Math.min(disproofThreshold, add(next, 1));
+				proofLimit = rest(proofThreshold, proof, childProof);
+			}
+			apply(ply, best);
+			try {
+				mid(ply + 1, node.keys[best], proofLimit, disproofLimit);
+			} finally {
+				undo(ply, best);
+			}
+		}
+	}
+
+	private static int add(int a, int b) { return Math.min(INFINITY, a + b); }
+
+	/**
+	 * @return the threshold left for a child once its siblings' share is taken off
+	 */
+	private static int rest(int threshold, int total, int child) {
+		return threshold >= INFINITY ? INFINITY : Math.min(INFINITY, threshold - total + child);
+	}
+
+	/**
+	 * Lists the children of the position at the given ply with their keys and initial numbers
+	 */
+	private void generate(int ply) {
+		Node node = node(ply);
+		node.count = 0;
+		if (toMove == 0) {
+			node.mover = MRX;
+			Arrays.fill(taken, 0L);
+			for (int at : location) taken[at >>> 6] |= 1L << at;
+			for (int t = 0; t < MRX_TICKETS.length; t++) {
+				if (mrXTickets[t] == 0) continue;
+				kernel.expandBatch(node.belief, scratch, 1, MASKS[t], taken);
+				addMrX(node, t, -1, scratch, mrXRound);
+			}
+			if (doubles > 0 && mrXRound + 2 <= reveals.length) {
+				for (int t1 = 0; t1 < MRX_TICKETS.length; t1++) {
+					if (mrXTickets[t1] == 0) continue;
+					kernel.expandBatch(node.belief, first, 1, MASKS[t1], taken);
+					if (isEmpty(first)) continue;
+					mrXTickets[t1]--;
+					for (int t2 = 0; t2 < MRX_TICKETS.length; t2++) {
+						if (mrXTickets[t2] == 0) continue;
+						kernel.expandBatch(first, scratch, 1, MASKS[t2], taken);
+						addMrX(node, t1, t2, scratch, mrXRound + 1);
+					}
+					mrXTickets[t1]++;
+				}
+			}
+		} else {
+			int d = Integer.numberOfTrailingZeros(toMove);
+			node.mover = d;
+			int from = location[d];
+			for (int t = 0; t < DETECTIVE_TICKETS.length; t++) {
+				if (tickets[d][t] == 0) continue;
+				long[] rows = adjacency.rows(MASKS[t]);
+				int base = from * words;
+				for (int w = 0; w < words; w++) {
+					long bits = rows[base + w];
+					while (bits != 0) {
+						int station = (w << 6) + Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+						if (occupiedByOther(station, d)) continue;
+						int i = node.add();
+						node.who[i] = d;
+						node.to[i] = station;
+						node.ticket[i] = t;
+					}
+				}
+			}
+			if (node.count == 0) {
+				// a detective without moves sits the round out
+				int i = node.add();
+				node.who[i] = d;
+				node.to[i] = PASS;
+			}
+		}
+		initialise(ply);
+	}
+
+	/**
+	 * Adds MrX's move to the given stations, split by station if the last step reveals him
+	 */
+	private void addMrX(Node node, int t1, int t2, long[] stations, int round) {
+		if (isEmpty(stations)) return;
+		int size = 0;
+		for (long word : stations) size += Long.bitCount(word);
+		if (!reveals[round] || size > MAX_REVEAL_SPLIT) {
+			System.arraycopy(stations, 0, addMrX(node, t1, t2), 0, words);
+			return;
+		}
+		for (int w = 0; w < words; w++) {
+			long bits = stations[w];
+			while (bits != 0) {
+				long bit = Long.lowestOneBit(bits);
+				bits &= bits - 1;
+				long[] single = addMrX(node, t1, t2);
+				Arrays.fill(single, 0L);
+				single[w] = bit;
+			}
+		}
+	}
+
+	private long[] addMrX(Node node, int t1, int t2) {
+		int i = node.add();
+		node.ticket[i] = t1;
+		node.second[i] = t2;
+		if (node.beliefs[i] == null) node.beliefs[i] = new long[words];
+		return node.beliefs[i];
+	}
+
+	/**
+	 * Works out the key and initial proof and disproof numbers of every child
+	 */
+	private void initialise(int ply) {
+		Node node = node(ply);
+		Node child = node(ply + 1);
+		for (int i = 0; i < node.count; i++) {
+			apply(ply, i);
+			node.keys[i] = hash(child.belief);
+			int size = 0;
+			for (long word : child.belief) size += Long.bitCount(word);
+			if (size == 0) {
+				node.proofs[i] = 0;
+				node.disproofs[i] = INFINITY;
+			} else if (toMove == 0 && mrXRound >= lastRound) {
+				node.proofs[i] = INFINITY;
+				node.disproofs[i] = 0;
+			} else {
+				// fewer places for MrX to be are easier to clear
+				node.proofs[i] = size;
+				node.disproofs[i] = 1;
+			}
+			undo(ply, i);
+		}
+	}
+
+	private void apply(int ply, int i) {
+		Node node = node(ply);
+		long[] next = node(ply + 1).belief;
+		node.savedToMove = toMove;
+		if (node.mover != MRX) {
+			int d = node.who[i];
+			node.savedLocation = location[d];
+			System.arraycopy(node.belief, 0, next, 0, words);
+			toMove &= ~(1 << d);
+			int to = node.to[i];
+			if (to == PASS) return;
+			int t = node.ticket[i];
+			location[d] = to;
+			tickets[d][t]--;
+			mrXTickets[t]++;
+			next[to >>> 6] &= ~(1L << to);
+		} else {
+			System.arraycopy(node.beliefs[i], 0, next, 0, words);
+			mrXTickets[node.ticket[i]]--;
+			mrXRound++;
+			if (node.second[i] >= 0) {
+				doubles--;
+				mrXTickets[node.second[i]]--;
+				mrXRound++;
+			}
+			toMove = allDetectives;
+		}
+	}
+
+	private void undo(int ply, int i) {
+		Node node = node(ply);
+		toMove = node.savedToMove;
+		if (node.mover != MRX) {
+			int d = node.who[i];
+			if (node.to[i] == PASS) return;
+			int t = node.ticket[i];
+			location[d] = node.savedLocation;
+			tickets[d][t]++;
+			mrXTickets[t]--;
+		} else {
+			mrXTickets[node.ticket[i]]++;
+			mrXRound--;
+			if (node.second[i] >= 0) {
+				doubles++;
+				mrXTickets[node.second[i]]++;
+				mrXRound--;
+			}
+		}
+	}
+
+	/**
+	 * Hashes everything the result of the current position with the given belief depends on
+	 */
+	private long hash(long[] belief) {
+		long h = mix(mrXRound + 1L) ^ mix(3L << 48 | lastRound) ^ mix(4L << 48 | doubles);
+		for (int d = 0; d < location.length; d++) {
+			h ^= mix((long) (d + 1) << 32 | location[d]);
+			for (int t = 0; t < DETECTIVE_TICKETS.length; t++)
+				h ^= mix((long) (d + 1) << 40 | (long) t << 32 | tickets[d][t]);
+		}
+		for (int t = 0; t < MRX_TICKETS.length; t++)
+			h ^= mix(1L << 48 | (long) t << 32 | mrXTickets[t]);
+		h ^= mix(2L << 48 | toMove);
+		for (int w = 0; w < words; w++) h = h * 0x9E3779B97F4A7C15L + mix(belief[w] ^ w);
+		// 0 marks an empty slot
+		return h == 0 ? 1 : h;
+	}
+
+	/**
+	 * SplitMix64's finaliser
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private boolean occupiedByOther(int station, int d) {
+		for (int other = 0; other < location.length; other++)
+			if (other != d && location[other] == station) return true;
+		return false;
+	}
+
+	private static boolean isEmpty(long[] bits) {
+		for (long word : bits) if (word != 0) return false;
+		return true;
+	}
+}
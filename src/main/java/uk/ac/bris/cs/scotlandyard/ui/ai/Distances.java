@@ -0,0 +1,55 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.AnalysisRegistry;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.ReachabilityKernel;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.TransportAdjacency;
+
+/**
+ * All pairs shortest move counts the bundled AIs use to judge positions, ignoring tickets.
+ * The table is copied out of the graph's {@link DistanceOracle} so it only has to be searched
+ * once per machine, and shared through the {@link AnalysisRegistry} so every AI in the JVM copies
+ * it once.
+ */
+final class Distances {
+
+	private static final AnalysisRegistry.Key<Distances> KEY =
+			new AnalysisRegistry.Key<>("ai-distances", Distances::new);
+
+	private final ReachabilityKernel kernel;
+	private final byte[][] table;
+
+	private Distances(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		var oracle = AnalysisRegistry.get(graph, AnalysisRegistry.DISTANCES);
+		this.kernel = oracle.kernel();
+		int nodes = oracle.nodes();
+		this.table = new byte[nodes][nodes];
+		for (int source = 0; source < nodes; source++)
+			oracle.row(TransportAdjacency.ALL, source, table[source]);
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return the distances of the graph
+	 */
+	@Nonnull static Distances of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return AnalysisRegistry.get(graph, KEY);
+	}
+
+	/**
+	 * @return the kernel over the graph the distances were built from
+	 */
+	@Nonnull ReachabilityKernel kernel() { return kernel; }
+
+	/**
+	 * @return the table indexed by station, -1 where unreachable; must not be modified
+	 */
+	@Nonnull byte[][] table() { return table; }
+}
@@ -0,0 +1,246 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.BeliefTracker;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+
+/**
+ * Detective {@link Ai} using single observer information set Monte Carlo tree search.
+ * <br>
+ * Every iteration samples where MrX is from the {@link BeliefTracker}'s weights and plays on a
+ * {@link PlayoutBoard} with MrX placed there. The tree only knows what the detectives see: its
+ * moves are keyed by the detective move, or by the tickets and any revealed station MrX's move
+ * leaves in the travel log, so statistics gathered under every determinisation land in the same
+ * nodes. A determinisation resets one reused board from the position's and sampling is a binary
+ * search, so an iteration allocates nothing but the tree nodes it adds.
+ * <br>
+ * Before searching, a {@link CaptureProver} spends a tenth of the time looking for a capture the
+ * detectives can force, which is played straight away if found.
+ */
+public class IsmctsDetectiveAi implements Ai {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(IsmctsDetectiveAi.class);
+	private static final double EXPLORATION = 0.7;
+	private static final int MAX_DEPTH = 64;
+	// the tree already plays a ply per iteration, short playouts buy many more determinisations
+	private static final int ROLLOUT_PLIES = 2;
+	private static final long MAX_MARGIN = TimeUnit.MILLISECONDS.toNanos(250);
+
+	private final SplittableRandom random;
+	@Nullable private BeliefTracker tracker;
+	@Nullable private GameSetup trackedSetup;
+	private volatile double determinisationsPerSecond;
+
+	public IsmctsDetectiveAi() { this(new SplittableRandom()); }
+
+	/**
+	 * @param random the source of samples and playouts
+	 */
+	IsmctsDetectiveAi(@Nonnull SplittableRandom random) { this.random = random; }
+
+	@Nonnull @Override public String name() { return "ISMCTS detectives"; }
+
+	/**
+	 * @return determinisations searched per second in the last search, 0 before the first one
+	 */
+	public double determinisationsPerSecond() { return determinisationsPerSecond; }
+
+	@Override public void onStart() { tracker = null; }
+
+	@Override public void onTerminate() { tracker = null; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair) {
+		return pickMove(board, Budget.of(timeoutPair));
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, @Nonnull Budget budget) {
+		long start = System.nanoTime();
+		var moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		if (moves.size() == 1 || Boards.isMrXTurn(board)) return moves.get(0);
+
+		long deadline = budget.searchDeadline(MAX_MARGIN);
+
+		var distances = Distances.of(board.getSetup().graph);
+		var tracker = tracker(board, distances);
+		if (tracker.size() > 0) {
+			int forced = CaptureProver.quickestCapture(distances.kernel(), board,
+					tracker.stations(), start + (deadline - start) / CaptureProver.SHARE, budget);
+			if (forced >= 0) {
+				LOGGER.info("Forced capture starting with {} found in {} ms", moves.get(forced),
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				return moves.get(forced);
+			}
+		}
+		var sampler = new Sampler(board, tracker);
+		var root = new IsmctsNode(0, false);
+		var position = new PlayoutBoard(board, sampler.stations[0],
+				RolloutTables.of(board.getSetup().graph), random);
+		var search = new Search(position, random);
+		long iterations = 0;
+		while (System.nanoTime() < deadline && !budget.cancelled()) {
+			int sample = sampler.sample(random);
+			search.iterate(root, sampler.stations[sample], iterations++);
+		}
+
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		determinisationsPerSecond = iterations * 1e9 / elapsed;
+		LOGGER.info("{} determinisations in {} ms over {} stations ({} per second)", iterations,
+				TimeUnit.NANOSECONDS.toMillis(elapsed), sampler.stations.length,
+				Math.round(determinisationsPerSecond));
+
+		IsmctsNode best = root.mostVisited();
+		if (best == null) return moves.get(0);
+		for (Move move : moves)
+			if (position.key(position.encode(move)) == best.key) return move;
+		return moves.get(0);
+	}
+
+	private BeliefTracker tracker(Board board, Distances distances) {
+		if (tracker == null || !board.getSetup().equals(trackedSetup)) {
+			tracker = BeliefTracker.forSetup(distances.kernel(), board.getSetup());
+			trackedSetup = board.getSetup();
+		}
+		tracker.sync(board);
+		return tracker;
+	}
+
+	/**
+	 * Draws MrX's station in proportion to the belief weights
+	 */
+	private static final class Sampler {
+
+		private final int[] stations;
+		private final double[] cumulative;
+
+		Sampler(Board board, BeliefTracker tracker) {
+			double[] weights = tracker.weights();
+			int[] candidates = new int[weights.length];
+			int count = 0;
+			for (int station : board.getSetup().graph.nodes())
+				if (tracker.contains(station)) candidates[count++] = station;
+			if (count == 0) {
+				// only when the log contradicts the map, MrX could be anywhere free
+				var taken = Boards.detectives(board).stream()
+						.map(Player::location)
+						.collect(ImmutableList.toImmutableList());
+				for (int station : board.getSetup().graph.nodes())
+					if (!taken.contains(station)) candidates[count++] = station;
+				Arrays.fill(weights, 1);
+			}
+			this.stations = Arrays.copyOf(candidates, count);
+			this.cumulative = new double[count];
+			double total = 0;
+			for (int i = 0; i < count; i++) cumulative[i] = total += weights[stations[i]];
+		}
+
+		/**
+		 * @return the index of a station drawn by weight
+		 */
+		int sample(SplittableRandom random) {
+			double u = random.nextDouble() * cumulative[cumulative.length - 1];
+			int i = Arrays.binarySearch(cumulative, u);
+			return i >= 0 ? i : Math.min(-i - 1, cumulative.length - 1);
+		}
+	}
+
+	/**
+	 * One iteration's selection, expansion, playout and backpropagation, with buffers reused
+	 * across iterations
+	 */
+	private static final class Search {
+
+		private final PlayoutBoard position;
+		private final PlayoutBoard board;
+		private final SplittableRandom random;
+		private final IsmctsNode[] path = new IsmctsNode[MAX_DEPTH + 1];
+		private long[] keys = new long[64];
+
+		Search(PlayoutBoard position, SplittableRandom random) {
+			this.position = position;
+			this.board = new PlayoutBoard(position);
+			this.random = random;
+		}
+
+		void iterate(IsmctsNode root, int mrXLocation, long iteration) {
+			board.copy(position);
+			board.placeMrX(mrXLocation);
+			IsmctsNode node = root;
+			int depth = 0;
+			path[depth++] = root;
+			int winner = board.winner();
+			while (depth <= MAX_DEPTH && winner == PlayoutBoard.NONE) {
+				int count = board.generate();
+				if (count == 0) break;
+				if (keys.length < count) keys = new long[count * 2];
+				IsmctsNode expand = null;
+				int expandAt = -1;
+				for (int i = 0; i < count; i++) {
+					long key = keys[i] = board.key(board.move(i));
+					IsmctsNode child = node.child(key);
+					if (child == null && expand == null) {
+						expand = node.add(key, PlayoutBoard.byMrX(board.move(i)));
+						expandAt = i;
+						child = expand;
+					}
+					if (child != null && child.seen != iteration) {
+						child.seen = iteration;
+						child.availability++;
+					}
+				}
+				int move;
+				if (expand != null) {
+					node = expand;
+					move = board.move(expandAt);
+				} else {
+					node = node.select(iteration, EXPLORATION);
+					if (node == null) break;
+					move = pick(count, node.key);
+				}
+				board.apply(move);
+				winner = board.winner();
+				path[depth++] = node;
+				if (expand != null) break;
+			}
+			double reward = winner == PlayoutBoard.NONE
+					? 1 - board.rollout(ROLLOUT_PLIES)
+					: winner == PlayoutBoard.DETECTIVES_WIN ? 1 : 0;
+			for (int i = 0; i < depth; i++) {
+				path[i].visits++;
+				path[i].reward += reward;
+			}
+		}
+
+		/**
+		 * @return one of the generated moves with the given key, at random
+		 */
+		private int pick(int count, long key) {
+			int picked = -1;
+			int matches = 0;
+			for (int i = 0; i < count; i++) {
+				if (keys[i] != key) continue;
+				if (random.nextInt(++matches) == 0) picked = board.move(i);
+			}
+			return picked;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A node of an information set Monte Carlo search tree, standing for everything the detectives
+ * cannot tell apart. Children are keyed by what the detectives see of a move, see
+ * {@link IsmctsDetectiveAi}, so one child covers every MrX move leaving the same travel log.
+ * <br>
+ * Only used by the single thread searching the tree.
+ */
+final class IsmctsNode {
+
+	private static final IsmctsNode[] NONE = new IsmctsNode[0];
+
+	final long key;
+	final boolean byMrX;
+	int visits;
+	// how often this node's move was possible when its parent was visited
+	int availability;
+	// the detectives' total reward
+	double reward;
+	// the last iteration this node was found available in
+	long seen = -1;
+	private IsmctsNode[] children = NONE;
+	private int size;
+
+	IsmctsNode(long key, boolean byMrX) {
+		this.key = key;
+		this.byMrX = byMrX;
+	}
+
+	/**
+	 * @param key the observation key
+	 * @return the child with the key or null
+	 */
+	@Nullable IsmctsNode child(long key) {
+		for (int i = 0; i < size; i++) if (children[i].key == key) return children[i];
+		return null;
+	}
+
+	/**
+	 * @param key the observation key, not already a child
+	 * @param byMrX whether the move is MrX's
+	 * @return the new child
+	 */
+	@Nonnull IsmctsNode add(long key, boolean byMrX) {
+		if (size == children.length) children = Arrays.copyOf(children, Math.max(4, size * 2));
+		var child = new IsmctsNode(key, byMrX);
+		children[size++] = child;
+		return child;
+	}
+
+	/**
+	 * Picks the child with the best UCB score for whoever moves, counting only children available
+	 * in the given iteration and using availability in place of the parent's visits.
+	 *
+	 * @param iteration the iteration
+	 * @param exploration the exploration constant
+	 * @return the selected child, null if none are available
+	 */
+	@Nullable IsmctsNode select(long iteration, double exploration) {
+		IsmctsNode best = null;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < size; i++) {
+			IsmctsNode child = children[i];
+			if (child.seen != iteration) continue;
+			double own = child.byMrX ? child.visits - child.reward : child.reward;
+			double score = own / child.visits
+					+ exploration * Math.sqrt(Math.log(child.availability) / child.visits);
+			if (score > bestScore) {
+				bestScore = score;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the most visited child, null if there are none
+	 */
+	@Nullable IsmctsNode mostVisited() {
+		IsmctsNode best = null;
+		for (int i = 0; i < size; i++)
+			if (best == null || children[i].visits > best.visits) best = children[i];
+		return best;
+	}
+}
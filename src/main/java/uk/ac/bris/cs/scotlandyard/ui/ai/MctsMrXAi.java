@@ -0,0 +1,529 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.atlassian.fugue.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.AnalysisRegistry;
+import uk.ac.bris.cs.scotlandyard.model.BeliefTracker;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ReachabilityKernel;
+import uk.ac.bris.cs.scotlandyard.model.Tablebase;
+
+/**
+ * MrX {@link Ai} using Monte Carlo tree search. With {@link Parallelism#TREE} every worker thread
+ * searches the same {@link MctsNode} tree, spreading out through virtual loss; the root modes
+ * give each worker a private tree and merge the root statistics at the deadline. Searching stops
+ * at the {@link Budget}'s soft deadline, a margin before its hard one, or once it is cancelled.
+ * <br>
+ * Playouts follow the {@link Rollouts} policy for a few plies, then estimate from how close the
+ * nearest detective is. The number of workers defaults to the {@code scotlandyard.ai.threads} system
+ * property, or the number of processors; the mode defaults to the
+ * {@code scotlandyard.ai.parallelism} property, or tree parallelisation. MrX's moves are widened
+ * progressively as described in {@link MctsNode}, unless the {@code scotlandyard.ai.widening}
+ * property is false.
+ * <br>
+ * The tree is kept between turns: once the detectives have replied, the node showing the new
+ * position becomes the root and keeps its statistics. Positions found in the default
+ * {@link OpeningBook} are answered from it without searching, and playouts reaching a position
+ * a {@link Tablebase} in the cache directory decides take its result instead of a rollout. In
+ * larger games that is once all but {@link Tablebase#MAX_DETECTIVES} detectives have run out of
+ * tickets far enough away.
+ * <br>
+ * Before searching, a {@link CaptureProver} spends a tenth of the time finding moves after which
+ * the detectives can force a capture within {@value #PROOF_ROUNDS} rounds; those are only played
+ * if every move is one.
+ * <br>
+ * Between turns the AI ponders: low priority threads keep searching below the move it returned,
+ * so the detectives' actual replies come with statistics when the next turn reuses the tree.
+ * Pondering is capped by the {@code scotlandyard.ai.ponder.threads} property, half a processor
+ * per four by default and 0 to turn it off, and by {@code scotlandyard.ai.ponder.duty}, the
+ * percentage of time each ponder thread spends searching rather than sleeping, 50 by default.
+ * It stops before the next search, on {@link #stopPondering()} and on {@link #onTerminate()}.
+ */
+public class MctsMrXAi implements Ai {
+
+	/**
+	 * System property holding the default number of worker threads
+	 */
+	public static final String THREADS_PROPERTY = "scotlandyard.ai.threads";
+
+	/**
+	 * System property holding the default {@link Parallelism}
+	 */
+	public static final String PARALLELISM_PROPERTY = "scotlandyard.ai.parallelism";
+
+	/**
+	 * System property holding the number of pondering threads
+	 */
+	public static final String PONDER_THREADS_PROPERTY = "scotlandyard.ai.ponder.threads";
+
+	/**
+	 * System property holding the percentage of time ponder threads may search
+	 */
+	public static final String PONDER_DUTY_PROPERTY = "scotlandyard.ai.ponder.duty";
+
+	/**
+	 * System property turning progressive widening off when false
+	 */
+	public static final String WIDENING_PROPERTY = "scotlandyard.ai.widening";
+
+	/**
+	 * How worker threads share the search
+	 */
+	public enum Parallelism {
+		/**
+		 * All workers search one shared tree
+		 */
+		TREE,
+		/**
+		 * Every worker searches its own tree, the move with the most visits over all trees wins
+		 */
+		ROOT_SUMMED_VISITS,
+		/**
+		 * Every worker searches its own tree and votes for its most visited move, ties go to
+		 * the most visits over all trees
+		 */
+		ROOT_MAJORITY_VOTE
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MctsMrXAi.class);
+	private static final double EXPLORATION = Math.sqrt(2);
+	private static final long MAX_MARGIN = TimeUnit.MILLISECONDS.toNanos(250);
+	private static final long PONDER_SLICE = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final long PONDER_STOP_WAIT = TimeUnit.MILLISECONDS.toNanos(200);
+	private static final int PROOF_ROUNDS = 2;
+
+	private static final AnalysisRegistry.Key<Optional<Tablebase>> TABLEBASE =
+			new AnalysisRegistry.Key<>("tablebase",
+					graph -> Optional.ofNullable(Tablebase.open(graph, DistanceOracle.cacheDirectory())));
+
+	private final int threads;
+	private final Parallelism parallelism;
+	@Nullable private final OpeningBook book;
+	private final int ponderThreads;
+	private final int ponderDuty;
+	private final boolean widening;
+	private final AtomicLong seeds = new AtomicLong(System.nanoTime());
+	@Nullable private ExecutorService workers;
+	@Nullable private ExecutorService ponderers;
+	@Nullable private Ponder ponder;
+	private MctsNode[] trees = new MctsNode[0];
+	private volatile double playoutsPerSecond;
+	private volatile int reusedPlayouts;
+	private volatile long ponderedPlayouts;
+
+	public MctsMrXAi() {
+		this(Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+				Parallelism.valueOf(System.getProperty(PARALLELISM_PROPERTY,
+						Parallelism.TREE.name())));
+	}
+
+	/**
+	 * @param threads the number of worker threads, at least 1
+	 */
+	public MctsMrXAi(int threads) { this(threads, Parallelism.TREE); }
+
+	/**
+	 * @param threads the number of worker threads, at least 1
+	 * @param parallelism how the workers share the search
+	 */
+	public MctsMrXAi(int threads, @Nonnull Parallelism parallelism) {
+		this(threads, parallelism, OpeningBook.open(OpeningBook.defaultPath()));
+	}
+
+	/**
+	 * @param threads the number of worker threads, at least 1
+	 * @param parallelism how the workers share the search
+	 * @param book the book to answer known positions from, null to always search
+	 */
+	MctsMrXAi(int threads, @Nonnull Parallelism parallelism, @Nullable OpeningBook book) {
+		this(threads, parallelism, book,
+				Integer.getInteger(PONDER_THREADS_PROPERTY,
+						Math.max(1, Runtime.getRuntime().availableProcessors() / 4)),
+				Integer.getInteger(PONDER_DUTY_PROPERTY, 50));
+	}
+
+	/**
+	 * @param threads the number of worker threads, at least 1
+	 * @param parallelism how the workers share the search
+	 * @param book the book to answer known positions from, null to always search
+	 * @param ponderThreads the number of threads pondering between turns, 0 for none
+	 * @param ponderDuty the percentage of time ponder threads search, from 1 to 100
+	 */
+	MctsMrXAi(int threads, @Nonnull Parallelism parallelism, @Nullable OpeningBook book,
+	          int ponderThreads, int ponderDuty) {
+		if (threads < 1) throw new IllegalArgumentException("Need at least one thread");
+		if (ponderThreads < 0) throw new IllegalArgumentException("Negative ponder threads");
+		if (ponderDuty < 1 || ponderDuty > 100)
+			throw new IllegalArgumentException("Ponder duty must be a percentage");
+		this.threads = threads;
+		this.parallelism = Objects.requireNonNull(parallelism);
+		this.book = book;
+		this.ponderThreads = ponderThreads;
+		this.ponderDuty = ponderDuty;
+		this.widening = Boolean.parseBoolean(System.getProperty(WIDENING_PROPERTY, "true"));
+	}
+
+	@Nonnull @Override public String name() { return "MCTS MrX"; }
+
+	/**
+	 * @return playouts per second of the last search, 0 before the first one
+	 */
+	public double playoutsPerSecond() { return playoutsPerSecond; }
+
+	/**
+	 * @return playouts the last search inherited from the previous turn's tree
+	 */
+	public int reusedPlayouts() { return reusedPlayouts; }
+
+	/**
+	 * @return playouts pondered between the last two searches
+	 */
+	public long ponderedPlayouts() { return ponderedPlayouts; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board,
+	                                        Pair<Long, TimeUnit> timeoutPair) {
+		return pickMove(board, Budget.of(timeoutPair));
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, @Nonnull Budget budget) {
+		long start = System.nanoTime();
+		stopPondering();
+		var moves = board.getAvailableMoves().asList();
+		if (moves.isEmpty()) throw new IllegalArgumentException("No moves available");
+		if (moves.size() == 1 || !Boards.isMrXTurn(board)) return moves.get(0);
+		Move booked = book == null ? null : book.probe(board);
+		if (booked != null) {
+			LOGGER.info("Book move {} in {} us", booked,
+					TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+			trees = new MctsNode[0];
+			return booked;
+		}
+
+		long deadline = budget.searchDeadline(MAX_MARGIN);
+
+		int mrXLocation = Boards.mrXLocation(board);
+		var distances = Distances.of(board.getSetup().graph);
+		boolean[] lost = lostMoves(board, moves, mrXLocation, distances.kernel(),
+				start + (deadline - start) / CaptureProver.SHARE, budget);
+		MctsNode[] roots = reuse(board, mrXLocation);
+		int reused = Arrays.stream(roots).mapToInt(MctsNode::visits).sum();
+		reusedPlayouts = reused;
+		var rollouts = RolloutTables.of(board.getSetup().graph);
+		Tablebase solved = tablebase(board);
+		var playouts = new AtomicLong();
+		List<Future<?>> running = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			MctsNode root = roots[i % roots.length];
+			var random = new SplittableRandom(seeds.getAndIncrement());
+			running.add(workers().submit(() -> {
+				long done = 0;
+				while (System.nanoTime() < deadline && !budget.cancelled()) {
+					playout(root, rollouts, widening, solved, random);
+					done++;
+				}
+				playouts.addAndGet(done);
+			}));
+		}
+		awaitAll(running, budget.hardDeadline());
+
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		playoutsPerSecond = playouts.get() * 1e9 / elapsed;
+		LOGGER.info("{} playouts in {} ms on {} threads, {} ({} playouts/s, {} reused)",
+				playouts.get(), TimeUnit.NANOSECONDS.toMillis(elapsed), threads, parallelism,
+				Math.round(playoutsPerSecond), reused);
+		trees = roots;
+		Move best = bestMove(roots, moves, lost);
+		startPondering(roots, best, rollouts, solved);
+		return best;
+	}
+
+	/**
+	 * Searches below the move just picked in every tree until stopped
+	 */
+	private synchronized void startPondering(MctsNode[] roots, Move picked,
+	                                         RolloutTables rollouts, @Nullable Tablebase solved) {
+		if (ponderThreads == 0) return;
+		List<MctsNode> nodes = new ArrayList<>();
+		for (MctsNode root : roots)
+			for (MctsNode child : root.children())
+				if (picked.equals(child.move) && !child.terminal()) nodes.add(child);
+		if (nodes.isEmpty()) return;
+		var started = new Ponder();
+		for (int i = 0; i < ponderThreads; i++) {
+			MctsNode node = nodes.get(i % nodes.size());
+			var random = new SplittableRandom(seeds.getAndIncrement());
+			started.running.add(ponderers().submit(() -> {
+				long done = 0;
+				long idle = PONDER_SLICE * (100 - ponderDuty) / ponderDuty;
+				while (!started.stop) {
+					long sliceEnd = System.nanoTime() + PONDER_SLICE;
+					while (!started.stop && System.nanoTime() < sliceEnd) {
+						playout(node, rollouts, widening, solved, random);
+						done++;
+					}
+					if (idle > 0) LockSupport.parkNanos(idle);
+					if (Thread.interrupted()) break;
+				}
+				started.playouts.addAndGet(done);
+			}));
+		}
+		ponder = started;
+	}
+
+	/**
+	 * Stops pondering, waiting briefly for the ponder threads to finish their playouts
+	 */
+	@Override public synchronized void stopPondering() {
+		Ponder stopping = ponder;
+		if (stopping == null) return;
+		ponder = null;
+		stopping.stop = true;
+		awaitAll(stopping.running, System.nanoTime() + PONDER_STOP_WAIT);
+		ponderedPlayouts = stopping.playouts.get();
+		LOGGER.info("Pondered {} playouts", ponderedPlayouts);
+	}
+
+	/**
+	 * @return the tablebase of the board's graph written to the cache directory, null if there is
+	 * none
+	 */
+	@Nullable private static Tablebase tablebase(Board board) {
+		return AnalysisRegistry.get(board.getSetup().graph, TABLEBASE).orElse(null);
+	}
+
+	/**
+	 * @return for every tree the node of the previous search showing the board's position, or a
+	 * fresh root
+	 */
+	private MctsNode[] reuse(Board board, int mrXLocation) {
+		MctsNode[] previous = trees;
+		trees = new MctsNode[0];
+		MctsNode[] roots = new MctsNode[parallelism == Parallelism.TREE ? 1 : threads];
+		GameState state = null;
+		for (int i = 0; i < roots.length; i++) {
+			MctsNode found = i < previous.length
+					? previous[i].find(board, mrXLocation, board.getPlayers().size())
+					: null;
+			if (found != null) found.promote();
+			else {
+				if (state == null) state = Boards.toGameState(board, mrXLocation);
+				found = MctsNode.root(state, mrXLocation);
+			}
+			roots[i] = found;
+		}
+		return roots;
+	}
+
+	/**
+	 * Follows the detectives' most visited replies to a move in the last search's tree.
+	 *
+	 * @param move the move picked by the last search
+	 * @return the position at MrX's next turn the search expected, null if the search did not
+	 * look that far or the game ends on the way
+	 */
+	@Nullable GameState expectedPosition(@Nonnull Move move) {
+		if (trees.length == 0) return null;
+		MctsNode node = null;
+		for (MctsNode child : trees[0].children())
+			if (move.equals(child.move)) node = child;
+		while (node != null) {
+			MctsNode[] children = node.children();
+			if (children.length == 0) return null;
+			if (node.mrXToMove()) return node.state();
+			MctsNode most = null;
+			for (MctsNode child : children)
+				if (child.visits() > 0 && (most == null || child.visits() > most.visits()))
+					most = child;
+			node = most;
+		}
+		return null;
+	}
+
+	@Override public void onStart() {
+		stopPondering();
+		trees = new MctsNode[0];
+	}
+
+	@Override public void onTerminate() {
+		stopPondering();
+		trees = new MctsNode[0];
+		if (workers != null) workers.shutdownNow();
+		workers = null;
+		if (ponderers != null) ponderers.shutdownNow();
+		ponderers = null;
+	}
+
+	private ExecutorService workers() {
+		if (workers == null) workers = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setNameFormat("mcts-mrx-%d").setDaemon(true).build());
+		return workers;
+	}
+
+	private ExecutorService ponderers() {
+		if (ponderers == null) ponderers = Executors.newFixedThreadPool(ponderThreads,
+				new ThreadFactoryBuilder().setNameFormat("mcts-mrx-ponder-%d").setDaemon(true)
+						.setPriority(Thread.MIN_PRIORITY).build());
+		return ponderers;
+	}
+
+	private static void awaitAll(List<Future<?>> running, long until) {
+		try {
+			for (Future<?> future : running)
+				future.get(Math.max(0, until - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOGGER.warn("Search worker failed", e.getCause());
+		} catch (TimeoutException e) {
+			LOGGER.warn("Search workers overran the deadline");
+		}
+		// stragglers only ever add statistics to a tree nobody reads any more
+		running.forEach(future -> future.cancel(true));
+	}
+
+	/**
+	 * Proves which moves let the detectives force a capture within {@value #PROOF_ROUNDS}
+	 * rounds from what they will know. Moves leaving the same entries in the travel log look the
+	 * same to them, so are proved once. The detectives' belief is built once for the board and
+	 * each move's belief is a copy of it with only the move's own entries applied.
+	 *
+	 * @return for every move whether it was proved to lose
+	 */
+	static boolean[] lostMoves(Board board, ImmutableList<Move> moves, int mrXLocation,
+	                           ReachabilityKernel kernel, long deadline, Budget budget) {
+		boolean[] lost = new boolean[moves.size()];
+		GameState state = Boards.toGameState(board, mrXLocation);
+		var before = BeliefTracker.forSetup(kernel, board.getSetup());
+		before.sync(board);
+		var tracker = new BeliefTracker(before);
+		var table = new CaptureProver.Table(CaptureProver.TABLE_ENTRIES);
+		Map<List<LogEntry>, Boolean> proved = new HashMap<>();
+		int logged = board.getMrXTravelLog().size();
+		int count = 0;
+		for (int i = 0; i < moves.size(); i++) {
+			if (budget.cancelled() || System.nanoTime() > deadline) break;
+			GameState next = state.advance(moves.get(i));
+			if (!next.getWinner().isEmpty() || Boards.isMrXTurn(next)) continue;
+			var log = next.getMrXTravelLog();
+			var seen = List.copyOf(log.subList(logged, log.size()));
+			Boolean loses = proved.get(seen);
+			if (loses == null) {
+				tracker.copy(before);
+				tracker.sync(next);
+				loses = tracker.size() > 0 && new CaptureProver(kernel, next, tracker.stations(),
+						PROOF_ROUNDS, table).solve(deadline, budget) == CaptureProver.PROVEN;
+				proved.put(seen, loses);
+			}
+			lost[i] = loses;
+			if (loses) count++;
+		}
+		if (count > 0) LOGGER.info("{} of {} moves lose by force", count, moves.size());
+		return lost;
+	}
+
+	/**
+	 * @param lost moves never to pick unless all of them are
+	 * @return the best root move over all trees as the instance found on the board
+	 */
+	@Nonnull private Move bestMove(MctsNode[] roots, ImmutableList<Move> moves, boolean[] lost) {
+		Map<Move, Integer> indices = new HashMap<>();
+		for (int i = 0; i < moves.size(); i++) indices.put(moves.get(i), i);
+		long[] visits = new long[moves.size()];
+		long[] votes = new long[moves.size()];
+		for (MctsNode root : roots) {
+			int voted = -1;
+			int most = 0;
+			for (MctsNode child : root.children()) {
+				Integer index = indices.get(child.move);
+				if (index == null) continue;
+				visits[index] += child.visits();
+				if (child.visits() > most) {
+					most = child.visits();
+					voted = index;
+				}
+			}
+			if (voted >= 0) votes[voted]++;
+		}
+		boolean avoid = false;
+		for (int i = 0; i < moves.size() && !avoid; i++) avoid = !lost[i];
+		int best = -1;
+		for (int i = 0; i < moves.size(); i++) {
+			if (avoid && lost[i]) continue;
+			boolean better = best < 0
+					|| (parallelism == Parallelism.ROOT_MAJORITY_VOTE && votes[i] != votes[best]
+					? votes[i] > votes[best]
+					: visits[i] > visits[best]);
+			if (better) best = i;
+		}
+		return moves.get(best);
+	}
+
+	/**
+	 * One round of pondering, stopped through its flag
+	 */
+	private static final class Ponder {
+		final List<Future<?>> running = new ArrayList<>();
+		final AtomicLong playouts = new AtomicLong();
+		volatile boolean stop;
+	}
+
+	/**
+	 * Runs one selection, expansion, rollout and backpropagation pass over the tree.
+	 *
+	 * @param widening whether MrX's moves open up progressively, see {@link MctsNode}
+	 * @param tablebase decides positions with MrX to move instead of a rollout, null for none
+	 */
+	static void playout(MctsNode root, RolloutTables rollouts, boolean widening,
+	                    @Nullable Tablebase tablebase, SplittableRandom random) {
+		List<MctsNode> path = new ArrayList<>();
+		MctsNode node = root;
+		node.addVirtualLoss();
+		path.add(node);
+		while (node.expanded() && !node.terminal()) {
+			node = node.select(EXPLORATION);
+			node.addVirtualLoss();
+			path.add(node);
+		}
+		double reward;
+		if (!node.expanded()) node.expand(widening ? rollouts.distances() : null);
+		int solved = tablebase != null && !node.terminal() && node.mrXToMove()
+				? tablebase.outcome(node.state(), node.mrXLocation)
+				: Tablebase.UNKNOWN;
+		if (node.terminal()) reward = node.terminalReward();
+		else if (solved != Tablebase.UNKNOWN) reward = solved == Tablebase.MRX_WINS ? 1 : 0;
+		else reward = Rollouts.mrXReward(node.state(), node.mrXLocation, rollouts, random);
+		for (MctsNode visited : path) visited.update(reward);
+	}
+}
@@ -0,0 +1,341 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A node of a Monte Carlo search tree shared by many worker threads.
+ * <br>
+ * Statistics are plain fields updated with atomic {@link VarHandle} operations so no locks are
+ * taken. Rewards are always from MrX's point of view and kept in fixed point so they can be
+ * added atomically. Child states are only computed when a child is first visited.
+ * <br>
+ * With progressive widening MrX's children are ordered by a prior and selection only considers
+ * the first few, more as the node's visits grow: {@value #MIN_WIDTH} at first and
+ * {@value #WIDTH_FACTOR} times the square root of the visits later. The prior puts one move per
+ * destination first, the one spending the cheapest tickets, so double moves and secret variants
+ * that end where a plain move does are only tried once the distinct destinations have been. Within
+ * each group destinations further from the nearest detective come first.
+ */
+final class MctsNode {
+
+	/**
+	 * Fixed point scale of rewards
+	 */
+	static final long SCALE = 1L << 20;
+
+	/**
+	 * Children open to selection before any visits when widening
+	 */
+	static final int MIN_WIDTH = 8;
+	/**
+	 * Children open to selection per square root of the visits when widening
+	 */
+	static final int WIDTH_FACTOR = 3;
+
+	private static final MctsNode[] LEAF = new MctsNode[0];
+	// nearest detective distance at which a destination counts as safe for ordering
+	private static final int SAFE_DISTANCE = 6;
+	private static final VarHandle VISITS;
+	private static final VarHandle VIRTUAL_LOSS;
+	private static final VarHandle REWARD;
+	private static final VarHandle CHILDREN;
+	private static final VarHandle STATE;
+
+	static {
+		try {
+			var lookup = MethodHandles.lookup();
+			VISITS = lookup.findVarHandle(MctsNode.class, "visits", int.class);
+			VIRTUAL_LOSS = lookup.findVarHandle(MctsNode.class, "virtualLoss", int.class);
+			REWARD = lookup.findVarHandle(MctsNode.class, "reward", long.class);
+			CHILDREN = lookup.findVarHandle(MctsNode.class, "children", MctsNode[].class);
+			STATE = lookup.findVarHandle(MctsNode.class, "state", GameState.class);
+		} catch (ReflectiveOperationException e) { throw new ExceptionInInitializerError(e); }
+	}
+
+	// only cut when the node is promoted to a new root between searches
+	@Nullable MctsNode parent;
+	@Nullable final Move move;
+	final int mrXLocation;
+
+	private volatile GameState state;
+	private volatile MctsNode[] children;
+	private volatile int visits;
+	private volatile int virtualLoss;
+	private volatile long reward;
+	// MrX's reward once the node is known to end the game, only written before children
+	private double terminalReward = Double.NaN;
+	// whether children open up with visits, only written before children
+	private boolean widened;
+
+	/**
+	 * @param state the root state
+	 * @param mrXLocation where MrX is in the root state
+	 * @return a new root node
+	 */
+	static MctsNode root(@Nonnull GameState state, int mrXLocation) {
+		var root = new MctsNode(null, null, mrXLocation);
+		root.state = Objects.requireNonNull(state);
+		return root;
+	}
+
+	private MctsNode(@Nullable MctsNode parent, @Nullable Move move, int mrXLocation) {
+		this.parent = parent;
+		this.move = move;
+		this.mrXLocation = mrXLocation;
+	}
+
+	/**
+	 * @return the game state of this node, computing it from the parent on first use
+	 */
+	@Nonnull GameState state() {
+		GameState s = state;
+		if (s != null) return s;
+		s = Objects.requireNonNull(parent).state().advance(Objects.requireNonNull(move));
+		// racing threads compute equal states, keep whichever landed first
+		return STATE.compareAndSet(this, null, s) ? s : state;
+	}
+
+	/**
+	 * @return whether children have been created
+	 */
+	boolean expanded() { return children != null; }
+
+	/**
+	 * @return whether the game is over in this node; only valid once expanded
+	 */
+	boolean terminal() { return children == LEAF; }
+
+	/**
+	 * @return whether MrX makes the next move; only valid once expanded
+	 */
+	boolean mrXToMove() {
+		MctsNode[] c = children();
+		return c.length > 0 && Objects.requireNonNull(c[0].move).commencedBy().isMrX();
+	}
+
+	/**
+	 * @return MrX's reward of the finished game; only valid if {@link #terminal()}
+	 */
+	double terminalReward() { return terminalReward; }
+
+	/**
+	 * @return the children, empty if not expanded or terminal
+	 */
+	@Nonnull MctsNode[] children() {
+		MctsNode[] c = children;
+		return c == null ? LEAF : c;
+	}
+
+	/**
+	 * Creates the children of this node if no other thread has done so yet.
+	 */
+	void expand() { expand(null); }
+
+	/**
+	 * Creates the children of this node if no other thread has done so yet, widening
+	 * progressively over MrX's moves if given distances.
+	 *
+	 * @param distances the distances of the state's graph to order MrX's moves by, null to open
+	 * every child at once
+	 */
+	void expand(@Nullable byte[][] distances) {
+		if (children != null) return;
+		GameState s = state();
+		var moves = s.getAvailableMoves().asList();
+		MctsNode[] created;
+		if (moves.isEmpty()) {
+			terminalReward = s.getWinner().contains(Piece.MrX.MRX) ? 1 : 0;
+			created = LEAF;
+		} else {
+			created = new MctsNode[moves.size()];
+			for (int i = 0; i < created.length; i++) {
+				Move m = moves.get(i);
+				int location = m.commencedBy().isMrX() ? destination(m) : mrXLocation;
+				created[i] = new MctsNode(this, m, location);
+			}
+			if (distances != null && created.length > MIN_WIDTH
+					&& moves.get(0).commencedBy().isMrX()) {
+				order(created, s, distances);
+				widened = true;
+			}
+		}
+		CHILDREN.compareAndSet(this, null, created);
+	}
+
+	/**
+	 * Sorts MrX's children by the prior: the cheapest move to every destination first, then the
+	 * rest, each group furthest from the detectives first
+	 */
+	private static void order(MctsNode[] children, GameState state, byte[][] distances) {
+		int[] detectives = state.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.mapToInt(p -> state.getDetectiveLocation((Detective) p).orElseThrow())
+				.toArray();
+		Map<Integer, Integer> cheapest = new HashMap<>();
+		long[] keys = new long[children.length];
+		for (int i = 0; i < children.length; i++) {
+			int cost = cost(Objects.requireNonNull(children[i].move));
+			Integer previous = cheapest.get(children[i].mrXLocation);
+			if (previous == null || cost < previous) cheapest.put(children[i].mrXLocation, cost);
+		}
+		Set<Integer> represented = new HashSet<>();
+		for (int i = 0; i < children.length; i++) {
+			MctsNode child = children[i];
+			int cost = cost(Objects.requireNonNull(child.move));
+			boolean first = cost == cheapest.get(child.mrXLocation)
+					&& represented.add(child.mrXLocation);
+			int nearest = SAFE_DISTANCE;
+			for (int detective : detectives) {
+				int distance = distances[detective][child.mrXLocation];
+				if (distance >= 0) nearest = Math.min(nearest, distance);
+			}
+			// group, then distance, then cost, then the original order
+			keys[i] = (first ? 0L : 1L) << 62 | (long) (SAFE_DISTANCE - nearest) << 48
+					| (long) cost << 32 | i;
+		}
+		MctsNode[] copy = children.clone();
+		Arrays.sort(keys);
+		for (int i = 0; i < keys.length; i++) children[i] = copy[(int) keys[i]];
+	}
+
+	/**
+	 * @return how dear the tickets of a move are to MrX: a double move more than a single one and
+	 * secret tickets more than transport ones
+	 */
+	private static int cost(Move move) {
+		return move.accept(new FunctionalVisitor<>(
+				x -> x.ticket == Ticket.SECRET ? 1 : 0,
+				x -> 2 + (x.ticket1 == Ticket.SECRET ? 1 : 0) + (x.ticket2 == Ticket.SECRET ? 1 : 0)));
+	}
+
+	/**
+	 * @param move the move
+	 * @return where the move ends
+	 */
+	static int destination(@Nonnull Move move) {
+		return move.accept(new FunctionalVisitor<>(x -> x.destination, x -> x.destination2));
+	}
+
+	/**
+	 * Picks the child with the best UCT score for the player making the child's move. Children
+	 * other threads are currently exploring look worse through their virtual loss.
+	 *
+	 * @param exploration the exploration constant
+	 * @return the selected child
+	 */
+	@Nonnull MctsNode select(double exploration) {
+		MctsNode[] c = children();
+		int seen = visits + virtualLoss;
+		double logTotal = Math.log(Math.max(1, seen));
+		int open = widened ? width(seen, c.length) : c.length;
+		MctsNode best = c[0];
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < open; i++) {
+			MctsNode child = c[i];
+			double score = child.uct(logTotal, exploration);
+			if (score > bestScore) {
+				bestScore = score;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param visits the visits of a node, virtual ones included
+	 * @param children the number of children of the node
+	 * @return how many of the node's first children are open to selection when widening
+	 */
+	static int width(int visits, int children) {
+		return Math.min(children, Math.max(MIN_WIDTH, (int) (WIDTH_FACTOR * Math.sqrt(visits))));
+	}
+
+	private double uct(double logTotal, double exploration) {
+		int n = visits;
+		int seen = n + virtualLoss;
+		if (seen == 0) return Double.POSITIVE_INFINITY;
+		double mrX = (double) reward / SCALE;
+		double own = Objects.requireNonNull(move).commencedBy().isMrX() ? mrX : n - mrX;
+		return own / seen + exploration * Math.sqrt(logTotal / seen);
+	}
+
+	/**
+	 * Marks this node as being explored by one more thread
+	 */
+	void addVirtualLoss() { VIRTUAL_LOSS.getAndAdd(this, 1); }
+
+	/**
+	 * Records the result of one playout through this node and removes its virtual loss.
+	 *
+	 * @param mrXReward MrX's reward in [0, 1]
+	 */
+	void update(double mrXReward) {
+		REWARD.getAndAdd(this, Math.round(mrXReward * SCALE));
+		VISITS.getAndAdd(this, 1);
+		VIRTUAL_LOSS.getAndAdd(this, -1);
+	}
+
+	/**
+	 * @return the number of finished playouts through this node
+	 */
+	int visits() { return visits; }
+
+	/**
+	 * @return MrX's mean reward of playouts through this node
+	 */
+	double meanReward() {
+		int n = visits;
+		return n == 0 ? 0 : (double) reward / SCALE / n;
+	}
+
+	/**
+	 * Finds the already searched descendant showing the same position as the board, following
+	 * only moves that agree with where the pieces ended up on the board.
+	 *
+	 * @param board the board to look for
+	 * @param mrXLocation where MrX is on the board
+	 * @param maxPlies how many moves below this node to look
+	 * @return the matching descendant or null if it was never searched
+	 */
+	@Nullable MctsNode find(@Nonnull Board board, int mrXLocation, int maxPlies) {
+		if (maxPlies == 0) return null;
+		for (MctsNode child : children()) {
+			if (!child.expanded()) continue;
+			Move m = Objects.requireNonNull(child.move);
+			Piece piece = m.commencedBy();
+			boolean agrees = piece.isMrX()
+					? child.mrXLocation == mrXLocation
+					: board.getDetectiveLocation((Detective) piece).orElse(-1) == destination(m);
+			if (!agrees) continue;
+			if (child.mrXLocation == mrXLocation && Boards.samePosition(child.state(), board))
+				return child;
+			MctsNode found = child.find(board, mrXLocation, maxPlies - 1);
+			if (found != null) return found;
+		}
+		return null;
+	}
+
+	/**
+	 * Makes this node the root of its own tree. Everything not below it is no longer reachable
+	 * and is collected as a whole.
+	 */
+	void promote() { parent = null; }
+}
@@ -0,0 +1,223 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * MrX's moves for known positions, read from a memory-mapped file written by
+ * {@link OpeningBookGenerator}.
+ * <br>
+ * The file holds a header naming the {@link GameSetup} it was built for, then pairs of longs
+ * sorted by position key: the key and the move as {@link #encode} packs it. A probe is a binary
+ * search over the mapping. Keys cover the round, MrX's station and tickets and every detective's
+ * station and tickets; detectives enter as an unordered set since their colours are
+ * interchangeable to MrX.
+ * <br>
+ * The default book is the file named by {@value #BOOK_PROPERTY}, or {@code mrx-book.bin} in
+ * {@link DistanceOracle#cacheDirectory()}. Books are safe to share between threads.
+ */
+final class OpeningBook {
+
+	/**
+	 * System property naming the default book file
+	 */
+	static final String BOOK_PROPERTY = "scotlandyard.ai.book";
+
+	private static final long MAGIC = 0x5359424F4F4B0001L;
+	private static final int HEADER = 3 * Long.BYTES;
+
+	private final long setupKey;
+	private final LongBuffer entries;
+	private final int size;
+	@Nullable private volatile GameSetup matchedSetup;
+
+	private OpeningBook(long setupKey, LongBuffer entries) {
+		this.setupKey = setupKey;
+		this.entries = entries;
+		this.size = entries.limit() / 2;
+	}
+
+	/**
+	 * @return the file named by {@value #BOOK_PROPERTY}, or the one in the cache directory
+	 */
+	@Nonnull static Path defaultPath() {
+		String file = System.getProperty(BOOK_PROPERTY);
+		return file != null ? Paths.get(file)
+				: DistanceOracle.cacheDirectory().resolve("mrx-book.bin");
+	}
+
+	/**
+	 * @param file the book file
+	 * @return the book, null if the file is missing or not a book
+	 */
+	@Nullable static OpeningBook open(@Nonnull Path file) {
+		if (!Files.isRegularFile(file)) return null;
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER || (size - HEADER) % (2 * Long.BYTES) != 0) return null;
+			var header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining()) if (channel.read(header, header.position()) < 0) return null;
+			header.flip();
+			if (header.getLong() != MAGIC) return null;
+			long setupKey = header.getLong();
+			if (header.getLong() != (size - HEADER) / (2 * Long.BYTES)) return null;
+			// the mapping stays valid once the channel is closed
+			var entries = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, size - HEADER)
+					.asLongBuffer();
+			return new OpeningBook(setupKey, entries);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a book, replacing any file by renaming so open mappings of it stay valid.
+	 *
+	 * @param file the book file
+	 * @param setup the setup the positions belong to
+	 * @param moves the encoded move of every position key
+	 */
+	static void write(@Nonnull Path file, @Nonnull GameSetup setup, @Nonnull Map<Long, Long> moves)
+			throws IOException {
+		var sorted = new TreeMap<>(moves);
+		var buffer = ByteBuffer.allocate(HEADER + sorted.size() * 2 * Long.BYTES)
+				.putLong(MAGIC).putLong(setupKey(setup)).putLong(sorted.size());
+		sorted.forEach((key, move) -> buffer.putLong(key).putLong(move));
+		buffer.flip();
+		Path directory = file.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, "mrx-book-", ".tmp");
+		try {
+			try (var channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * @return the number of positions
+	 */
+	int size() { return size; }
+
+	/**
+	 * @param board the board, must be MrX's turn
+	 * @return the book's move among the board's available moves, null if the position is not in
+	 * the book
+	 */
+	@Nullable Move probe(@Nonnull Board board) {
+		if (!matches(board.getSetup())) return null;
+		long key = key(board);
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long found = entries.get(2 * middle);
+			if (found < key) low = middle + 1;
+			else if (found > key) high = middle - 1;
+			else {
+				long move = entries.get(2 * middle + 1);
+				for (Move available : board.getAvailableMoves())
+					if (encode(available) == move) return available;
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private boolean matches(GameSetup setup) {
+		if (setup.equals(matchedSetup)) return true;
+		if (setupKey(setup) != setupKey) return false;
+		matchedSetup = setup;
+		return true;
+	}
+
+	/**
+	 * @param setup the setup
+	 * @return a hash of the setup's graph and reveal rounds
+	 */
+	static long setupKey(@Nonnull GameSetup setup) {
+		return Hashing.sha256().newHasher()
+				.putString(DistanceOracle.fingerprint(setup.graph), StandardCharsets.US_ASCII)
+				.putString(setup.moves.toString(), StandardCharsets.US_ASCII)
+				.hash().asLong();
+	}
+
+	/**
+	 * @param board the board, must be MrX's turn
+	 * @return the key of the position on the board
+	 */
+	static long key(@Nonnull Board board) {
+		long key = mix(board.getMrXTravelLog().size() + 1L)
+				^ mix(1L << 56 | tickets(Boards.tickets(board, Piece.MrX.MRX)) << 16
+						| Boards.mrXLocation(board));
+		long detectives = 0;
+		for (Player detective : Boards.detectives(board))
+			detectives += mix(2L << 56 | tickets(detective.tickets()) << 16 | detective.location());
+		return key ^ mix(detectives);
+	}
+
+	private static long tickets(Map<Ticket, Integer> tickets) {
+		long packed = 0;
+		for (Ticket ticket : Ticket.values())
+			packed |= (long) (tickets.getOrDefault(ticket, 0) & 0xFF) << (ticket.ordinal() * 8);
+		return packed;
+	}
+
+	/**
+	 * @param move one of MrX's moves
+	 * @return the move's tickets and destinations packed into a long, never 0
+	 */
+	static long encode(@Nonnull Move move) {
+		if (move instanceof SingleMove) {
+			var single = (SingleMove) move;
+			return 1L << 48 | (long) single.ticket.ordinal() << 40 | single.destination;
+		}
+		var twice = (DoubleMove) Objects.requireNonNull(move);
+		return 2L << 48 | (long) twice.ticket1.ordinal() << 44 | (long) twice.ticket2.ordinal() << 40
+				| (long) twice.destination1 << 20 | twice.destination2;
+	}
+
+	/**
+	 * SplitMix64's finaliser
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,139 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+/**
+ * Builds the {@link OpeningBook} offline by searching MrX's first decisions from every standard
+ * start: each of {@link ScotlandYard#MRX_LOCATIONS} against each set of detective stations drawn
+ * from {@link ScotlandYard#DETECTIVE_LOCATIONS}.
+ * <br>
+ * Later decisions follow the line {@link MctsMrXAi} itself expected, the detectives' most visited
+ * replies in its tree; covering every reply would multiply the positions by thousands per round.
+ * The book is written every {@value #CHECKPOINT} starts so a long run can be stopped early. Run
+ * with {@code mvn -Pbench test-compile exec:exec
+ * -Dbench.main=uk.ac.bris.cs.scotlandyard.ui.ai.OpeningBookGenerator
+ * -Dbench.args="<book file> <ms per decision> <decisions> <detectives>"}.
+ */
+public final class OpeningBookGenerator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(OpeningBookGenerator.class);
+	private static final int CHECKPOINT = 64;
+
+	private OpeningBookGenerator() {}
+
+	public static void main(String[] args) throws IOException {
+		Path file = args.length > 0 ? Paths.get(args[0]) : OpeningBook.defaultPath();
+		long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+		int decisions = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		int detectives = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+		var setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		var starts = standardStarts(setup, detectives);
+		LOGGER.info("{} starts, {} decisions each at {} ms, writing {}", starts.size(), decisions,
+				millis, file);
+		var ai = new MctsMrXAi(Integer.getInteger(MctsMrXAi.THREADS_PROPERTY,
+				Runtime.getRuntime().availableProcessors()), MctsMrXAi.Parallelism.TREE, null);
+		Map<Long, Long> book = new HashMap<>();
+		try {
+			for (int i = 0; i < starts.size(); i += CHECKPOINT) {
+				var batch = starts.subList(i, Math.min(starts.size(), i + CHECKPOINT));
+				book.putAll(generate(ai, batch, decisions, millis));
+				OpeningBook.write(file, setup, book);
+				LOGGER.info("{} of {} starts, {} positions", i + batch.size(), starts.size(),
+						book.size());
+			}
+		} finally {
+			ai.onTerminate();
+		}
+	}
+
+	/**
+	 * @param setup the setup
+	 * @param detectives the number of detectives, at most as many as there are detective stations
+	 * @return a game state for every MrX start against every set of detective starts, with
+	 * default tickets
+	 */
+	@Nonnull static ImmutableList<GameState> standardStarts(@Nonnull GameSetup setup,
+	                                                        int detectives) {
+		var stations = ScotlandYard.DETECTIVE_LOCATIONS;
+		if (detectives < 1 || detectives > stations.size())
+			throw new IllegalArgumentException("Bad detective count " + detectives);
+		var factory = new MyGameStateFactory();
+		var starts = ImmutableList.<GameState>builder();
+		List<int[]> combinations = new ArrayList<>();
+		choose(stations.size(), detectives, 0, new int[detectives], 0, combinations);
+		for (int mrX : ScotlandYard.MRX_LOCATIONS) {
+			for (int[] combination : combinations) {
+				var players = ImmutableList.<Player>builder();
+				for (int d = 0; d < detectives; d++)
+					players.add(new Player(Detective.values()[d],
+							ScotlandYard.defaultDetectiveTickets(), stations.get(combination[d])));
+				starts.add(factory.build(setup,
+						new Player(Piece.MrX.MRX, ScotlandYard.defaultMrXTickets(), mrX),
+						players.build()));
+			}
+		}
+		return starts.build();
+	}
+
+	private static void choose(int n, int k, int from, int[] picked, int count, List<int[]> out) {
+		if (count == k) {
+			out.add(picked.clone());
+			return;
+		}
+		for (int i = from; i <= n - (k - count); i++) {
+			picked[count] = i;
+			choose(n, k, i + 1, picked, count + 1, out);
+		}
+	}
+
+	/**
+	 * Searches MrX's first decisions from every start.
+	 *
+	 * @param ai the searcher, which should not have a book of its own
+	 * @param starts the starting states, MrX to move
+	 * @param decisions how many of MrX's decisions to search along each expected line
+	 * @param millis the time per decision
+	 * @return the encoded move of every position key searched
+	 */
+	@Nonnull static Map<Long, Long> generate(@Nonnull MctsMrXAi ai,
+	                                         @Nonnull List<GameState> starts,
+	                                         int decisions, long millis) {
+		Map<Long, Long> book = new HashMap<>();
+		for (GameState start : starts) {
+			ai.onStart();
+			GameState state = start;
+			for (int i = 0; i < decisions && state != null && Boards.isMrXTurn(state); i++) {
+				Move move = ai.pickMove(state, new Pair<>(millis, TimeUnit.MILLISECONDS));
+				book.put(OpeningBook.key(state), OpeningBook.encode(move));
+				state = ai.expectedPosition(move);
+			}
+		}
+		return book;
+	}
+}
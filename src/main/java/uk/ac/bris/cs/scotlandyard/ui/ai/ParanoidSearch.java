@@ -0,0 +1,484 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ReachabilityKernel;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.Territory;
+import uk.ac.bris.cs.scotlandyard.model.TransportAdjacency;
+
+/**
+ * Iterative deepening alpha-beta search for the detectives, paranoid in that MrX is assumed to
+ * make whichever move is worst for all of them.
+ * <br>
+ * MrX is never placed on the map. He is a bitset of every station he could be at, and his move is
+ * the ticket the detectives will see in the travel log, expanding the bitset along that ticket's
+ * transports. A detective landing on a station removes it; the detectives win once nothing is
+ * left. Double moves, future reveals and the tickets detectives hand to MrX are not modelled,
+ * which leaves MrX weaker than he is but keeps the branching factor small. Leaves are scored by
+ * how many places MrX could be, how close the detectives are to them and the size of his
+ * {@link Territory}.
+ * <br>
+ * Results go into a {@link TranspositionTable} that may be shared with other instances searching
+ * the same position on other threads, the Lazy SMP scheme: each thread starts at its own depth
+ * offset and they speed each other up through the table. One instance is not thread safe.
+ */
+final class ParanoidSearch {
+
+	/**
+	 * Score of a won position, less the plies it takes to win
+	 */
+	static final int WIN = 1_000_000;
+
+	private static final int INFINITY = Integer.MAX_VALUE - 1;
+	/**
+	 * Deepest ply ever searched
+	 */
+	static final int MAX_PLY = 64;
+	private static final int ASPIRATION = 40;
+	private static final int MRX = -1;
+	private static final Ticket[] DETECTIVE_TICKETS = {Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND};
+	private static final Ticket[] MRX_TICKETS =
+			{Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND, Ticket.SECRET};
+	private static final int[] MASKS = Arrays.stream(MRX_TICKETS)
+			.mapToInt(TransportAdjacency::mask).toArray();
+
+	/**
+	 * Thrown through the search once the deadline passes
+	 */
+	private static final class Timeout extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		Timeout() { super(null, null, false, false); }
+	}
+
+	private static final Timeout TIMEOUT = new Timeout();
+	private static final int MAX_MOVES = 64;
+	/**
+	 * Score lost per station MrX reaches before any detective
+	 */
+	private static final int TERRITORY = 2;
+
+	private final ReachabilityKernel kernel;
+	private final TransportAdjacency adjacency;
+	private final byte[][] distances;
+	private final int words;
+	private final Budget budget;
+	private final long deadline;
+	private final TranspositionTable table;
+	private final AtomicBoolean stop;
+	private final AtomicLongArray depthTimes;
+	private final int rounds;
+	private final int[] remaining;
+	private final int[] location;
+	private final int[][] tickets;
+	private final int[] mrXTickets;
+	private final long[][] beliefs;
+	private final long[][] occupied;
+	private final Territory territory;
+	private final int[] masks;
+	private final int[] schedule = new int[MAX_PLY + 1];
+	private final int[][] moveTo = new int[MAX_PLY + 1][MAX_MOVES];
+	private final int[][] moveTicket = new int[MAX_PLY + 1][MAX_MOVES];
+	private final int[] bestAt = new int[MAX_PLY + 1];
+	private final List<int[]> rootMoves = new ArrayList<>();
+	private int mrXRound;
+	private long nodes;
+	private int rootBest;
+	private int best;
+	private int depth;
+	private int score;
+
+	/**
+	 * @param distances distances of the board's graph
+	 * @param board the board, a detective must be to move
+	 * @param belief where MrX could be
+	 * @param budget the time for the move, no iteration starts after its soft deadline and the
+	 * search gives up once it is cancelled
+	 * @param deadline {@link System#nanoTime()} after which the search gives up
+	 * @param table the table shared by every thread searching this position
+	 * @param stop set once the search should give up early
+	 * @param depthTimes the {@link System#nanoTime()} each depth was first completed at by any
+	 * thread, indexed by depth
+	 */
+	ParanoidSearch(@Nonnull Distances distances, @Nonnull Board board, @Nonnull long[] belief,
+	               @Nonnull Budget budget, long deadline, @Nonnull TranspositionTable table,
+	               @Nonnull AtomicBoolean stop, @Nonnull AtomicLongArray depthTimes) {
+		this.kernel = distances.kernel();
+		this.adjacency = kernel.adjacency();
+		this.distances = distances.table();
+		this.words = adjacency.words();
+		this.budget = budget;
+		this.deadline = deadline;
+		this.table = table;
+		this.stop = stop;
+		this.depthTimes = depthTimes;
+		this.rounds = board.getSetup().moves.size();
+		this.mrXRound = board.getMrXTravelLog().size();
+
+		var detectives = board.getPlayers().stream()
+				.filter(Piece::isDetective)
+				.collect(ImmutableList.toImmutableList());
+		this.location = new int[detectives.size()];
+		this.tickets = new int[detectives.size()][DETECTIVE_TICKETS.length];
+		for (int d = 0; d < location.length; d++) {
+			Piece piece = detectives.get(d);
+			location[d] = board.getDetectiveLocation((Detective) piece).orElseThrow();
+			var ticketBoard = board.getPlayerTickets(piece).orElseThrow();
+			for (int t = 0; t < DETECTIVE_TICKETS.length; t++)
+				tickets[d][t] = ticketBoard.getCount(DETECTIVE_TICKETS[t]);
+		}
+		var mrX = board.getPlayerTickets(Piece.MrX.MRX).orElseThrow();
+		this.mrXTickets = Arrays.stream(MRX_TICKETS).mapToInt(mrX::getCount).toArray();
+
+		this.territory = new Territory(kernel);
+		this.masks = new int[location.length];
+		this.beliefs = new long[MAX_PLY + 1][words];
+		this.occupied = new long[MAX_PLY + 1][words];
+		System.arraycopy(belief, 0, beliefs[0], 0, words);
+
+		var moving = board.getAvailableMoves().stream()
+				.map(Move::commencedBy)
+				.collect(ImmutableList.toImmutableList());
+		this.remaining = detectives.stream()
+				.filter(moving::contains)
+				.mapToInt(detectives::indexOf)
+				.toArray();
+		for (Move move : board.getAvailableMoves()) {
+			var single = (SingleMove) move;
+			rootMoves.add(new int[]{detectives.indexOf(single.commencedBy()),
+					Arrays.asList(DETECTIVE_TICKETS).indexOf(single.ticket), single.destination,
+					rootMoves.size()});
+		}
+		// closest to where MrX could be first, the deepest iteration's best moves to the front
+		rootMoves.sort(Comparator.comparingInt(m -> closest(m[2], beliefs[0])));
+		this.best = rootMoves.get(0)[3];
+	}
+
+	/**
+	 * Deepens until the deadline, the soft deadline once one iteration completed, the stop flag,
+	 * cancellation or a forced result.
+	 *
+	 * @param offset how many plies deeper than the first iteration to start, helper threads use
+	 * different offsets so they are not all searching the same depth
+	 * @return the index into the board's available moves of the deepest completed iteration's
+	 * best move, or the most promising looking move if not even one ply completed
+	 */
+	int run(int offset) {
+		for (int d = 1 + offset; d < MAX_PLY; d++) {
+			if (depth > 0 && System.nanoTime() > budget.softDeadline()) break;
+			try {
+				int alpha = d == 1 ? -INFINITY : score - ASPIRATION;
+				int beta = d == 1 ? INFINITY : score + ASPIRATION;
+				int result;
+				while (true) {
+					result = root(d, alpha, beta);
+					if (result <= alpha) alpha = -INFINITY;
+					else if (result >= beta) beta = INFINITY;
+					else break;
+				}
+				score = result;
+				depth = d;
+				best = rootMoves.get(rootBest)[3];
+				depthTimes.compareAndSet(d, 0, System.nanoTime());
+				rootMoves.add(0, rootMoves.remove(rootBest));
+				if (Math.abs(score) >= WIN - MAX_PLY) break;
+			} catch (Timeout e) { break; }
+		}
+		return best;
+	}
+
+	/**
+	 * @return the deepest completed iteration's best move as in {@link #run(int)}
+	 */
+	int best() { return best; }
+
+	/**
+	 * @return the depth of the deepest completed iteration, 0 if none
+	 */
+	int depth() { return depth; }
+
+	/**
+	 * @return the score of the deepest completed iteration, from the detectives' point of view
+	 */
+	int score() { return score; }
+
+	/**
+	 * @return positions searched so far
+	 */
+	long nodes() { return nodes; }
+
+	private int root(int depth, int alpha, int beta) {
+		int best = -INFINITY;
+		for (int i = 0; i < rootMoves.size(); i++) {
+			int[] move = rootMoves.get(i);
+			int d = move[0];
+			schedule(d);
+			int from = location[d];
+			location[d] = move[2];
+			tickets[d][move[1]]--;
+			copyWithout(0, move[2]);
+			int value;
+			try {
+				value = search(1, depth - 1, alpha, beta);
+			} finally {
+				location[d] = from;
+				tickets[d][move[1]]++;
+			}
+			if (value > best) {
+				best = value;
+				rootBest = i;
+			}
+			alpha = Math.max(alpha, best);
+			if (alpha >= beta) break;
+		}
+		return best;
+	}
+
+	/**
+	 * Lays out who moves at every ply after the given detective moves at the root
+	 */
+	private void schedule(int first) {
+		int ply = 1;
+		for (int d : remaining) if (d != first) schedule[ply++] = d;
+		while (ply <= MAX_PLY) {
+			schedule[ply++] = MRX;
+			for (int d = 0; d < location.length && ply <= MAX_PLY; d++) schedule[ply++] = d;
+		}
+	}
+
+	private int search(int ply, int depth, int alpha, int beta) {
+		if ((++nodes & 1023) == 0 && (stop.get() || budget.cancelled()
+				|| System.nanoTime() > deadline)) throw TIMEOUT;
+		long[] belief = beliefs[ply];
+		if (isEmpty(belief)) return WIN - ply;
+		int mover = schedule[ply];
+		if (mover == MRX && mrXRound >= rounds) return -WIN + ply;
+		if (depth == 0 || ply == MAX_PLY) return evaluate(belief);
+
+		long key = hash(ply);
+		long entry = table.probe(key);
+		int hashMove = -1;
+		if (entry != 0) {
+			hashMove = TranspositionTable.move(entry);
+			if (TranspositionTable.depth(entry) >= depth) {
+				int stored = fromTable(TranspositionTable.score(entry), ply);
+				int bound = TranspositionTable.bound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| bound == TranspositionTable.LOWER && stored >= beta
+						|| bound == TranspositionTable.UPPER && stored <= alpha) return stored;
+			}
+		}
+		bestAt[ply] = -1;
+		int value = mover == MRX
+				? mrX(ply, depth, alpha, beta, hashMove)
+				: detective(mover, ply, depth, alpha, beta, hashMove);
+		int bound = value <= alpha ? TranspositionTable.UPPER
+				: value >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+		table.store(key, toTable(value, ply), depth, bound, bestAt[ply]);
+		return value;
+	}
+
+	private int detective(int d, int ply, int depth, int alpha, int beta, int hashMove) {
+		int count = 0;
+		int from = location[d];
+		int[] to = moveTo[ply];
+		int[] ticket = moveTicket[ply];
+		for (int t = 0; t < DETECTIVE_TICKETS.length; t++) {
+			if (tickets[d][t] == 0) continue;
+			long[] rows = adjacency.rows(MASKS[t]);
+			int base = from * words;
+			for (int w = 0; w < words; w++) {
+				long bits = rows[base + w];
+				while (bits != 0 && count < MAX_MOVES) {
+					int station = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					if (occupiedByOther(station, d)) continue;
+					to[count] = station;
+					ticket[count++] = t;
+				}
+			}
+		}
+		if (count == 0) {
+			// a detective without moves sits the round out
+			copyWithout(ply, -1);
+			return search(ply + 1, depth - 1, alpha, beta);
+		}
+		if (hashMove >= count) hashMove = -1;
+		int best = -INFINITY;
+		for (int i = -1; i < count; i++) {
+			// the table's move first, then the rest in generation order
+			int m = i < 0 ? hashMove : i;
+			if (m < 0 || i >= 0 && m == hashMove) continue;
+			int t = ticket[m];
+			location[d] = to[m];
+			tickets[d][t]--;
+			copyWithout(ply, to[m]);
+			int value;
+			try {
+				value = search(ply + 1, depth - 1, alpha, beta);
+			} finally {
+				location[d] = from;
+				tickets[d][t]++;
+			}
+			if (value > best) {
+				best = value;
+				bestAt[ply] = m;
+			}
+			alpha = Math.max(alpha, best);
+			if (alpha >= beta) break;
+		}
+		return best;
+	}
+
+	private int mrX(int ply, int depth, int alpha, int beta, int hashMove) {
+		int best = INFINITY;
+		boolean moved = false;
+		long[] taken = occupied[ply];
+		Arrays.fill(taken, 0L);
+		for (int at : location) taken[at >>> 6] |= 1L << at;
+		for (int i = -1; i < MRX_TICKETS.length; i++) {
+			int t = i < 0 ? hashMove : i;
+			if (t < 0 || t >= MRX_TICKETS.length || i >= 0 && t == hashMove) continue;
+			if (mrXTickets[t] == 0) continue;
+			kernel.expandBatch(beliefs[ply], beliefs[ply + 1], 1, MASKS[t], taken);
+			if (isEmpty(beliefs[ply + 1])) continue;
+			moved = true;
+			mrXTickets[t]--;
+			mrXRound++;
+			int value;
+			try {
+				value = search(ply + 1, depth - 1, alpha, beta);
+			} finally {
+				mrXTickets[t]++;
+				mrXRound--;
+			}
+			if (value < best) {
+				best = value;
+				bestAt[ply] = t;
+			}
+			beta = Math.min(beta, best);
+			if (alpha >= beta) break;
+		}
+		return moved ? best : WIN - ply;
+	}
+
+	/**
+	 * Hashes everything the value of the position at the given ply depends on
+	 */
+	private long hash(int ply) {
+		long h = mix(mrXRound + 1);
+		for (int d = 0; d < location.length; d++) {
+			h ^= mix((long) (d + 1) << 32 | location[d]);
+			for (int t = 0; t < DETECTIVE_TICKETS.length; t++)
+				h ^= mix((long) (d + 1) << 40 | (long) t << 32 | tickets[d][t]);
+		}
+		for (int t = 0; t < MRX_TICKETS.length; t++)
+			h ^= mix(1L << 48 | (long) t << 32 | mrXTickets[t]);
+		// who is still to move this round
+		int toMove = schedule[ply] == MRX ? 1 << 30 : 0;
+		for (int p = ply; p <= MAX_PLY && schedule[p] != MRX; p++) toMove |= 1 << schedule[p];
+		h ^= mix(2L << 48 | toMove);
+		long[] belief = beliefs[ply];
+		for (int w = 0; w < words; w++) h = h * 0x9E3779B97F4A7C15L + mix(belief[w] ^ w);
+		return h;
+	}
+
+	/**
+	 * SplitMix64's finaliser
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// wins are stored as plies from the stored position rather than from the root
+	private static int toTable(int score, int ply) {
+		if (score >= WIN - MAX_PLY) return score + ply;
+		if (score <= -WIN + MAX_PLY) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score >= WIN - MAX_PLY) return score - ply;
+		if (score <= -WIN + MAX_PLY) return score + ply;
+		return score;
+	}
+
+	/**
+	 * Fewer places for MrX to be, detectives close to all of them and less of the map MrX gets to
+	 * before the detectives are better
+	 */
+	private int evaluate(long[] belief) {
+		int count = 0;
+		int total = 0;
+		for (int w = 0; w < words; w++) {
+			long bits = belief[w];
+			while (bits != 0) {
+				int at = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				int closest = Byte.MAX_VALUE;
+				for (int from : location) {
+					int distance = distances[from][at];
+					if (distance >= 0) closest = Math.min(closest, distance);
+				}
+				count++;
+				total += Math.min(closest, 10);
+			}
+		}
+		int mrXMask = 0;
+		for (int t = 0; t < MRX_TICKETS.length; t++) if (mrXTickets[t] > 0) mrXMask |= MASKS[t];
+		for (int d = 0; d < location.length; d++) {
+			masks[d] = 0;
+			for (int t = 0; t < DETECTIVE_TICKETS.length; t++)
+				if (tickets[d][t] > 0) masks[d] |= MASKS[t];
+		}
+		territory.compute(belief, mrXMask, location, masks);
+		return -4 * count - 16 * total / Math.max(1, count) - TERRITORY * territory.mrXSize();
+	}
+
+	private int closest(int from, long[] belief) {
+		int closest = Byte.MAX_VALUE;
+		for (int w = 0; w < words; w++) {
+			long bits = belief[w];
+			while (bits != 0) {
+				int distance = distances[from][(w << 6) + Long.numberOfTrailingZeros(bits)];
+				bits &= bits - 1;
+				if (distance >= 0) closest = Math.min(closest, distance);
+			}
+		}
+		return closest;
+	}
+
+	private boolean occupiedByOther(int station, int d) {
+		for (int other = 0; other < location.length; other++)
+			if (other != d && location[other] == station) return true;
+		return false;
+	}
+
+	private void copyWithout(int ply, int station) {
+		long[] next = beliefs[ply + 1];
+		System.arraycopy(beliefs[ply], 0, next, 0, words);
+		if (station >= 0) next[station >>> 6] &= ~(1L << station);
+	}
+
+	private static boolean isEmpty(long[] bits) {
+		for (long word : bits) if (word != 0) return false;
+		return true;
+	}
+}
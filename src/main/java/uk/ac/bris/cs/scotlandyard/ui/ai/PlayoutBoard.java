@@ -0,0 +1,501 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A mutable board the bundled Monte Carlo AIs play on without allocating: every piece's station
+ * and tickets and whose turn it is, in arrays over {@link RolloutTables}.
+ * <br>
+ * Moves are ints, listed by {@link #generate()} and read back with {@link #move(int)}; the
+ * winner is decided as {@code MyGameState} decides it. {@link #rollout(int)} plays the
+ * {@link Rollouts} policy from the current position. A board serves a single thread, and
+ * {@link #copy(PlayoutBoard)} resets it to another board of the same game in place.
+ */
+final class PlayoutBoard {
+
+	/**
+	 * No winner yet
+	 */
+	static final int NONE = 0;
+
+	/**
+	 * MrX has won
+	 */
+	static final int MRX_WINS = 1;
+
+	/**
+	 * The detectives have won
+	 */
+	static final int DETECTIVES_WIN = 2;
+
+	// in the order of the transports they pay for, then secret
+	private static final Ticket[] TICKETS =
+			{Ticket.TAXI, Ticket.BUS, Ticket.UNDERGROUND, Ticket.SECRET};
+	private static final int TRANSPORT_TICKETS = 3;
+	private static final int SECRET = 3;
+	private static final int NO_STATION = -1;
+
+	// move layout: first station, first ticket, second station, second ticket, detective
+	private static final int STATION = 0x3ff;
+	private static final int TICKET_SHIFT = 10;
+	private static final int SECOND_SHIFT = 12;
+	private static final int DETECTIVE_SHIFT = 24;
+	private static final int DOUBLE = 1 << 28;
+	private static final int BY_DETECTIVE = 1 << 29;
+
+	private final RolloutTables tables;
+	private final byte[][] distances;
+	private final SplittableRandom random;
+	private final boolean[] reveal;
+	private final int[] pieces;
+	private final int[] location;
+	private final int[][] tickets;
+	private final int[] mrXTickets = new int[TICKETS.length];
+	private final boolean[] pending;
+	private int mrXDoubles;
+	private int round;
+	private int mrX;
+	private boolean mrXToMove;
+	private int[] moves = new int[64];
+	private int size;
+
+	/**
+	 * @param board the board to copy
+	 * @param mrXLocation where MrX is on the board
+	 * @param tables the tables of the board's graph
+	 * @param random the source of rollout moves
+	 */
+	PlayoutBoard(@Nonnull Board board, int mrXLocation, @Nonnull RolloutTables tables,
+	             @Nonnull SplittableRandom random) {
+		this.tables = tables;
+		this.distances = tables.distances();
+		this.random = random;
+		var rounds = board.getSetup().moves;
+		this.reveal = new boolean[rounds.size()];
+		for (int r = 0; r < reveal.length; r++) reveal[r] = rounds.get(r);
+		var detectives = board.getPlayers().stream()
+				.filter(Piece::isDetective).toArray(Piece[]::new);
+		this.pieces = new int[detectives.length];
+		this.location = new int[detectives.length];
+		this.tickets = new int[detectives.length][TRANSPORT_TICKETS];
+		this.pending = new boolean[detectives.length];
+		for (int d = 0; d < detectives.length; d++) {
+			pieces[d] = ((Detective) detectives[d]).ordinal();
+			location[d] = board.getDetectiveLocation((Detective) detectives[d]).orElseThrow();
+			var held = board.getPlayerTickets(detectives[d]).orElseThrow();
+			for (int t = 0; t < TRANSPORT_TICKETS; t++) tickets[d][t] = held.getCount(TICKETS[t]);
+		}
+		var held = board.getPlayerTickets(Piece.MrX.MRX).orElseThrow();
+		for (int t = 0; t < TICKETS.length; t++) mrXTickets[t] = held.getCount(TICKETS[t]);
+		this.mrXDoubles = held.getCount(Ticket.DOUBLE);
+		this.round = board.getMrXTravelLog().size();
+		this.mrX = mrXLocation;
+		for (Move move : board.getAvailableMoves()) {
+			Piece piece = move.commencedBy();
+			if (piece.isMrX()) mrXToMove = true;
+			else for (int d = 0; d < detectives.length; d++)
+				if (detectives[d] == piece) pending[d] = true;
+		}
+	}
+
+	/**
+	 * @param that the board to start as a copy of, sharing its tables and random source
+	 */
+	PlayoutBoard(@Nonnull PlayoutBoard that) {
+		this.tables = that.tables;
+		this.distances = that.distances;
+		this.random = that.random;
+		this.reveal = that.reveal;
+		this.pieces = that.pieces;
+		this.location = new int[that.location.length];
+		this.tickets = new int[that.tickets.length][TRANSPORT_TICKETS];
+		this.pending = new boolean[that.pending.length];
+		copy(that);
+	}
+
+	/**
+	 * Resets this board to the position of another board of the same game.
+	 *
+	 * @param that the board
+	 */
+	void copy(@Nonnull PlayoutBoard that) {
+		System.arraycopy(that.location, 0, location, 0, location.length);
+		for (int d = 0; d < tickets.length; d++)
+			System.arraycopy(that.tickets[d], 0, tickets[d], 0, TRANSPORT_TICKETS);
+		System.arraycopy(that.mrXTickets, 0, mrXTickets, 0, mrXTickets.length);
+		System.arraycopy(that.pending, 0, pending, 0, pending.length);
+		mrXDoubles = that.mrXDoubles;
+		round = that.round;
+		mrX = that.mrX;
+		mrXToMove = that.mrXToMove;
+	}
+
+	/**
+	 * @param station where MrX is to be
+	 */
+	void placeMrX(int station) { mrX = station; }
+
+	/**
+	 * @return {@link #NONE}, {@link #MRX_WINS} or {@link #DETECTIVES_WIN}
+	 */
+	int winner() {
+		if (mrXToMove && round >= reveal.length) return MRX_WINS;
+		int neighbours = tables.end(mrX) - tables.first(mrX);
+		if (neighbours == location.length) {
+			boolean surrounded = true;
+			for (int i = tables.first(mrX); i < tables.end(mrX) && surrounded; i++)
+				surrounded = occupied(tables.neighbour(i));
+			if (surrounded) return DETECTIVES_WIN;
+		}
+		boolean anyCanMove = false;
+		for (int d = 0; d < location.length && !anyCanMove; d++) anyCanMove = canMove(d);
+		if (!anyCanMove) return occupied(mrX) ? DETECTIVES_WIN : MRX_WINS;
+		if (occupied(mrX)) return DETECTIVES_WIN;
+		// the game lets MrX win when he cannot move on his turn
+		if (mrXToMove && !mrXCanMove()) return MRX_WINS;
+		return NONE;
+	}
+
+	/**
+	 * Lists the moves of whoever is to move, handing the turn to MrX when none of the detectives
+	 * still to move can.
+	 *
+	 * @return the number of moves, read with {@link #move(int)}
+	 */
+	int generate() {
+		size = 0;
+		if (!mrXToMove) {
+			for (int d = 0; d < location.length; d++) if (pending[d]) detectiveMoves(d);
+			if (size > 0) return size;
+			mrXToMove = true;
+		}
+		mrXMoves();
+		return size;
+	}
+
+	/**
+	 * @param index the index of a move from the last {@link #generate()}
+	 * @return the move
+	 */
+	int move(int index) { return moves[index]; }
+
+	/**
+	 * @return whether MrX is to move
+	 */
+	boolean mrXToMove() { return mrXToMove; }
+
+	/**
+	 * @param move a move
+	 * @return whether it is MrX's
+	 */
+	static boolean byMrX(int move) { return (move & BY_DETECTIVE) == 0; }
+
+	/**
+	 * Keys a move by what the detectives see of it: the whole move for detectives, the tickets and
+	 * revealed stations for MrX.
+	 *
+	 * @param move a move of the current position
+	 * @return the key
+	 */
+	long key(int move) {
+		int to1 = move & STATION;
+		Ticket ticket1 = TICKETS[(move >>> TICKET_SHIFT) & 3];
+		if (!byMrX(move))
+			return detectiveKey(pieces[(move >>> DETECTIVE_SHIFT) & 7], ticket1, to1);
+		if ((move & DOUBLE) == 0)
+			return 1L << 48 | (long) ticket1.ordinal() << 40 | revealed(round, to1);
+		int to2 = (move >>> SECOND_SHIFT) & STATION;
+		Ticket ticket2 = TICKETS[(move >>> (SECOND_SHIFT + TICKET_SHIFT)) & 3];
+		return 2L << 48 | (long) ticket1.ordinal() << 44 | (long) ticket2.ordinal() << 40
+				| (long) revealed(round, to1) << 20 | revealed(round + 1, to2);
+	}
+
+	/**
+	 * @param move a move of the current position
+	 * @return the move as {@link #generate()} lists it
+	 */
+	int encode(@Nonnull Move move) {
+		return move.accept(new Move.Visitor<Integer>() {
+			@Override public Integer visit(Move.SingleMove single) {
+				int encoded = index(single.ticket) << TICKET_SHIFT | single.destination;
+				if (single.commencedBy().isMrX()) return encoded;
+				int ordinal = ((Detective) single.commencedBy()).ordinal();
+				int d = 0;
+				while (pieces[d] != ordinal) d++;
+				return BY_DETECTIVE | d << DETECTIVE_SHIFT | encoded;
+			}
+
+			@Override public Integer visit(Move.DoubleMove twice) {
+				return DOUBLE | (index(twice.ticket2) << TICKET_SHIFT | twice.destination2)
+						<< SECOND_SHIFT | index(twice.ticket1) << TICKET_SHIFT | twice.destination1;
+			}
+		});
+	}
+
+	private static int index(Ticket ticket) {
+		for (int t = 0; t < TICKETS.length; t++) if (TICKETS[t] == ticket) return t;
+		throw new IllegalArgumentException("No move pays with " + ticket);
+	}
+
+	private static long detectiveKey(int detective, Ticket ticket, int destination) {
+		return (long) (detective + 1) << 40 | (long) ticket.ordinal() << 32 | destination;
+	}
+
+	private int revealed(int at, int station) {
+		return at < reveal.length && reveal[at] ? station + 1 : 0;
+	}
+
+	/**
+	 * Makes a move, giving tickets the detectives pay to MrX.
+	 *
+	 * @param move a move of the current position
+	 */
+	void apply(int move) {
+		int to1 = move & STATION;
+		int ticket1 = (move >>> TICKET_SHIFT) & 3;
+		if (!byMrX(move)) {
+			int d = (move >>> DETECTIVE_SHIFT) & 7;
+			tickets[d][ticket1]--;
+			mrXTickets[ticket1]++;
+			location[d] = to1;
+			pending[d] = false;
+			boolean any = false;
+			for (boolean waiting : pending) any |= waiting;
+			mrXToMove = !any;
+			return;
+		}
+		mrXTickets[ticket1]--;
+		mrX = to1;
+		round++;
+		if ((move & DOUBLE) != 0) {
+			mrXTickets[(move >>> (SECOND_SHIFT + TICKET_SHIFT)) & 3]--;
+			mrX = (move >>> SECOND_SHIFT) & STATION;
+			mrXDoubles--;
+			round++;
+		}
+		// as in the game, only the detectives who can move when MrX has moved are waited for
+		boolean any = false;
+		for (int d = 0; d < pending.length; d++) any |= pending[d] = canMove(d);
+		mrXToMove = !any;
+	}
+
+	private void add(int move) {
+		if (size == moves.length) moves = Arrays.copyOf(moves, size * 2);
+		moves[size++] = move;
+	}
+
+	private void detectiveMoves(int d) {
+		int from = location[d];
+		for (int i = tables.first(from); i < tables.end(from); i++) {
+			int to = tables.neighbour(i);
+			if (occupied(to)) continue;
+			int transports = tables.transports(i);
+			for (int t = 0; t < TRANSPORT_TICKETS; t++)
+				if ((transports & (1 << t)) != 0 && tickets[d][t] > 0)
+					add(BY_DETECTIVE | d << DETECTIVE_SHIFT | t << TICKET_SHIFT | to);
+		}
+	}
+
+	private void mrXMoves() {
+		boolean doubles = mrXDoubles > 0 && reveal.length - round >= 2;
+		for (int i = tables.first(mrX); i < tables.end(mrX); i++) {
+			int to = tables.neighbour(i);
+			if (occupied(to)) continue;
+			int transports = tables.transports(i);
+			for (int t = 0; t < TICKETS.length; t++) {
+				if (!pays(transports, t)) continue;
+				int first = t << TICKET_SHIFT | to;
+				add(first);
+				if (!doubles) continue;
+				// the second move may not use the ticket the first one spent
+				mrXTickets[t]--;
+				for (int j = tables.first(to); j < tables.end(to); j++) {
+					int next = tables.neighbour(j);
+					if (occupied(next)) continue;
+					int nextTransports = tables.transports(j);
+					for (int u = 0; u < TICKETS.length; u++)
+						if (pays(nextTransports, u))
+							add(DOUBLE | (u << TICKET_SHIFT | next) << SECOND_SHIFT | first);
+				}
+				mrXTickets[t]++;
+			}
+		}
+	}
+
+	/**
+	 * @return whether MrX holds the ticket and it pays for an edge with the given transports
+	 */
+	private boolean pays(int transports, int ticket) {
+		if (mrXTickets[ticket] <= 0) return false;
+		return ticket == SECRET || (transports & (1 << ticket)) != 0;
+	}
+
+	private boolean mrXCanMove() {
+		for (int i = tables.first(mrX); i < tables.end(mrX); i++) {
+			if (occupied(tables.neighbour(i))) continue;
+			for (int t = 0; t < TICKETS.length; t++) if (pays(tables.transports(i), t)) return true;
+		}
+		return false;
+	}
+
+	private boolean canMove(int d) {
+		for (int i = tables.first(location[d]); i < tables.end(location[d]); i++)
+			if (usable(d, i)) return true;
+		return false;
+	}
+
+	/**
+	 * Plays the {@link Rollouts} policy for at most the given number of plies.
+	 *
+	 * @param plies how many plies to play at most
+	 * @return MrX's reward in [0, 1]
+	 */
+	double rollout(int plies) {
+		int ply = 0;
+		while (true) {
+			if (mrXToMove) {
+				if (round >= reveal.length) return 1;
+				int nearest = nearest(mrX);
+				if (nearest >= Rollouts.SAFE_DISTANCE) return 1;
+				if (ply >= plies) return (double) nearest / Rollouts.SAFE_DISTANCE;
+				int to = rolloutMrX();
+				if (to == NO_STATION) return 0;
+				mrX = to;
+				round++;
+				ply++;
+				mrXToMove = false;
+				Arrays.fill(pending, true);
+			} else {
+				boolean moved = false;
+				for (int d = 0; d < location.length; d++) {
+					if (!pending[d]) continue;
+					pending[d] = false;
+					if (!rolloutDetective(d)) continue;
+					moved = true;
+					ply++;
+					if (location[d] == mrX) return 0;
+				}
+				if (!moved && allStuck()) return 1;
+				mrXToMove = true;
+			}
+		}
+	}
+
+	/**
+	 * @return MrX's new station, or {@link #NO_STATION} if he cannot move or every way out is
+	 * next to a detective
+	 */
+	private int rolloutMrX() {
+		int best = NO_STATION;
+		int bestScore = -1;
+		int ties = 0;
+		int count = 0;
+		int picked = NO_STATION;
+		int pickedTicket = -1;
+		int bestTicket = -1;
+		for (int i = tables.first(mrX); i < tables.end(mrX); i++) {
+			int to = tables.neighbour(i);
+			if (occupied(to)) continue;
+			int ticket = mrXTicket(tables.transports(i));
+			if (ticket < 0) continue;
+			if (random.nextInt(++count) == 0) {
+				picked = to;
+				pickedTicket = ticket;
+			}
+			int score = nearest(to);
+			if (score > bestScore) {
+				bestScore = score;
+				best = to;
+				bestTicket = ticket;
+				ties = 1;
+			} else if (score == bestScore && random.nextInt(++ties) == 0) {
+				best = to;
+				bestTicket = ticket;
+			}
+		}
+		if (count == 0 || bestScore <= 1) return NO_STATION;
+		if (random.nextDouble() < Rollouts.EPSILON) {
+			mrXTickets[pickedTicket]--;
+			return picked;
+		}
+		mrXTickets[bestTicket]--;
+		return best;
+	}
+
+	/**
+	 * @return the ticket MrX pays for an edge, his transport tickets before secret ones, or
+	 * -1 if he has none that fits
+	 */
+	private int mrXTicket(int transports) {
+		for (int t = 0; t < TRANSPORT_TICKETS; t++)
+			if ((transports & (1 << t)) != 0 && mrXTickets[t] > 0) return t;
+		return mrXTickets[SECRET] > 0 ? SECRET : -1;
+	}
+
+	/**
+	 * @return whether the detective moved
+	 */
+	private boolean rolloutDetective(int d) {
+		int from = location[d];
+		int chosen = -1;
+		if (random.nextDouble() >= Rollouts.EPSILON) {
+			int chase = tables.chase(from, mrX);
+			if (chase >= 0 && usable(d, chase)) chosen = chase;
+		}
+		if (chosen < 0) {
+			int count = 0;
+			for (int i = tables.first(from); i < tables.end(from); i++)
+				if (usable(d, i) && random.nextInt(++count) == 0) chosen = i;
+		}
+		if (chosen < 0) return false;
+		int transports = tables.transports(chosen);
+		for (int t = 0; t < TRANSPORT_TICKETS; t++) {
+			if ((transports & (1 << t)) == 0 || tickets[d][t] == 0) continue;
+			tickets[d][t]--;
+			mrXTickets[t]++;
+			break;
+		}
+		location[d] = tables.neighbour(chosen);
+		return true;
+	}
+
+	private boolean usable(int d, int index) {
+		int transports = tables.transports(index);
+		boolean paid = false;
+		for (int t = 0; t < TRANSPORT_TICKETS && !paid; t++)
+			paid = (transports & (1 << t)) != 0 && tickets[d][t] > 0;
+		if (!paid) return false;
+		int to = tables.neighbour(index);
+		for (int other = 0; other < location.length; other++)
+			if (other != d && location[other] == to) return false;
+		return true;
+	}
+
+	private boolean allStuck() {
+		for (int d = 0; d < location.length; d++) if (canMove(d)) return false;
+		return true;
+	}
+
+	private boolean occupied(int station) {
+		for (int at : location) if (at == station) return true;
+		return false;
+	}
+
+	private int nearest(int station) {
+		int nearest = Rollouts.SAFE_DISTANCE;
+		for (int at : location) {
+			int distance = distances[at][station];
+			if (distance >= 0) nearest = Math.min(nearest, distance);
+		}
+		return nearest;
+	}
+}
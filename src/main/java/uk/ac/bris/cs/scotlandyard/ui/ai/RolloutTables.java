@@ -0,0 +1,116 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.AnalysisRegistry;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Per-station lookup tables the {@link Rollouts} policy plays from, so a rollout never asks the
+ * graph or a game state for moves.
+ * <br>
+ * Neighbours are flat arrays indexed through {@link #first(int)}, each with the mask of
+ * transports its edge allows. The chase table holds, for every station and target, which of the
+ * station's neighbours a detective steps to to get closest to the target. Like {@link Distances}
+ * the tables are shared through the {@link AnalysisRegistry}.
+ */
+final class RolloutTables {
+
+	private static final int DETECTIVE_TRANSPORTS = (1 << Transport.TAXI.ordinal())
+			| (1 << Transport.BUS.ordinal()) | (1 << Transport.UNDERGROUND.ordinal());
+
+	private static final AnalysisRegistry.Key<RolloutTables> KEY =
+			new AnalysisRegistry.Key<>("rollout-tables", RolloutTables::new);
+
+	private final byte[][] distances;
+	private final int nodes;
+	private final int[] offsets;
+	private final int[] neighbours;
+	private final byte[] transports;
+	private final short[] chase;
+
+	private RolloutTables(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		this.distances = Distances.of(graph).table();
+		this.nodes = distances.length;
+		this.offsets = new int[nodes + 1];
+		for (int station : graph.nodes()) offsets[station + 1] = graph.adjacentNodes(station).size();
+		for (int i = 0; i < nodes; i++) offsets[i + 1] += offsets[i];
+		this.neighbours = new int[offsets[nodes]];
+		this.transports = new byte[offsets[nodes]];
+		for (int station : graph.nodes()) {
+			int at = offsets[station];
+			for (int to : graph.adjacentNodes(station)) {
+				int mask = 0;
+				for (Transport t : Objects.requireNonNull(
+						graph.edgeValueOrDefault(station, to, ImmutableSet.of())))
+					mask |= 1 << t.ordinal();
+				neighbours[at] = to;
+				transports[at++] = (byte) mask;
+			}
+		}
+		this.chase = new short[nodes * nodes];
+		for (int from = 0; from < nodes; from++) {
+			for (int target = 0; target < nodes; target++) {
+				int best = -1;
+				int closest = Integer.MAX_VALUE;
+				for (int i = offsets[from]; i < offsets[from + 1]; i++) {
+					if ((transports[i] & DETECTIVE_TRANSPORTS) == 0) continue;
+					int distance = distances[neighbours[i]][target];
+					if (distance >= 0 && distance < closest) {
+						closest = distance;
+						best = i;
+					}
+				}
+				chase[from * nodes + target] = (short) (best < 0 ? -1 : best - offsets[from]);
+			}
+		}
+	}
+
+	/**
+	 * @param graph the graph
+	 * @return the tables of the graph
+	 */
+	@Nonnull static RolloutTables of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return AnalysisRegistry.get(graph, KEY);
+	}
+
+	/**
+	 * @return the distances the tables were built from; must not be modified
+	 */
+	@Nonnull byte[][] distances() { return distances; }
+
+	/**
+	 * @return the index of the first neighbour of the station
+	 */
+	int first(int station) { return offsets[station]; }
+
+	/**
+	 * @return one past the index of the last neighbour of the station
+	 */
+	int end(int station) { return offsets[station + 1]; }
+
+	/**
+	 * @return the station of the neighbour at the index
+	 */
+	int neighbour(int index) { return neighbours[index]; }
+
+	/**
+	 * @return the transports of the edge to the neighbour at the index, as a mask of ordinals
+	 */
+	int transports(int index) { return transports[index]; }
+
+	/**
+	 * @return the index of the neighbour a detective at the station closes in on the target
+	 * through, -1 if the target cannot be reached
+	 */
+	int chase(int station, int target) {
+		int nth = chase[station * nodes + target];
+		return nth < 0 ? -1 : offsets[station] + nth;
+	}
+}
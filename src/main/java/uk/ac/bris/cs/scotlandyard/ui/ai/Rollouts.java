@@ -0,0 +1,68 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.SplittableRandom;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+
+/**
+ * The playout policy shared by the bundled Monte Carlo AIs: a few plies played from
+ * {@link RolloutTables} on plain arrays, then an estimate from how close the nearest detective is
+ * to MrX.
+ * <br>
+ * Mostly MrX steps to the neighbour furthest from the detectives and every detective to the
+ * neighbour the chase table gives for MrX's station; with probability {@value #EPSILON} either
+ * moves at random instead. Tickets are counted and handed over as in the game, but MrX makes no
+ * double moves. The rollout stops early once the outcome looks clear: MrX at least
+ * {@value #SAFE_DISTANCE} moves from every detective counts as safe, and MrX with every way out
+ * next to a detective as caught. Rollouts are played on a {@link PlayoutBoard}.
+ */
+final class Rollouts {
+
+	/**
+	 * Plies played before the position is estimated by default
+	 */
+	static final int PLIES = 10;
+
+	/**
+	 * Chance of a random move instead of the table's
+	 */
+	static final double EPSILON = 0.2;
+
+	/**
+	 * Distance at which MrX is considered safe
+	 */
+	static final int SAFE_DISTANCE = 5;
+
+	private Rollouts() {}
+
+	/**
+	 * @param state the state to play out from
+	 * @param mrXLocation where MrX is in the state
+	 * @param tables the tables of the state's graph
+	 * @param random the source of moves
+	 * @return MrX's reward in [0, 1], 1 for a won game
+	 */
+	static double mrXReward(@Nonnull GameState state, int mrXLocation,
+	                        @Nonnull RolloutTables tables, @Nonnull SplittableRandom random) {
+		return mrXReward(state, mrXLocation, tables, random, PLIES);
+	}
+
+	/**
+	 * @param state the state to play out from
+	 * @param mrXLocation where MrX is in the state
+	 * @param tables the tables of the state's graph
+	 * @param random the source of moves
+	 * @param plies how many plies to play at most
+	 * @return MrX's reward in [0, 1], 1 for a won game
+	 */
+	static double mrXReward(@Nonnull GameState state, int mrXLocation,
+	                        @Nonnull RolloutTables tables, @Nonnull SplittableRandom random,
+	                        int plies) {
+		var winner = state.getWinner();
+		if (!winner.isEmpty()) return winner.contains(Piece.MrX.MRX) ? 1 : 0;
+		return new PlayoutBoard(state, mrXLocation, tables, random).rollout(plies);
+	}
+}
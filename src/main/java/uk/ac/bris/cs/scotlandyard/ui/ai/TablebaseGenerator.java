@@ -0,0 +1,37 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.DistanceOracle;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.Tablebase;
+
+/**
+ * Solves the {@link Tablebase} of the standard map and writes it where {@link MctsMrXAi} looks
+ * for it, the cache directory unless another directory is given. Run with
+ * {@code mvn -Pbench test-compile exec:exec
+ * -Dbench.main=uk.ac.bris.cs.scotlandyard.ui.ai.TablebaseGenerator -Dbench.args="<directory>"}.
+ */
+public final class TablebaseGenerator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TablebaseGenerator.class);
+
+	private TablebaseGenerator() {}
+
+	public static void main(String[] args) throws IOException {
+		Path directory = args.length > 0 ? Paths.get(args[0]) : DistanceOracle.cacheDirectory();
+		long start = System.nanoTime();
+		var tablebase = Tablebase.build(ScotlandYard.standardGraph());
+		LOGGER.info("Solved in {} ms on {} processors",
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+				Runtime.getRuntime().availableProcessors());
+		tablebase.write(directory);
+		LOGGER.info("Wrote tablebase {} to {}", tablebase.fingerprint(), directory);
+	}
+}
@@ -0,0 +1,121 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+/**
+ * Fixed size transposition table shared by search threads without locks.
+ * <br>
+ * Entries are two longs, the key XORed with the data and the data itself. Threads read and write
+ * the halves with plain array accesses; an entry torn by a racing write no longer XORs back to
+ * its key and reads as a miss. Slots come in buckets of two: a position goes to the slot already
+ * holding it, otherwise to the slot searched least deep, preferring slots from earlier searches.
+ */
+final class TranspositionTable {
+
+	/**
+	 * The score is exact
+	 */
+	static final int EXACT = 0;
+	/**
+	 * The score is at least the stored value
+	 */
+	static final int LOWER = 1;
+	/**
+	 * The score is at most the stored value
+	 */
+	static final int UPPER = 2;
+
+	private static final int LONGS_PER_ENTRY = 2;
+	private static final int BYTES_PER_ENTRY = LONGS_PER_ENTRY * Long.BYTES;
+
+	private final long[] table;
+	private final int mask;
+	private int age;
+
+	/**
+	 * @param megabytes size of the table, rounded down to a power of two entries
+	 */
+	TranspositionTable(int megabytes) {
+		if (megabytes < 1) throw new IllegalArgumentException("Need at least 1 MB");
+		long entries = Long.highestOneBit((long) megabytes * (1 << 20) / BYTES_PER_ENTRY);
+		entries = Math.min(entries, Integer.highestOneBit(Integer.MAX_VALUE / LONGS_PER_ENTRY));
+		this.table = new long[(int) entries * LONGS_PER_ENTRY];
+		this.mask = (int) entries - 1;
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	int capacity() { return mask + 1; }
+
+	/**
+	 * Starts a new search, making entries of earlier ones the first to be replaced
+	 */
+	void nextSearch() { age = (age + 1) & 0xFF; }
+
+	/**
+	 * @param key the position's hash
+	 * @return the entry's data or 0 if the position is not stored
+	 */
+	long probe(long key) {
+		int bucket = (int) key & mask & ~1;
+		for (int slot = bucket; slot <= bucket + 1; slot++) {
+			int i = slot * LONGS_PER_ENTRY;
+			long data = table[i + 1];
+			if (data != 0 && (table[i] ^ data) == key) return data;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param key the position's hash
+	 * @param score the score, already adjusted to the position
+	 * @param depth the depth searched
+	 * @param bound one of {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+	 * @param move the best move's index in generation order, -1 if none
+	 */
+	void store(long key, int score, int depth, int bound, int move) {
+		long data = pack(score, depth, bound, move, age);
+		int bucket = (int) key & mask & ~1;
+		int victim = bucket;
+		int worst = Integer.MAX_VALUE;
+		for (int slot = bucket; slot <= bucket + 1; slot++) {
+			int i = slot * LONGS_PER_ENTRY;
+			long old = table[i + 1];
+			if (old == 0 || (table[i] ^ old) == key) {
+				// keep a deeper result of the same search for the same position
+				if (old != 0 && age(old) == age && depth(old) > depth) return;
+				victim = slot;
+				break;
+			}
+			int value = depth(old) + (age(old) == age ? 256 : 0);
+			if (value < worst) {
+				worst = value;
+				victim = slot;
+			}
+		}
+		int i = victim * LONGS_PER_ENTRY;
+		table[i] = key ^ data;
+		table[i + 1] = data;
+	}
+
+	static long pack(int score, int depth, int bound, int move, int age) {
+		// the low bit is always set so a stored entry is never 0
+		return (long) score << 32 | (long) (depth & 0xFF) << 24 | (long) (move & 0xFF) << 16
+				| (long) (age & 0xFF) << 8 | (bound & 0x3) << 1 | 1;
+	}
+
+	static int score(long data) { return (int) (data >> 32); }
+
+	static int depth(long data) { return (int) (data >>> 24) & 0xFF; }
+
+	/**
+	 * @return the stored move index, -1 if none
+	 */
+	static int move(long data) {
+		int move = (int) (data >>> 16) & 0xFF;
+		return move == 0xFF ? -1 : move;
+	}
+
+	static int bound(long data) { return (int) (data >>> 1) & 0x3; }
+
+	private static int age(long data) { return (int) (data >>> 8) & 0xFF; }
+}
@@ -175,6 +175,14 @@ public final class LocalGameController extends BaseGameController<MapController>
 							gameName, gameName, mkMoveLn(move)));
 					model.chooseMove(move);
 				}
+				@Override public int getPly() { return model.getPly(); }
+				@Override public int getLastPly() { return model.getLastPly(); }
+				@Override public void seek(int ply) {
+					lines.add(String.format("// seek to ply %d", ply));
+					model.seek(ply);
+				}
+				// forks are for what-if play and are not recorded
+				@Override @Nonnull public Model fork() { return model.fork(); }
 			};
 		}
 	}
@@ -5,6 +5,9 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import net.kurobako.gesturefx.GesturePane;
 import net.kurobako.gesturefx.GesturePane.FitMode;
 import net.kurobako.gesturefx.GesturePane.ScrollBarPolicy;
@@ -24,7 +27,6 @@ import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 
 import io.atlassian.fugue.Option;
-import io.atlassian.fugue.Pair;
 import io.atlassian.fugue.Unit;
 import javafx.animation.Interpolator;
 import javafx.application.Platform;
@@ -52,7 +54,10 @@ import uk.ac.bris.cs.scotlandyard.ResourceManager;
 import uk.ac.bris.cs.scotlandyard.ResourceManager.ImageResource;
 import uk.ac.bris.cs.scotlandyard.model.Ai;
 import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.LogEntry;
 import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.ModelDelta;
 import uk.ac.bris.cs.scotlandyard.model.Move;
 import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
 import uk.ac.bris.cs.scotlandyard.model.Move.FunctionalVisitor;
@@ -60,6 +65,7 @@ import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
 import uk.ac.bris.cs.scotlandyard.model.Move.Visitor;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.ui.AiSandbox;
 import uk.ac.bris.cs.scotlandyard.ui.GameControl;
 import uk.ac.bris.cs.scotlandyard.ui.Utils;
 import uk.ac.bris.cs.scotlandyard.ui.controller.NotificationController.NotificationBuilder;
@@ -77,6 +83,7 @@ import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
 @BindFXML("layout/Map.fxml")
 class MapController implements Controller, GameControl {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(MapController.class);
 	private static final Duration DURATION = Duration.millis(400);
 
 	@FXML private Pane root;
@@ -150,8 +157,9 @@ class MapController implements Controller, GameControl {
 	Consumer<ImmutableSet<Piece>> timeout;
 
 	Option<ExecutorService> aiExecutor = none();
-	Option<Ai> mrXAi = none();
-	Option<Ai> detectiveAi = none();
+	Option<AiSandbox> mrXAi = none();
+	Option<AiSandbox> detectiveAi = none();
+	Option<Budget> aiBudget = none();
 
 	@Override public void onGameAttach(
 			Model model, ModelProperty config, Consumer<ImmutableSet<Piece>> timeout) {
@@ -184,10 +192,10 @@ class MapController implements Controller, GameControl {
 		}
 
 		aiExecutor = some(runInContainment(() -> {
-			mrXAi = config.getMrXAi();
-			detectiveAi = config.getDetectivesAi();
-			mrXAi.forEach(Ai::onStart);
-			detectiveAi.forEach(Ai::onStart);
+			mrXAi = config.getMrXAi().map(AiSandbox::new);
+			detectiveAi = config.getDetectivesAi().map(AiSandbox::new);
+			mrXAi.forEach(AiSandbox::onStart);
+			detectiveAi.forEach(AiSandbox::onStart);
 			return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
 					.setNameFormat("ai-thread-%d")
 					.setUncaughtExceptionHandler((t, e) -> Utils.handleFatalException(new RuntimeException("An ai instance crashed on thread " + t.getName(), e)))
@@ -200,8 +208,11 @@ class MapController implements Controller, GameControl {
 		clearMoveHints();
 		lock();
 		runInContainment(() -> {
-			mrXAi.forEach(Ai::onTerminate);
-			detectiveAi.forEach(Ai::onTerminate);
+			aiBudget.forEach(Budget::cancel);
+			mrXAi.forEach(AiSandbox::onTerminate);
+			detectiveAi.forEach(AiSandbox::onTerminate);
+			mrXAi.forEach(ai -> LOGGER.info("{} used {}", ai.ai().name(), ai.usage()));
+			detectiveAi.forEach(ai -> LOGGER.info("{} used {}", ai.ai().name(), ai.usage()));
 			aiExecutor.forEach(x -> runInContainment(x::shutdownNow));
 			return Unit.VALUE;
 		});
@@ -218,13 +229,18 @@ class MapController implements Controller, GameControl {
 
 	double maxLength() { return Math.max(root.getWidth(), root.getHeight()); }
 
-	Runnable requestAi(Model board, Ai ai) {
-		//var terminate = new AtomicBoolean(false);
+	Runnable requestAi(Model board, AiSandbox sandbox) {
+		Ai ai = sandbox.ai();
 		var moves = board.getCurrentBoard().getAvailableMoves();
 		drawMoveHighlights(moves);
+		var budget = Budget.of(config.timeoutProperty().get().toNanos(), TimeUnit.NANOSECONDS);
+		aiBudget = some(budget);
 		aiExecutor.forEach(x -> x.submit(() -> {
 			try {
-				final var move = ai.pickMove(board.getCurrentBoard(), new Pair<>(config.timeoutProperty().get().getSeconds(), TimeUnit.SECONDS));
+				final var turn = sandbox.pickMove(board.getCurrentBoard(), budget);
+				final var move = turn.move();
+				// no move means it overran, the timeout has been handled already
+				if (move == null) return;
 				if (!moves.contains(move)) {
 					Utils.handleFatalException(
 							new Exception("Ai(" + ai.name() + ") selected an invalid move, got: " + move + ", was expecting one of " + moves));
@@ -236,17 +252,15 @@ class MapController implements Controller, GameControl {
 						"threw an exception while picking a move", e));
 			}
 		}, aiExecutor));
-		return () -> handleAITimeOut(ai);
+		return () -> handleAITimeOut(sandbox, budget);
 	}
 
-	private void handleAITimeOut(Ai ai) {
-		aiExecutor.forEach(x -> {
-			try {
-				x.awaitTermination(1l, TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				Utils.handleFatalException(
-						new Exception("Ai(" + ai.name() + ") was interrupted during the bail-out grace period.", e));
-			}
+	private void handleAITimeOut(AiSandbox sandbox, Budget budget) {
+		// the sandbox interrupts and, after its grace period, fences off the Ai if it carries on
+		budget.cancel();
+		runInContainment(() -> {
+			sandbox.stopPondering();
+			return Unit.VALUE;
 		});
 	}
 
@@ -350,9 +364,23 @@ class MapController implements Controller, GameControl {
 
 	}
 
+	// the map animates moves as they are made and takes no part in undo and redo, see GameControl
 	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event) {
-		if (event != Event.MOVE_MADE) return;
-		counters.get(MRX).animateVisibility(Iterables.getLast(board.getMrXTravelLog()).location().isPresent());
+		if (event == Event.MOVE_MADE) moveMade(board.getMrXTravelLog());
+	}
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+	                                     @Nonnull ModelDelta delta) {
+		if (event == Event.MOVE_MADE) moveMade(delta.appendedLog());
+	}
+
+	/**
+	 * @param log the travel log, or just the part of it the move appended
+	 */
+	private void moveMade(List<LogEntry> log) {
+		// MrX's visibility can only change when he appends to the travel log
+		if (!log.isEmpty())
+			counters.get(MRX).animateVisibility(Iterables.getLast(log).location().isPresent());
 		advanceModel(model);
 	}
 
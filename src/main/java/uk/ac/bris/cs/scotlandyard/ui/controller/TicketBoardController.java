@@ -25,6 +25,7 @@ import uk.ac.bris.cs.fxkit.Controller;
 import uk.ac.bris.cs.scotlandyard.ResourceManager;
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.ModelDelta;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
@@ -72,6 +73,14 @@ final class TicketBoardController implements Controller, GameControl {
 		controllers.values().forEach(c -> c.update(board));
 	}
 
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+	                                     @Nonnull ModelDelta delta) {
+		delta.ticketChanges().keySet().forEach(piece -> {
+			PlayerView view = controllers.get(piece);
+			if (view != null) view.update(board);
+		});
+	}
+
 	@Override public Parent root() { return root; }
 
 	@BindFXML("layout/Ticket.fxml") static class TicketView implements Controller {
@@ -29,6 +29,7 @@ import uk.ac.bris.cs.scotlandyard.ResourceManager;
 import uk.ac.bris.cs.scotlandyard.model.Board;
 import uk.ac.bris.cs.scotlandyard.model.LogEntry;
 import uk.ac.bris.cs.scotlandyard.model.Model;
+import uk.ac.bris.cs.scotlandyard.model.ModelDelta;
 import uk.ac.bris.cs.scotlandyard.model.Piece;
 import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 import uk.ac.bris.cs.scotlandyard.ui.GameControl;
@@ -95,6 +96,17 @@ public final class TravelLogController implements Controller, GameControl {
 
 	@Override
 	public void onModelChanged(@Nonnull Board board, @Nonnull Event event) { update(board); }
+
+	@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+	                                     @Nonnull ModelDelta delta) {
+		// only the appended rounds changed, the rest of the table stays as is
+		var log = board.getMrXTravelLog();
+		int first = log.size() - delta.appendedLog().size();
+		for (int i = first; i < log.size(); i++) {
+			var round = entries.get(i);
+			entries.set(i, new RoundEntry(round.round, round.reveal, Option.some(log.get(i))));
+		}
+	}
 	@Override public Parent root() { return root; }
 
 	private static class RoundEntry {
@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.BUS;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the dense move numbering of {@link ActionSpace}
+ */
+public class ActionSpaceTest {
+
+	private static GameSetup setup;
+	private static ActionSpace space;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		space = new ActionSpace(setup);
+	}
+
+	private static GameState newGame() {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 111),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+	}
+
+	@Test public void testEveryIndexRoundTrips() {
+		for (int i = 0; i < space.size(); i++)
+			assertThat(space.indexOf(space.moveAt(i))).isEqualTo(i);
+	}
+
+	@Test public void testPieceBlocksAreContiguous() {
+		int next = 0;
+		for (Piece piece : ScotlandYard.ALL_PIECES) {
+			assertThat(space.firstIndexOf(piece)).isEqualTo(next);
+			next += space.sizeOf(piece);
+		}
+		assertThat(next).isEqualTo(space.size());
+	}
+
+	@Test public void testAvailableMovesAreInSpace() {
+		GameState state = newGame();
+		for (Move move : state.getAvailableMoves())
+			assertThat(space.moveAt(space.indexOf(move))).isEqualTo(move);
+		state = state.advance(new Move.SingleMove(MRX, 45, TAXI, 46));
+		for (Move move : state.getAvailableMoves())
+			assertThat(space.moveAt(space.indexOf(move))).isEqualTo(move);
+	}
+
+	@Test public void testImpossibleMoveShouldThrow() {
+		assertThatThrownBy(() -> space.indexOf(new Move.SingleMove(RED, 45, BUS, 46)))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> space.indexOf(new Move.SingleMove(RED, 45,
+				ScotlandYard.Ticket.SECRET, 46)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testAvailableMovesHaveStableOrder() {
+		assertThat(ImmutableList.copyOf(newGame().getAvailableMoves()))
+				.containsExactlyElementsOf(ImmutableList.copyOf(newGame().getAvailableMoves()));
+	}
+
+	@Test public void testOrderedSortsById() {
+		var ordered = space.ordered(newGame().getAvailableMoves());
+		for (int i = 1; i < ordered.size(); i++)
+			assertThat(space.indexOf(ordered.get(i)))
+					.isGreaterThan(space.indexOf(ordered.get(i - 1)));
+	}
+
+}
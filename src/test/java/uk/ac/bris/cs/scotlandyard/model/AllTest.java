@@ -15,6 +15,27 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
-		ModelObserverTest.class
+		ModelObserverTest.class,
+		ModelHistoryTest.class,
+		ActionSpaceTest.class,
+		ReachabilityKernelTest.class,
+		BeliefTrackerTest.class,
+		BudgetTest.class,
+		DistanceOracleTest.class,
+		TicketOracleTest.class,
+		TablebaseTest.class,
+		TerritoryTest.class,
+		TransitionMatrixTest.class,
+		CaptureOddsTest.class,
+		AnalysisRegistryTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.AiSandboxTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.ai.MctsMrXAiTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.ai.AlphaBetaDetectiveAiTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.ai.TranspositionTableTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.ai.IsmctsDetectiveAiTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.ai.OpeningBookTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.ai.CaptureProverTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.ai.RolloutsTest.class,
+		uk.ac.bris.cs.scotlandyard.ui.ai.PlayoutBoardTest.class
 })
 public class AllTest {}
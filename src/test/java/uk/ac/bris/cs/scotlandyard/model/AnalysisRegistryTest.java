@@ -0,0 +1,121 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.MutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link AnalysisRegistry} shares one artefact per graph and finds chokepoints
+ */
+public class AnalysisRegistryTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph(int... edges) {
+		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
+				ValueGraphBuilder.undirected().build();
+		for (int i = 0; i < edges.length; i += 2)
+			graph.putEdgeValue(edges[i], edges[i + 1], ImmutableSet.of(Transport.TAXI));
+		return ImmutableValueGraph.copyOf(graph);
+	}
+
+	@Test public void testEqualGraphsShareArtefacts() throws IOException {
+		var adjacency =
+				AnalysisRegistry.get(ScotlandYard.standardGraph(), AnalysisRegistry.ADJACENCY);
+		assertThat(AnalysisRegistry.get(ScotlandYard.standardGraph(), AnalysisRegistry.ADJACENCY))
+				.isSameAs(adjacency);
+		assertThat(AnalysisRegistry.get(ScotlandYard.standardGraph(), AnalysisRegistry.KERNEL)
+				.adjacency()).isSameAs(adjacency);
+		assertThat(AnalysisRegistry.get(graph(1, 2), AnalysisRegistry.ADJACENCY))
+				.isNotSameAs(adjacency);
+	}
+
+	@Test public void testConcurrentRequestersComputeOnce() throws Exception {
+		var computed = new AtomicInteger();
+		var release = new CountDownLatch(1);
+		var key = new AnalysisRegistry.Key<>("slow", graph -> {
+			computed.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new Object();
+		});
+		var graph = graph(1, 2, 2, 3);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Object>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++)
+				results.add(executor.submit(() -> AnalysisRegistry.get(graph(1, 2, 2, 3), key)));
+			while (computed.get() == 0) Thread.onSpinWait();
+			release.countDown();
+			var first = results.get(0).get(10, TimeUnit.SECONDS);
+			for (var result : results) assertThat(result.get(10, TimeUnit.SECONDS)).isSameAs(first);
+			assertThat(AnalysisRegistry.get(graph, key)).isSameAs(first);
+			assertThat(computed).hasValue(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test public void testFailedComputationIsRetried() {
+		var calls = new AtomicInteger();
+		var key = new AnalysisRegistry.Key<>("flaky", graph -> {
+			if (calls.incrementAndGet() == 1) throw new IllegalStateException("first");
+			return "second";
+		});
+		assertThatThrownBy(() -> AnalysisRegistry.get(graph(1, 2), key))
+				.isInstanceOf(IllegalStateException.class);
+		assertThat(AnalysisRegistry.get(graph(1, 2), key)).isEqualTo("second");
+	}
+
+	@Test public void testChokepoints() {
+		// a triangle 1-2-3 hanging off 3 by a path 3-4-5, and a separate edge 6-7
+		var graph = graph(1, 2, 2, 3, 3, 1, 3, 4, 4, 5, 6, 7);
+		assertThat(AnalysisRegistry.get(graph, AnalysisRegistry.CHOKEPOINTS)).containsOnly(3, 4);
+	}
+
+	@Test public void testChokepointsDisconnectTheStandardGraph() throws IOException {
+		var graph = ScotlandYard.standardGraph();
+		var chokepoints = AnalysisRegistry.get(graph, AnalysisRegistry.CHOKEPOINTS);
+		int components = components(graph, -1);
+		for (int station : graph.nodes())
+			assertThat(components(graph, station) > components)
+					.as("station %d", station).isEqualTo(chokepoints.contains(station));
+	}
+
+	private static int components(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph,
+	                              int removed) {
+		var seen = new HashSet<Integer>();
+		int components = 0;
+		for (int start : graph.nodes()) {
+			if (start == removed || !seen.add(start)) continue;
+			components++;
+			var stack = new ArrayDeque<Integer>();
+			stack.push(start);
+			while (!stack.isEmpty())
+				for (int to : graph.adjacentNodes(stack.pop()))
+					if (to != removed && seen.add(to)) stack.push(to);
+		}
+		return components;
+	}
+}
@@ -0,0 +1,128 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the {@link BeliefTracker} against the travel log
+ */
+public class BeliefTrackerTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static ReachabilityKernel kernel;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+		kernel = ReachabilityKernel.create(TransportAdjacency.of(graph));
+	}
+
+	@Test public void testHiddenMoveSpreadsEvenlyAlongTicket() {
+		var tracker = new BeliefTracker(kernel, ImmutableList.of(1));
+		tracker.update(LogEntry.hidden(Ticket.TAXI));
+		var taxi = graph.adjacentNodes(1).stream()
+				.filter(n -> Objects.requireNonNull(graph.edgeValueOrDefault(1, n, ImmutableSet.of()))
+						.contains(Transport.TAXI))
+				.collect(ImmutableSet.toImmutableSet());
+		assertThat(tracker.size()).isEqualTo(taxi.size());
+		for (int station : taxi) {
+			assertThat(tracker.contains(station)).isTrue();
+			assertThat(tracker.weight(station)).isCloseTo(1.0 / taxi.size(), within(1e-9));
+		}
+	}
+
+	@Test public void testRevealCollapses() {
+		var tracker = new BeliefTracker(kernel, ScotlandYard.MRX_LOCATIONS);
+		tracker.update(LogEntry.hidden(Ticket.SECRET));
+		tracker.update(LogEntry.reveal(Ticket.BUS, 67));
+		assertThat(tracker.size()).isEqualTo(1);
+		assertThat(tracker.weight(67)).isEqualTo(1);
+		assertThat(tracker.entries()).isEqualTo(2);
+	}
+
+	@Test public void testExcludedStationsLoseTheirWeight() {
+		var tracker = new BeliefTracker(kernel, ImmutableList.of(1, 8, 9));
+		long[] occupied = new long[kernel.adjacency().words()];
+		occupied[0] |= 1L << 8;
+		tracker.exclude(occupied);
+		assertThat(tracker.contains(8)).isFalse();
+		assertThat(tracker.weight(1) + tracker.weight(9)).isCloseTo(1, within(1e-9));
+	}
+
+	@Test public void testIncrementalSyncAgreesWithReplay() {
+		var setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		var random = new Random(3);
+		var incremental = BeliefTracker.forSetup(kernel, setup);
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+		int actual = 106;
+		while (state.getAvailableMoves().size() > 0 && state.getMrXTravelLog().size() < 10) {
+			var moves = state.getAvailableMoves().asList();
+			Move move = moves.get(random.nextInt(moves.size()));
+			if (move.commencedBy().isMrX()) actual = move.accept(
+					new Move.FunctionalVisitor<>(m -> m.destination, m -> m.destination2));
+			state = state.advance(move);
+			incremental.sync(state);
+			assertThat(incremental.contains(actual) || !state.getWinner().isEmpty()).isTrue();
+		}
+		var replayed = BeliefTracker.forSetup(kernel, setup);
+		replayed.sync(state);
+		// syncing every ply also rules out where detectives stood earlier, never more
+		long[] stepwise = incremental.stations();
+		long[] once = replayed.stations();
+		for (int w = 0; w < once.length; w++) assertThat(stepwise[w] & ~once[w]).isZero();
+		assertThat(incremental.contains(actual) || !state.getWinner().isEmpty()).isTrue();
+		assertThat(incremental.entries()).isEqualTo(state.getMrXTravelLog().size());
+	}
+
+	@Test public void testSyncStartsOverWhenAnEarlierEntryDiffers() {
+		var setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		GameState start = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91));
+		// two double moves whose hidden logs end with the same bus entry
+		Move.DoubleMove taxiBus = null;
+		Move.DoubleMove secretBus = null;
+		for (Move move : start.getAvailableMoves()) {
+			if (!(move instanceof Move.DoubleMove twice) || twice.ticket2 != Ticket.BUS) continue;
+			if (twice.ticket1 == Ticket.TAXI && taxiBus == null) taxiBus = twice;
+			if (twice.ticket1 == Ticket.SECRET && secretBus == null) secretBus = twice;
+		}
+		assertThat(taxiBus).isNotNull();
+		assertThat(secretBus).isNotNull();
+		var first = start.advance(taxiBus);
+		var second = start.advance(secretBus);
+		assertThat(first.getMrXTravelLog().get(1)).isEqualTo(second.getMrXTravelLog().get(1));
+		assertThat(first.getMrXTravelLog().get(0)).isNotEqualTo(second.getMrXTravelLog().get(0));
+
+		var reused = BeliefTracker.forSetup(kernel, setup);
+		reused.sync(first);
+		reused.sync(second);
+		var fresh = BeliefTracker.forSetup(kernel, setup);
+		fresh.sync(second);
+		assertThat(reused.stations()).isEqualTo(fresh.stations());
+		assertThat(reused.weights()).isEqualTo(fresh.weights());
+	}
+
+}
@@ -0,0 +1,89 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests the {@link Budget} deadlines and the {@link Ai} default that accepts one
+ */
+public class BudgetTest {
+
+	@Test public void testDeadlinesAreAbsolute() {
+		long before = System.nanoTime();
+		var budget = Budget.of(new Pair<>(2L, TimeUnit.SECONDS));
+		assertThat(budget.start()).isGreaterThanOrEqualTo(before);
+		assertThat(budget.hardDeadline() - budget.start()).isEqualTo(TimeUnit.SECONDS.toNanos(2));
+		assertThat(budget.softDeadline()).isEqualTo(budget.hardDeadline());
+		assertThat(budget.remainingNanos()).isBetween(1L, TimeUnit.SECONDS.toNanos(2));
+		assertThat(budget.exhausted()).isFalse();
+	}
+
+	@Test public void testSoftDeadlineComesFirst() {
+		var budget = Budget.of(500, 2000, TimeUnit.MILLISECONDS);
+		assertThat(budget.softDeadline() - budget.start())
+				.isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+		assertThat(budget.searchDeadline(TimeUnit.MILLISECONDS.toNanos(250)))
+				.isEqualTo(budget.softDeadline());
+		assertThatThrownBy(() -> Budget.of(3, 2, TimeUnit.SECONDS))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test public void testSearchDeadlineLeavesMargin() {
+		var budget = Budget.of(10, TimeUnit.SECONDS);
+		long margin = TimeUnit.MILLISECONDS.toNanos(250);
+		assertThat(budget.searchDeadline(margin)).isEqualTo(budget.hardDeadline() - margin);
+		var brief = Budget.of(100, TimeUnit.MILLISECONDS);
+		assertThat(brief.hardDeadline() - brief.searchDeadline(margin))
+				.isBetween(1L, TimeUnit.MILLISECONDS.toNanos(10));
+	}
+
+	@Test public void testCancelledOrExpiredBudgetIsExhausted() {
+		var budget = Budget.of(1, TimeUnit.MINUTES);
+		budget.cancel();
+		assertThat(budget.cancelled()).isTrue();
+		assertThat(budget.exhausted()).isTrue();
+		var expired = Budget.of(0, TimeUnit.SECONDS);
+		assertThat(expired.exhausted()).isTrue();
+		assertThat(expired.cancelled()).isFalse();
+		assertThat(expired.remainingNanos()).isZero();
+	}
+
+	@Test public void testTimeoutIsWholeSeconds() {
+		assertThat(Budget.of(15, TimeUnit.SECONDS).timeout())
+				.isEqualTo(new Pair<>(15L, TimeUnit.SECONDS));
+		assertThat(Budget.of(2500, TimeUnit.MILLISECONDS).timeout())
+				.isEqualTo(new Pair<>(2L, TimeUnit.SECONDS));
+	}
+
+	@Test public void testAiWithoutBudgetSupportGetsSeconds() throws IOException {
+		var given = new AtomicReference<Pair<Long, TimeUnit>>();
+		Ai ai = new Ai() {
+			@Nonnull @Override public String name() { return "pair only"; }
+
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        Pair<Long, TimeUnit> timeoutPair) {
+				given.set(timeoutPair);
+				return board.getAvailableMoves().iterator().next();
+			}
+		};
+		var game = new MyGameStateFactory().build(
+				new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES),
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 106),
+				new Player(RED, ScotlandYard.defaultDetectiveTickets(), 91));
+		assertThat(game.getAvailableMoves())
+				.contains(ai.pickMove(game, Budget.of(3, TimeUnit.SECONDS)));
+		assertThat(given.get()).isEqualTo(new Pair<>(3L, TimeUnit.SECONDS));
+	}
+}
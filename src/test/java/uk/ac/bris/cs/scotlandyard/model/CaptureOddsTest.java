@@ -0,0 +1,86 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests the {@link CaptureOdds} heatmap and capture probability on small cases worked by hand
+ */
+public class CaptureOddsTest {
+
+	private static final int TAXI = TransportAdjacency.mask(Transport.TAXI);
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static int taxiDegree(int station) {
+		var matrix = TransitionMatrix.of(graph, TAXI);
+		double[] in = new double[matrix.nodes()];
+		in[station] = 1;
+		double[] out = new double[in.length];
+		matrix.step(in, out, 1);
+		int degree = 0;
+		for (double p : out) if (p > 0) degree++;
+		return degree;
+	}
+
+	@Test public void testOneRoundIsTheDetectivesNextStation() {
+		var odds = new CaptureOdds(graph);
+		int detective = 1;
+		double[] belief = new double[200];
+		int mrX = graph.adjacentNodes(detective).iterator().next();
+		belief[mrX] = 1;
+		odds.compute(belief, 0, new int[]{detective}, new int[]{TAXI}, 1);
+		int degree = taxiDegree(detective);
+		for (int station : graph.nodes()) {
+			boolean next = graph.adjacentNodes(detective).contains(station)
+					&& graph.edgeValueOrDefault(detective, station, ImmutableSet.of())
+					.contains(Transport.TAXI);
+			assertThat(odds.heatmap()[station]).as("station %d", station)
+					.isCloseTo(next ? 1.0 / degree : 0, within(1e-12));
+		}
+		// MrX with no tickets stays where he is
+		assertThat(odds.capture()).isCloseTo(odds.heatmap()[mrX], within(1e-12));
+	}
+
+	@Test public void testMoreDetectivesAndRoundsOnlyRaiseTheOdds() {
+		var setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		Board board = new MyGameStateFactory().build(setup,
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 106),
+				new Player(RED, ScotlandYard.defaultDetectiveTickets(), 105),
+				new Player(BLUE, ScotlandYard.defaultDetectiveTickets(), 91));
+		double[] belief = new double[200];
+		belief[106] = 1;
+		var odds = new CaptureOdds(graph);
+		double previous = 0;
+		for (int rounds = 1; rounds <= 4; rounds++) {
+			odds.compute(board, belief, rounds);
+			assertThat(odds.rounds()).isEqualTo(rounds);
+			assertThat(odds.capture()).isBetween(previous, 1.0);
+			previous = odds.capture();
+		}
+		assertThat(previous).isPositive();
+		double[] heatmap = odds.heatmap().clone();
+		int all = TransportAdjacency.ALL & ~TransportAdjacency.mask(Transport.FERRY);
+		odds.compute(belief, TransportAdjacency.ALL, new int[]{105}, new int[]{all}, 4);
+		for (int station : graph.nodes())
+			assertThat(heatmap[station]).isGreaterThanOrEqualTo(odds.heatmap()[station] - 1e-12);
+		assertThat(odds.control(1)[105]).isZero();
+	}
+}
@@ -0,0 +1,103 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests the {@link DistanceOracle} against the kernel's distance fields and its file cache
+ */
+public class DistanceOracleTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	@Test public void testDistancesMatchKernel() {
+		var oracle = DistanceOracle.load(graph, null);
+		var kernel = ReachabilityKernel.scalar(TransportAdjacency.of(graph));
+		byte[] expected = new byte[oracle.nodes()];
+		byte[] row = new byte[oracle.nodes()];
+		for (int mask = 1; mask <= TransportAdjacency.ALL; mask++) {
+			for (int source : graph.nodes()) {
+				kernel.distanceField(source, mask, expected);
+				oracle.row(mask, source, row);
+				assertThat(row).as("mask %d @%d", mask, source).containsExactly(expected);
+				assertThat(oracle.distance(mask, source, 1)).isEqualTo(expected[1]);
+			}
+		}
+		assertThat(oracle.cached()).isFalse();
+	}
+
+	@Test public void testSecondLoadMapsCachedFile() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		var built = DistanceOracle.load(graph, directory);
+		var loaded = DistanceOracle.load(graph, directory);
+		assertThat(built.cached()).isFalse();
+		assertThat(loaded.cached()).isTrue();
+		assertThat(loaded.fingerprint()).isEqualTo(built.fingerprint());
+		try (var files = Files.list(directory)) {
+			assertThat(files).hasSize(1);
+		}
+		for (int from : graph.nodes())
+			for (int to : graph.nodes())
+				assertThat(loaded.distance(from, to)).isEqualTo(built.distance(from, to));
+	}
+
+	@Test public void testCorruptFileIsRebuilt() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		var built = DistanceOracle.load(graph, directory);
+		Path file = directory.resolve("distances-" + built.fingerprint() + ".bin");
+		// a new file, truncating the mapped one in place would fault reads through it
+		Files.delete(file);
+		Files.write(file, new byte[]{1, 2, 3});
+		var rebuilt = DistanceOracle.load(graph, directory);
+		assertThat(rebuilt.cached()).isFalse();
+		assertThat(rebuilt.distance(1, 8)).isEqualTo(built.distance(1, 8));
+		assertThat(DistanceOracle.load(graph, directory).cached()).isTrue();
+	}
+
+	@Test public void testFingerprintFollowsEdges() {
+		var a = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 3, ImmutableSet.of(Transport.BUS))
+				.build();
+		var same = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(3, 2, ImmutableSet.of(Transport.BUS))
+				.putEdgeValue(2, 1, ImmutableSet.of(Transport.TAXI))
+				.build();
+		var other = ValueGraphBuilder.undirected().<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 3, ImmutableSet.of(Transport.TAXI))
+				.build();
+		assertThat(DistanceOracle.fingerprint(same)).isEqualTo(DistanceOracle.fingerprint(a));
+		assertThat(DistanceOracle.fingerprint(other)).isNotEqualTo(DistanceOracle.fingerprint(a));
+		var oracle = DistanceOracle.load(a, null);
+		assertThat(oracle.distance(1, 3)).isEqualTo(2);
+		assertThat(oracle.distance(TransportAdjacency.mask(Transport.TAXI), 1, 3)).isEqualTo(-1);
+	}
+
+	@Test public void testRejectsEmptyMask() {
+		var oracle = DistanceOracle.load(graph, null);
+		assertThatThrownBy(() -> oracle.distance(0, 1, 2))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,173 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
+import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.SECRET;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests undo/redo and fork related features of the model
+ * <br>
+ * <b>IMPORTANT: {@link GameState} must be fully implemented for any of the
+ * tests here to work properly!</b>
+ */
+public class ModelHistoryTest extends ParameterisedModelTestBase {
+
+	private Model createGame() {
+		return modelFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 111),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+	}
+
+	@Test public void testNewGameHasNothingToUndoOrRedo() {
+		Model model = createGame();
+		assertThat(model.getPly()).isZero();
+		assertThat(model.getLastPly()).isZero();
+		assertThatThrownBy(model::undo).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(model::redo).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testSeekOutOfRangeThrows() {
+		Model model = createGame();
+		model.chooseMove(taxi(MRX, 45, 46));
+		assertThatThrownBy(() -> model.seek(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThatThrownBy(() -> model.seek(2)).isInstanceOf(IndexOutOfBoundsException.class);
+		assertThat(model.getPly()).isEqualTo(1);
+	}
+
+	@Test public void testUndoRestoresPreviousBoard() {
+		Model model = createGame();
+		var start = new ImmutableBoard(model.getCurrentBoard());
+		model.chooseMove(taxi(MRX, 45, 46));
+		var afterMrX = new ImmutableBoard(model.getCurrentBoard());
+		model.chooseMove(taxi(RED, 111, 112));
+		assertThat(model.getPly()).isEqualTo(2);
+
+		model.undo();
+		assertThat(new ImmutableBoard(model.getCurrentBoard())).isEqualTo(afterMrX);
+		model.undo();
+		assertThat(new ImmutableBoard(model.getCurrentBoard())).isEqualTo(start);
+		assertThat(model.getPly()).isZero();
+		assertThat(model.getLastPly()).isEqualTo(2);
+	}
+
+	@Test public void testRedoReplaysUndoneMoves() {
+		Model model = createGame();
+		model.chooseMove(taxi(MRX, 45, 46));
+		model.chooseMove(taxi(RED, 111, 112));
+		var end = new ImmutableBoard(model.getCurrentBoard());
+		model.seek(0);
+		model.redo();
+		model.redo();
+		assertThat(new ImmutableBoard(model.getCurrentBoard())).isEqualTo(end);
+		assertThatThrownBy(model::redo).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test public void testMoveAfterUndoDiscardsRedo() {
+		Model model = createGame();
+		model.chooseMove(taxi(MRX, 45, 46));
+		model.chooseMove(taxi(RED, 111, 112));
+		model.undo();
+		model.chooseMove(taxi(RED, 111, 124));
+		assertThat(model.getPly()).isEqualTo(2);
+		assertThat(model.getLastPly()).isEqualTo(2);
+		assertThat(model.getCurrentBoard().getDetectiveLocation(RED)).contains(124);
+	}
+
+	@Test public void testUndoAndRedoNotifyObservers() {
+		Model model = createGame();
+		Observer observer = Mockito.mock(Observer.class);
+		InOrder ordered = Mockito.inOrder(observer);
+		model.chooseMove(taxi(MRX, 45, 46));
+		model.registerObserver(observer);
+		model.undo();
+		ordered.verify(observer).onModelChanged(Mockito.any(), Mockito.eq(Event.UNDO));
+		model.redo();
+		ordered.verify(observer).onModelChanged(Mockito.any(), Mockito.eq(Event.REDO));
+		ordered.verifyNoMoreInteractions();
+	}
+
+	@Test public void testForkIsIndependentOfOriginal() {
+		Model model = createGame();
+		model.chooseMove(taxi(MRX, 45, 46));
+		Observer observer = Mockito.mock(Observer.class);
+		model.registerObserver(observer);
+		var original = new ImmutableBoard(model.getCurrentBoard());
+
+		Model fork = model.fork();
+		assertThat(new ImmutableBoard(fork.getCurrentBoard())).isEqualTo(original);
+		assertThat(fork.getObservers()).isEmpty();
+		assertThat(fork.getPly()).isZero();
+		fork.chooseMove(taxi(RED, 111, 112));
+
+		assertThat(new ImmutableBoard(model.getCurrentBoard())).isEqualTo(original);
+		assertThat(model.getLastPly()).isEqualTo(1);
+		Mockito.verifyNoInteractions(observer);
+	}
+
+	@Test public void testForksAdvanceConcurrently() throws Exception {
+		Model model = createGame();
+		model.chooseMove(taxi(MRX, 45, 46));
+		var expected = new ImmutableBoard(model.getCurrentBoard());
+		var moves = ImmutableList.copyOf(model.getCurrentBoard().getAvailableMoves());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			var results = executor.invokeAll(moves.stream().map(move -> (Callable<Board>) () -> {
+				Model fork = model.fork();
+				fork.chooseMove(move);
+				return fork.getCurrentBoard();
+			}).collect(Collectors.toList()));
+			for (int i = 0; i < moves.size(); i++) {
+				var move = (Move.SingleMove) moves.get(i);
+				assertThat(results.get(i).get().getDetectiveLocation((Piece.Detective) move.commencedBy()))
+						.contains(move.destination);
+			}
+		} finally { executor.shutdownNow(); }
+		assertThat(new ImmutableBoard(model.getCurrentBoard())).isEqualTo(expected);
+	}
+
+	@Test public void testAdvanceDoesNotChangePreviousState() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 111));
+		var before = new ImmutableBoard(state);
+		state.advance(taxi(MRX, 45, 46));
+		assertThat(new ImmutableBoard(state)).isEqualTo(before);
+	}
+
+	@Test public void testBranchesKeepTheirOwnTravelLog() {
+		GameState state = gameStateFactory.build(standard24MoveSetup(),
+				new Player(MRX, defaultMrXTickets(), 45),
+				new Player(RED, defaultDetectiveTickets(), 111));
+		GameState taxi = state.advance(taxi(MRX, 45, 46));
+		GameState secret = state.advance(secret(MRX, 45, 46));
+		GameState further = taxi.advance(taxi(RED, 111, 112)).advance(taxi(MRX, 46, 47));
+		assertThat(state.getMrXTravelLog()).isEmpty();
+		assertThat(taxi.getMrXTravelLog()).containsExactly(LogEntry.hidden(TAXI));
+		assertThat(secret.getMrXTravelLog()).containsExactly(LogEntry.hidden(SECRET));
+		assertThat(further.getMrXTravelLog())
+				.containsExactly(LogEntry.hidden(TAXI), LogEntry.hidden(TAXI));
+	}
+
+}
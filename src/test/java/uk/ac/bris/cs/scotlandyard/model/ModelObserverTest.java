@@ -1,10 +1,17 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
+import com.google.common.collect.ImmutableMap;
+
 import org.junit.Test;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+
+import javax.annotation.Nonnull;
+
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Model.DeltaObserver;
 import uk.ac.bris.cs.scotlandyard.model.Model.Observer;
 import uk.ac.bris.cs.scotlandyard.model.Model.Observer.Event;
 
@@ -13,6 +20,7 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
 import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.DOUBLE;
 import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
 import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
 import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
@@ -156,6 +164,56 @@ public class ModelObserverTest extends ParameterisedModelTestBase {
 		assertThat(game.getCurrentBoard().getWinner()).containsExactlyInAnyOrder(MRX);
 	}
 
+	@Test public void testDeltaObserverReceivesSharedDelta() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 45);
+		var red = new Player(RED, defaultDetectiveTickets(), 111);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 94);
+		var deltas = new ArrayList<ModelDelta>();
+		DeltaObserver a = new DeltaObserver() {
+			@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+			                                     @Nonnull ModelDelta delta) { deltas.add(delta); }
+		};
+		DeltaObserver b = new DeltaObserver() {
+			@Override public void onModelChanged(@Nonnull Board board, @Nonnull Event event,
+			                                     @Nonnull ModelDelta delta) { deltas.add(delta); }
+		};
+		Model game = modelFactory.build(standard24MoveSetup(), mrX, red, blue);
+		game.registerObserver(a);
+		game.registerObserver(b);
+		game.chooseMove(x2(MRX, 45, TAXI, 46, TAXI, 47));
+		assertThat(deltas).hasSize(2);
+		assertThat(deltas.get(0)).isSameAs(deltas.get(1));
+		ModelDelta mrXDelta = deltas.get(0);
+		assertThat(mrXDelta.piece()).isEqualTo(MRX);
+		assertThat(mrXDelta.source()).isEqualTo(45);
+		assertThat(mrXDelta.destination()).isEqualTo(47);
+		assertThat(mrXDelta.appendedLog())
+				.containsExactly(LogEntry.hidden(TAXI), LogEntry.hidden(TAXI));
+		assertThat(mrXDelta.ticketChanges())
+				.containsOnlyKeys(MRX)
+				.containsEntry(MRX, ImmutableMap.of(TAXI, -2, DOUBLE, -1));
+		assertThat(mrXDelta.winner()).isEmpty();
+
+		deltas.clear();
+		game.chooseMove(taxi(RED, 111, 112));
+		ModelDelta redDelta = deltas.get(0);
+		assertThat(redDelta.appendedLog()).isEmpty();
+		assertThat(redDelta.ticketChanges())
+				.containsEntry(RED, ImmutableMap.of(TAXI, -1))
+				.containsEntry(MRX, ImmutableMap.of(TAXI, 1));
+	}
+
+	@Test public void testDeltaObserverFallsBackToPlainCallback() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 45);
+		var red = new Player(RED, defaultDetectiveTickets(), 111);
+		DeltaObserver observer = Mockito.mock(DeltaObserver.class, Mockito.CALLS_REAL_METHODS);
+		Model game = modelFactory.build(standard24MoveSetup(), mrX, red);
+		game.registerObserver(observer);
+		game.chooseMove(taxi(MRX, 45, 46));
+		Mockito.verify(observer)
+				.onModelChanged(boardEq(game.getCurrentBoard()), Mockito.eq(Event.MOVE_MADE));
+	}
+
 	// creates a argument matcher to check whether the board is *value* equal to the given board
 	private static Board boardEq(Board that) {
 		final var snapshot = new ImmutableBoard(that);
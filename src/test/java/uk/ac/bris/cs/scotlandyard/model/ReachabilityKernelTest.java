@@ -0,0 +1,117 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Objects;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link ReachabilityKernel}s against plain graph traversal
+ */
+public class ReachabilityKernelTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static TransportAdjacency adjacency;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+		adjacency = TransportAdjacency.of(graph);
+	}
+
+	private static ReachabilityKernel[] kernels() {
+		return new ReachabilityKernel[]{
+				ReachabilityKernel.scalar(adjacency), ReachabilityKernel.create(adjacency)};
+	}
+
+	private static long[] bits(int... nodes) {
+		long[] bits = new long[adjacency.words()];
+		for (int node : nodes) bits[node >>> 6] |= 1L << node;
+		return bits;
+	}
+
+	private static long[] neighbours(int node, Transport transport) {
+		return bits(graph.adjacentNodes(node).stream()
+				.filter(n -> transport == null || Objects.requireNonNull(
+						graph.edgeValueOrDefault(node, n, ImmutableSet.of())).contains(transport))
+				.mapToInt(Integer::intValue).toArray());
+	}
+
+	@Test public void testExpandMatchesGraph() {
+		for (ReachabilityKernel kernel : kernels()) {
+			long[] out = new long[adjacency.words()];
+			for (int node : graph.nodes()) {
+				kernel.expand(bits(node), out, TransportAdjacency.ALL);
+				assertThat(out).as("%s all @%d", kernel.name(), node)
+						.containsExactly(neighbours(node, null));
+				kernel.expand(bits(node), out, TransportAdjacency.mask(Transport.BUS));
+				assertThat(out).as("%s bus @%d", kernel.name(), node)
+						.containsExactly(neighbours(node, Transport.BUS));
+			}
+		}
+	}
+
+	@Test public void testBatchMatchesSingleExpansionsWithExclusion() {
+		int words = adjacency.words();
+		int[][] sets = {{1}, {46, 47, 58}, {67, 89, 140, 199}};
+		long[] in = new long[sets.length * words];
+		for (int b = 0; b < sets.length; b++)
+			System.arraycopy(bits(sets[b]), 0, in, b * words, words);
+		long[] exclude = bits(8, 45, 128);
+		for (ReachabilityKernel kernel : kernels()) {
+			long[] out = new long[in.length];
+			kernel.expandBatch(in, out, sets.length, TransportAdjacency.ALL, exclude);
+			for (int b = 0; b < sets.length; b++) {
+				long[] expected = new long[words];
+				kernel.expand(bits(sets[b]), expected, TransportAdjacency.ALL);
+				for (int w = 0; w < words; w++) expected[w] &= ~exclude[w];
+				assertThat(Arrays.copyOfRange(out, b * words, (b + 1) * words))
+						.containsExactly(expected);
+			}
+		}
+	}
+
+	@Test public void testDistanceFieldMatchesBreadthFirstSearch() {
+		int[] expected = new int[adjacency.nodes()];
+		for (ReachabilityKernel kernel : kernels()) {
+			byte[] distances = new byte[adjacency.nodes()];
+			for (int source : new int[]{1, 67, 199}) {
+				Arrays.fill(expected, -1);
+				expected[source] = 0;
+				var queue = new ArrayDeque<Integer>();
+				queue.add(source);
+				while (!queue.isEmpty()) {
+					int node = queue.poll();
+					for (int next : graph.adjacentNodes(node)) {
+						if (expected[next] != -1) continue;
+						expected[next] = expected[node] + 1;
+						queue.add(next);
+					}
+				}
+				kernel.distanceField(source, TransportAdjacency.ALL, distances);
+				for (int node : graph.nodes())
+					assertThat(distances[node]).as("%d -> %d", source, node)
+							.isEqualTo((byte) expected[node]);
+			}
+		}
+	}
+
+	@Test public void testFloodFillStopsAtStepLimit() {
+		for (ReachabilityKernel kernel : kernels()) {
+			long[] one = kernel.floodFill(bits(1), TransportAdjacency.ALL, 1);
+			long[] expected = neighbours(1, null);
+			expected[0] |= 1L << 1;
+			assertThat(one).containsExactly(expected);
+		}
+	}
+
+}
@@ -0,0 +1,221 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.GREEN;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.WHITE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests the {@link Tablebase} against a plain minimax over the same abstraction
+ */
+public class TablebaseTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static Tablebase tablebase;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+		tablebase = Tablebase.build(graph);
+	}
+
+	private static List<Integer> moves(int from) {
+		return graph.adjacentNodes(from).stream()
+				.filter(to -> Objects.requireNonNull(graph.edgeValueOrDefault(from, to,
+						ImmutableSet.of())).stream().anyMatch(t -> t != Transport.FERRY))
+				.collect(ImmutableList.toImmutableList());
+	}
+
+	private static boolean survives(int mrX, int[] detectives, int rounds) {
+		if (rounds == 0) return true;
+		for (int to : moves(mrX)) {
+			boolean occupied = false;
+			for (int d : detectives) occupied |= d == to;
+			if (!occupied && survivesReplies(to, detectives, 0, rounds)) return true;
+		}
+		return false;
+	}
+
+	private static boolean survivesReplies(int mrX, int[] detectives, int i, int rounds) {
+		if (i == detectives.length) return survives(mrX, detectives, rounds - 1);
+		int from = detectives[i];
+		boolean moved = false;
+		for (int to : moves(from)) {
+			boolean occupied = false;
+			for (int j = 0; j < detectives.length; j++) occupied |= j != i && detectives[j] == to;
+			if (occupied) continue;
+			moved = true;
+			if (to == mrX) return false;
+			detectives[i] = to;
+			boolean alive = survivesReplies(mrX, detectives, i + 1, rounds);
+			detectives[i] = from;
+			if (!alive) return false;
+		}
+		return moved || survivesReplies(mrX, detectives, i + 1, rounds);
+	}
+
+	@Test public void testOneDetectiveMatchesMinimax() {
+		var random = new SplittableRandom(1);
+		var nodes = List.copyOf(graph.nodes());
+		for (int i = 0; i < 200; i++) {
+			int mrX = nodes.get(random.nextInt(nodes.size()));
+			int detective = nodes.get(random.nextInt(nodes.size()));
+			if (mrX == detective) continue;
+			int survival = tablebase.survival(mrX, detective);
+			for (int rounds = 1; rounds <= 4; rounds++)
+				assertThat(survival >= rounds).as("%d vs %d in %d", mrX, detective, rounds)
+						.isEqualTo(survives(mrX, new int[]{detective}, rounds));
+		}
+	}
+
+	@Test public void testTwoDetectivesMatchMinimax() {
+		var random = new SplittableRandom(2);
+		var nodes = List.copyOf(graph.nodes());
+		int checked = 0;
+		while (checked < 100) {
+			// close positions, where the detectives can actually win
+			int mrX = nodes.get(random.nextInt(nodes.size()));
+			var near = moves(mrX);
+			int first = near.get(random.nextInt(near.size()));
+			var further = moves(first);
+			int second = further.get(random.nextInt(further.size()));
+			if (second == mrX || second == first) continue;
+			checked++;
+			int survival = tablebase.survival(mrX, first, second);
+			for (int rounds = 1; rounds <= 2; rounds++)
+				assertThat(survival >= rounds)
+						.as("%d vs %d, %d in %d", mrX, first, second, rounds)
+						.isEqualTo(survives(mrX, new int[]{first, second}, rounds));
+		}
+	}
+
+	@Test public void testWrittenTablebaseMapsBack() throws IOException {
+		var directory = folder.getRoot().toPath();
+		assertThat(Tablebase.open(graph, directory)).isNull();
+		tablebase.write(directory);
+		var opened = Tablebase.open(graph, directory);
+		assertThat(opened).isNotNull();
+		var random = new SplittableRandom(3);
+		for (int i = 0; i < 1000; i++) {
+			int mrX = 1 + random.nextInt(199);
+			int first = 1 + random.nextInt(199);
+			int second = 1 + random.nextInt(199);
+			assertThat(opened.survival(mrX, first)).isEqualTo(tablebase.survival(mrX, first));
+			assertThat(opened.survival(mrX, first, second))
+					.isEqualTo(tablebase.survival(mrX, first, second));
+		}
+	}
+
+	@Test public void testOutcomeNeedsTicketsToBeDecisive() {
+		var setup = new GameSetup(graph, ImmutableList.of(false, false, false));
+		var plenty = ImmutableMap.of(Ticket.TAXI, 5, Ticket.BUS, 5, Ticket.UNDERGROUND, 5);
+		int[] lost = null;
+		int[] won = null;
+		for (int mrX = 1; mrX < 200 && (lost == null || won == null); mrX++)
+			for (int first : moves(mrX))
+				for (int second : moves(first)) {
+					if (second == mrX) continue;
+					int survival = tablebase.survival(mrX, first, second);
+					if (survival == 0 && lost == null) lost = new int[]{mrX, first, second};
+					if (survival >= 3 && won == null) won = new int[]{mrX, first, second};
+				}
+		assertThat(lost).isNotNull();
+		assertThat(won).isNotNull();
+
+		assertThat(tablebase.outcome(game(setup, plenty, lost), lost[0]))
+				.isEqualTo(Tablebase.DETECTIVES_WIN);
+		var secret = ImmutableMap.of(Ticket.TAXI, 5, Ticket.BUS, 5, Ticket.UNDERGROUND, 5,
+				Ticket.SECRET, 1);
+		assertThat(tablebase.outcome(game(setup, secret, lost), lost[0]))
+				.isEqualTo(Tablebase.UNKNOWN);
+		assertThat(tablebase.outcome(game(setup, plenty, won), won[0]))
+				.isEqualTo(Tablebase.MRX_WINS);
+		var few = ImmutableMap.of(Ticket.TAXI, 2, Ticket.BUS, 5, Ticket.UNDERGROUND, 5);
+		assertThat(tablebase.outcome(game(setup, few, won), won[0])).isEqualTo(Tablebase.UNKNOWN);
+	}
+
+	@Test public void testOutcomeLeavesOutDistantDetectivesWithoutTickets() {
+		var setup = new GameSetup(graph, ImmutableList.of(false, false, false));
+		var plenty = ImmutableMap.of(Ticket.TAXI, 5, Ticket.BUS, 5, Ticket.UNDERGROUND, 5);
+		var distances = AnalysisRegistry.get(graph, AnalysisRegistry.DISTANCES);
+		for (int[] position : new int[][]{lost(), won()}) {
+			int expected = tablebase.outcome(game(setup, plenty, position), position[0]);
+			assertThat(expected).isNotEqualTo(Tablebase.UNKNOWN);
+			// two stations no one in the position can reach within the three rounds left
+			int[] far = graph.nodes().stream().mapToInt(Integer::intValue)
+					.filter(station -> {
+						for (int at : position) {
+							int distance = distances.distance(at, station);
+							if (distance >= 0 && distance <= 3) return false;
+						}
+						return true;
+					}).limit(2).toArray();
+			assertThat(far).hasSize(2);
+
+			var out = ImmutableMap.<Ticket, Integer>of();
+			assertThat(tablebase.outcome(game(setup, plenty, position,
+					new Player(GREEN, out, far[0]), new Player(WHITE, out, far[1])), position[0]))
+					.isEqualTo(expected);
+			// a third detective still moving, or one out of tickets within reach, could matter
+			assertThat(tablebase.outcome(game(setup, plenty, position,
+					new Player(GREEN, plenty, far[0])), position[0])).isEqualTo(Tablebase.UNKNOWN);
+			int near = moves(position[0]).stream()
+					.filter(to -> to != position[1] && to != position[2]).findFirst().orElseThrow();
+			assertThat(tablebase.outcome(game(setup, plenty, position,
+					new Player(GREEN, out, near)), position[0])).isEqualTo(Tablebase.UNKNOWN);
+		}
+	}
+
+	/**
+	 * @return MrX's and two detectives' stations where the detectives catch MrX at once
+	 */
+	private static int[] lost() { return find(0, 0); }
+
+	/**
+	 * @return MrX's and two detectives' stations where MrX survives at least three rounds
+	 */
+	private static int[] won() { return find(3, Tablebase.FOREVER); }
+
+	private static int[] find(int least, int most) {
+		for (int mrX = 1; mrX < 200; mrX++)
+			for (int first : moves(mrX))
+				for (int second : moves(first)) {
+					if (second == mrX) continue;
+					int survival = tablebase.survival(mrX, first, second);
+					if (survival >= least && survival <= most) return new int[]{mrX, first, second};
+				}
+		throw new AssertionError("No position survives " + least + " to " + most + " rounds");
+	}
+
+	private static Board.GameState game(GameSetup setup, ImmutableMap<Ticket, Integer> mrXTickets,
+	                                    int[] stations, Player... others) {
+		var plenty = ImmutableMap.of(Ticket.TAXI, 5, Ticket.BUS, 5, Ticket.UNDERGROUND, 5);
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, mrXTickets, stations[0]),
+				ImmutableList.<Player>builder()
+						.add(new Player(RED, plenty, stations[1]))
+						.add(new Player(BLUE, plenty, stations[2]))
+						.add(others).build());
+	}
+}
@@ -0,0 +1,137 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests the {@link Territory} regions against separate breadth first searches from every player
+ */
+public class TerritoryTest {
+
+	private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static ReachabilityKernel kernel;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+		kernel = ReachabilityKernel.create(TransportAdjacency.of(graph));
+	}
+
+	private static int[] distances(int mask, int... sources) {
+		int[] distances = new int[kernel.adjacency().nodes()];
+		Arrays.fill(distances, UNREACHABLE);
+		var queue = new ArrayDeque<Integer>();
+		for (int source : sources) {
+			distances[source] = 0;
+			queue.add(source);
+		}
+		while (!queue.isEmpty()) {
+			int at = queue.poll();
+			for (int to : graph.adjacentNodes(at)) {
+				boolean usable = Objects.requireNonNull(graph.edgeValueOrDefault(at, to,
+						ImmutableSet.of())).stream().anyMatch(t -> (mask & (1 << t.ordinal())) != 0);
+				if (usable && distances[to] == UNREACHABLE) {
+					distances[to] = distances[at] + 1;
+					queue.add(to);
+				}
+			}
+		}
+		return distances;
+	}
+
+	private static boolean has(long[] bits, int station) {
+		return (bits[station >>> 6] & (1L << station)) != 0;
+	}
+
+	@Test public void testRegionsMatchSeparateSearches() {
+		var territory = new Territory(kernel);
+		var nodes = List.copyOf(graph.nodes());
+		int[] choices = {TransportAdjacency.ALL & ~TransportAdjacency.mask(Transport.FERRY),
+				TransportAdjacency.mask(Transport.TAXI),
+				TransportAdjacency.mask(Transport.TAXI, Transport.BUS),
+				TransportAdjacency.mask(Transport.BUS, Transport.UNDERGROUND)};
+		var random = new SplittableRandom(46);
+		for (int round = 0; round < 200; round++) {
+			int[] locations = random.ints(1 + random.nextInt(5), 0, nodes.size())
+					.distinct().map(nodes::get).toArray();
+			int[] masks = random.ints(locations.length, 0, choices.length)
+					.map(i -> choices[i]).toArray();
+			int[] starts = random.ints(1 + random.nextInt(3), 0, nodes.size())
+					.map(nodes::get).toArray();
+			int mrXMask = random.nextBoolean() ? TransportAdjacency.ALL : choices[1];
+			long[] mrX = new long[kernel.adjacency().words()];
+			for (int start : starts) mrX[start >>> 6] |= 1L << start;
+
+			territory.compute(mrX, mrXMask, locations, masks);
+
+			int[] fromMrX = distances(mrXMask, starts);
+			int[][] fromDetective = new int[locations.length][];
+			for (int d = 0; d < locations.length; d++)
+				fromDetective[d] = distances(masks[d], locations[d]);
+			for (int station : nodes) {
+				int closest = UNREACHABLE;
+				int first = 0;
+				for (int[] distance : fromDetective) {
+					if (distance[station] < closest) {
+						closest = distance[station];
+						first = 1;
+					} else if (distance[station] == closest) first++;
+				}
+				boolean detectives = closest != UNREACHABLE && closest <= fromMrX[station];
+				String as = String.format("round %d station %d", round, station);
+				assertThat(has(territory.mrXRegion(), station)).as(as)
+						.isEqualTo(fromMrX[station] != UNREACHABLE && !detectives);
+				assertThat(has(territory.contested(), station)).as(as)
+						.isEqualTo(detectives && first > 1);
+				for (int d = 0; d < locations.length; d++)
+					assertThat(has(territory.region(d), station)).as(as + " detective " + d)
+							.isEqualTo(detectives && first == 1
+									&& fromDetective[d][station] == closest);
+			}
+		}
+	}
+
+	@Test public void testTicketsFilterTransports() {
+		var setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+		var taxiOnly = ImmutableMap.of(Ticket.TAXI, 10, Ticket.BUS, 0, Ticket.UNDERGROUND, 0,
+				Ticket.DOUBLE, 0, Ticket.SECRET, 0);
+		Board board = new MyGameStateFactory().build(setup,
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 106),
+				new Player(RED, taxiOnly, 13),
+				new Player(BLUE, ScotlandYard.defaultDetectiveTickets(), 89));
+		long[] mrX = new long[kernel.adjacency().words()];
+		mrX[106 >>> 6] |= 1L << 106;
+		var territory = new Territory(kernel);
+		territory.compute(board, mrX);
+		assertThat(territory.detectives()).isEqualTo(2);
+		assertThat(Territory.mask(board.getPlayerTickets(RED).orElseThrow()))
+				.isEqualTo(TransportAdjacency.mask(Transport.TAXI));
+		// without bus or underground tickets RED cannot get to the underground station 46 first
+		assertThat(has(territory.region(0), 46)).isFalse();
+		assertThat(territory.mrXSize()).isPositive();
+		int total = territory.mrXSize();
+		for (int d = 0; d < territory.detectives(); d++) total += territory.size(d);
+		for (long word : territory.contested()) total += Long.bitCount(word);
+		assertThat(total).isEqualTo(graph.nodes().size());
+	}
+}
@@ -0,0 +1,125 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link TicketOracle} against a search over stations and tickets left
+ */
+public class TicketOracleTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static TicketOracle oracle;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+		oracle = TicketOracle.of(graph);
+	}
+
+	/**
+	 * Breadth first over (station, taxi, bus, underground left)
+	 */
+	private static int search(int from, int to, int taxi, int bus, int underground) {
+		Map<Integer, Integer> seen = new HashMap<>();
+		var queue = new ArrayDeque<int[]>();
+		queue.add(new int[]{from, taxi, bus, underground, 0});
+		seen.put(key(from, taxi, bus, underground), 0);
+		while (!queue.isEmpty()) {
+			int[] s = queue.poll();
+			if (s[0] == to) return s[4];
+			for (int next : graph.adjacentNodes(s[0])) {
+				var transports = Objects.requireNonNull(
+						graph.edgeValueOrDefault(s[0], next, ImmutableSet.of()));
+				for (Transport t : transports) {
+					int[] n = {next, s[1], s[2], s[3], s[4] + 1};
+					if (t == Transport.TAXI) n[1]--;
+					else if (t == Transport.BUS) n[2]--;
+					else if (t == Transport.UNDERGROUND) n[3]--;
+					else continue;
+					if (n[1] < 0 || n[2] < 0 || n[3] < 0) continue;
+					if (seen.putIfAbsent(key(n[0], n[1], n[2], n[3]), n[4]) == null) queue.add(n);
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static int key(int node, int taxi, int bus, int underground) {
+		return ((node * 32 + taxi) * 32 + bus) * 32 + underground;
+	}
+
+	@Test public void testDistanceMatchesSearch() {
+		var random = new SplittableRandom(3);
+		var nodes = List.copyOf(graph.nodes());
+		for (int i = 0; i < 300; i++) {
+			int from = nodes.get(random.nextInt(nodes.size()));
+			int to = nodes.get(random.nextInt(nodes.size()));
+			int taxi = random.nextInt(12);
+			int bus = random.nextInt(9);
+			int underground = random.nextInt(5);
+			assertThat(oracle.distance(from, to, taxi, bus, underground))
+					.as("%d -> %d with %d/%d/%d", from, to, taxi, bus, underground)
+					.isEqualTo(search(from, to, taxi, bus, underground));
+		}
+	}
+
+	@Test public void testPlentyOfTicketsMatchesPlainDistance() {
+		var plain = DistanceOracle.load(graph, null);
+		int mask = TransportAdjacency.mask(Transport.TAXI, Transport.BUS, Transport.UNDERGROUND);
+		for (int from : graph.nodes())
+			for (int to : graph.nodes())
+				assertThat(oracle.distance(from, to, 31, 31, 31)).as("%d -> %d", from, to)
+						.isEqualTo(plain.distance(mask, from, to));
+	}
+
+	@Test public void testNoTicketsReachOnlyTheSource() {
+		assertThat(oracle.distance(1, 1, 0, 0, 0)).isZero();
+		assertThat(oracle.distance(1, 8, 0, 0, 0)).isEqualTo(-1);
+		assertThat(oracle.distance(1, 8, 1, 0, 0)).isEqualTo(1);
+	}
+
+	@Test public void testPlayerTicketsAreUsed() {
+		// 46 to 13 is one underground move, or several by taxi and bus
+		var without = new Player(Detective.RED, ImmutableMap.of(
+				Ticket.TAXI, 11, Ticket.BUS, 8, Ticket.UNDERGROUND, 0), 46);
+		var with = new Player(Detective.RED, ScotlandYard.defaultDetectiveTickets(), 46);
+		assertThat(oracle.distance(with, 13)).isEqualTo(1);
+		assertThat(oracle.distance(without, 13)).isGreaterThan(1);
+	}
+
+	@Test public void testReachableMatchesDistance() {
+		var random = new SplittableRandom(5);
+		var nodes = List.copyOf(graph.nodes());
+		for (int i = 0; i < 50; i++) {
+			int from = nodes.get(random.nextInt(nodes.size()));
+			int moves = random.nextInt(6);
+			int taxi = random.nextInt(6);
+			int bus = random.nextInt(4);
+			int underground = random.nextInt(2);
+			long[] reachable = oracle.reachable(from, moves, taxi, bus, underground);
+			for (int to = 0; to < oracle.nodes(); to++) {
+				int distance = oracle.distance(from, to, taxi, bus, underground);
+				assertThat((reachable[to >>> 6] & 1L << to) != 0).as("%d -> %d", from, to)
+						.isEqualTo(distance >= 0 && distance <= moves);
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Tests the {@link TransitionMatrix} against stepping a random walk over the graph directly
+ */
+public class TransitionMatrixTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = ScotlandYard.standardGraph();
+	}
+
+	private static boolean usable(int from, int to, int mask) {
+		return Objects.requireNonNull(graph.edgeValueOrDefault(from, to, ImmutableSet.of()))
+				.stream().anyMatch(t -> (mask & (1 << t.ordinal())) != 0);
+	}
+
+	private static double[] walk(double[] in, int mask) {
+		double[] out = new double[in.length];
+		for (int from : graph.nodes()) {
+			var next = graph.adjacentNodes(from).stream()
+					.filter(to -> usable(from, to, mask)).mapToInt(Integer::intValue).toArray();
+			if (next.length == 0) out[from] += in[from];
+			for (int to : next) out[to] += in[from] / next.length;
+		}
+		return out;
+	}
+
+	private static double[] random(SplittableRandom random, int nodes) {
+		double[] vector = new double[nodes];
+		double total = 0;
+		for (int node : graph.nodes()) total += vector[node] = random.nextDouble();
+		for (int i = 0; i < nodes; i++) vector[i] /= total;
+		return vector;
+	}
+
+	@Test public void testStepMatchesRandomWalkAndKeepsMass() {
+		var random = new SplittableRandom(47);
+		for (int mask : new int[]{TransportAdjacency.ALL, TransportAdjacency.mask(Transport.BUS),
+				TransportAdjacency.mask(Transport.UNDERGROUND, Transport.FERRY)}) {
+			var matrix = TransitionMatrix.of(graph, mask);
+			double[] in = random(random, matrix.nodes());
+			double[] out = new double[in.length];
+			matrix.step(in, out, 1);
+			assertThat(out).containsExactly(walk(in, mask), within(1e-12));
+			double total = 0;
+			for (double p : out) total += p;
+			assertThat(total).isCloseTo(1, within(1e-9));
+		}
+	}
+
+	@Test public void testPropagateStepsEveryVectorOfABatch() {
+		var random = new SplittableRandom(7);
+		int mask = TransportAdjacency.mask(Transport.TAXI, Transport.BUS);
+		var matrix = TransitionMatrix.of(graph, mask);
+		int nodes = matrix.nodes();
+		int batch = 3;
+		int steps = 4;
+		double[][] vectors = new double[batch][];
+		double[] in = new double[nodes * batch];
+		for (int b = 0; b < batch; b++) {
+			vectors[b] = random(random, nodes);
+			for (int s = 0; s < nodes; s++) in[s * batch + b] = vectors[b][s];
+		}
+		double[] out = new double[steps * nodes * batch];
+		matrix.propagate(in, out, batch, steps);
+		for (int k = 0; k < steps; k++) {
+			for (int b = 0; b < batch; b++) {
+				vectors[b] = walk(vectors[b], mask);
+				for (int s = 0; s < nodes; s++)
+					assertThat(out[(k * nodes + s) * batch + b]).as("step %d vector %d", k + 1, b)
+							.isCloseTo(vectors[b][s], within(1e-12));
+			}
+		}
+	}
+}
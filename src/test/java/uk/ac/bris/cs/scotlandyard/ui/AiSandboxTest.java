@@ -0,0 +1,140 @@
+package uk.ac.bris.cs.scotlandyard.ui;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the {@link AiSandbox} accounts for the threads an Ai starts and stops overruns
+ */
+public class AiSandboxTest {
+
+	private static GameState game;
+
+	@BeforeClass public static void setUp() throws IOException {
+		game = new MyGameStateFactory().build(
+				new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES),
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91));
+	}
+
+	private static Ai ai(BiFunction<Board, Budget, Move> pick) {
+		return new Ai() {
+			@Nonnull @Override public String name() { return "test"; }
+
+			@Nonnull @Override public Move pickMove(@Nonnull Board board,
+			                                        Pair<Long, TimeUnit> timeoutPair) {
+				return pickMove(board, Budget.of(timeoutPair));
+			}
+
+			@Nonnull @Override public Move pickMove(@Nonnull Board board, @Nonnull Budget budget) {
+				return pick.apply(board, budget);
+			}
+		};
+	}
+
+	private static long spin(long nanos) {
+		long end = System.nanoTime() + nanos;
+		long sum = 0;
+		while (System.nanoTime() < end) sum += new long[64].length;
+		return sum;
+	}
+
+	@Test public void testCountsThreadsTheAiStarts() throws Exception {
+		ExecutorService[] pool = new ExecutorService[1];
+		var sandbox = new AiSandbox(ai((board, budget) -> {
+			// started inside the sandbox, so its thread belongs to the Ai
+			if (pool[0] == null) pool[0] = Executors.newSingleThreadExecutor();
+			Future<Long> helper = pool[0].submit(() -> spin(TimeUnit.MILLISECONDS.toNanos(150)));
+			try {
+				helper.get();
+			} catch (Exception e) {
+				throw new AssertionError(e);
+			}
+			return board.getAvailableMoves().iterator().next();
+		}));
+		try {
+			sandbox.onStart();
+			var turn = sandbox.pickMove(game, Budget.of(5, TimeUnit.SECONDS));
+			assertThat(game.getAvailableMoves()).contains(turn.move());
+			assertThat(turn.overran()).isFalse();
+			assertThat(turn.cpuNanos()).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(50));
+			assertThat(turn.allocatedBytes()).isPositive();
+			sandbox.pickMove(game, Budget.of(5, TimeUnit.SECONDS));
+			var usage = sandbox.usage();
+			assertThat(usage.moves()).isEqualTo(2);
+			assertThat(usage.overruns()).isZero();
+			assertThat(usage.cpuNanos()).isGreaterThanOrEqualTo(turn.cpuNanos());
+			assertThat(usage.maxCpuNanos()).isLessThanOrEqualTo(usage.cpuNanos());
+		} finally {
+			sandbox.onTerminate();
+			if (pool[0] != null) pool[0].shutdownNow();
+		}
+	}
+
+	@Test public void testInterruptsOverrunningAi() {
+		var sandbox = new AiSandbox(ai((board, budget) -> {
+			// ignores the budget until interrupted
+			while (!Thread.currentThread().isInterrupted()) Thread.onSpinWait();
+			return board.getAvailableMoves().iterator().next();
+		}), 2, TimeUnit.SECONDS);
+		try {
+			var budget = Budget.of(100, TimeUnit.MILLISECONDS);
+			var turn = sandbox.pickMove(game, budget);
+			assertThat(turn.overran()).isTrue();
+			assertThat(turn.move()).isNotNull();
+			assertThat(budget.cancelled()).isTrue();
+			assertThat(sandbox.fenced()).isFalse();
+			assertThat(sandbox.usage().overruns()).isEqualTo(1);
+		} finally { sandbox.onTerminate(); }
+	}
+
+	@Test public void testFencesOffAiIgnoringInterrupts() {
+		var release = new AtomicBoolean();
+		var calls = new AtomicInteger();
+		var sandbox = new AiSandbox(ai((board, budget) -> {
+			calls.incrementAndGet();
+			while (!release.get()) Thread.onSpinWait();
+			return board.getAvailableMoves().iterator().next();
+		}), 100, TimeUnit.MILLISECONDS);
+		try {
+			var turn = sandbox.pickMove(game, Budget.of(100, TimeUnit.MILLISECONDS));
+			assertThat(turn.move()).isNull();
+			assertThat(turn.overran()).isTrue();
+			assertThat(sandbox.fenced()).isTrue();
+			assertThat(sandbox.pickMove(game, Budget.of(1, TimeUnit.SECONDS)).move()).isNull();
+			assertThat(calls.get()).isEqualTo(1);
+		} finally {
+			release.set(true);
+			sandbox.onTerminate();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the bundled {@link AlphaBetaDetectiveAi} finds captures and keeps to its deadline
+ */
+public class AlphaBetaDetectiveAiTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Test public void testPicksAvailableMoveBeforeDeadline() {
+		var ai = new AlphaBetaDetectiveAi(2, 4);
+		GameState game = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+		game = game.advance(game.getAvailableMoves().iterator().next());
+		long start = System.nanoTime();
+		Move move = ai.pickMove(game, new Pair<>(300L, TimeUnit.MILLISECONDS));
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(300));
+		assertThat(game.getAvailableMoves()).contains(move);
+		assertThat(ai.lastDepth()).isPositive();
+	}
+
+	@Test public void testCapturesRevealedMrX() {
+		// reveal MrX's first move so the detective knows exactly where he is
+		var revealFirst = new GameSetup(setup.graph, ImmutableList.<Boolean>builder()
+				.add(true).addAll(setup.moves.subList(1, setup.moves.size())).build());
+		int destination = setup.graph.adjacentNodes(106).stream()
+				.filter(n -> taxi(106, n)).findFirst().orElseThrow();
+		int detective = setup.graph.adjacentNodes(destination).stream()
+				.filter(n -> n != 106 && taxi(n, destination)).findFirst().orElseThrow();
+		GameState game = new MyGameStateFactory().build(revealFirst,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), detective));
+		game = game.advance(game.getAvailableMoves().stream()
+				.filter(m -> m instanceof SingleMove && ((SingleMove) m).destination == destination)
+				.findFirst().orElseThrow());
+		Move move = new AlphaBetaDetectiveAi(2, 4)
+				.pickMove(game, new Pair<>(300L, TimeUnit.MILLISECONDS));
+		assertThat(((SingleMove) move).destination).isEqualTo(destination);
+	}
+
+	private static boolean taxi(int from, int to) {
+		return Objects.requireNonNull(setup.graph.edgeValueOrDefault(from, to, ImmutableSet.of()))
+				.contains(Transport.TAXI);
+	}
+
+}
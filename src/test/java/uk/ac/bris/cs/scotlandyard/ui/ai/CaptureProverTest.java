@@ -0,0 +1,139 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+
+/**
+ * Tests the {@link CaptureProver} against a plain minimax over {@link GameState} where MrX is
+ * always revealed, so the detectives' view is the whole position
+ */
+public class CaptureProverTest {
+
+	private static GameSetup setup;
+	private static Distances distances;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(),
+				ImmutableList.copyOf(Collections.nCopies(24, true)));
+		distances = Distances.of(setup.graph);
+	}
+
+	private static boolean captures(GameState state, int rounds) {
+		var winner = state.getWinner();
+		if (!winner.isEmpty()) return !winner.contains(MRX);
+		if (Boards.isMrXTurn(state)) {
+			if (rounds == 1) return false;
+			for (Move move : state.getAvailableMoves())
+				if (!captures(state.advance(move), rounds - 1)) return false;
+			return true;
+		}
+		for (Move move : state.getAvailableMoves())
+			if (captures(state.advance(move), rounds)) return true;
+		return false;
+	}
+
+	/**
+	 * @return the position after MrX moved from one station to another, detectives to move
+	 */
+	private static GameState afterMrX(int from, int to, int detective) {
+		// no double moves, the prover ignores reveals between their two steps
+		var mrXTickets = ImmutableMap.of(Ticket.TAXI, 4, Ticket.BUS, 3, Ticket.UNDERGROUND, 3,
+				Ticket.SECRET, 2);
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, mrXTickets, from),
+				new Player(RED, defaultDetectiveTickets(), detective));
+		return state.advance(state.getAvailableMoves().stream()
+				.filter(m -> m instanceof SingleMove && ((SingleMove) m).destination == to)
+				.findFirst().orElseThrow());
+	}
+
+	private static CaptureProver prover(GameState state, int rounds) {
+		long[] belief = new long[distances.kernel().adjacency().words()];
+		var log = state.getMrXTravelLog();
+		int at = log.get(log.size() - 1).location().orElseThrow();
+		belief[at >>> 6] |= 1L << at;
+		return new CaptureProver(distances.kernel(), state, belief, rounds,
+				new CaptureProver.Table(1 << 16));
+	}
+
+	private static int solve(CaptureProver prover) {
+		return prover.solve(System.nanoTime() + TimeUnit.SECONDS.toNanos(10),
+				Budget.of(10, TimeUnit.SECONDS));
+	}
+
+	@Test public void testMatchesMinimaxWhenMrXIsAlwaysSeen() {
+		var random = new SplittableRandom(4);
+		var nodes = List.copyOf(setup.graph.nodes());
+		int proven = 0;
+		int checked = 0;
+		while (checked < 60) {
+			int from = nodes.get(random.nextInt(nodes.size()));
+			var near = List.copyOf(setup.graph.adjacentNodes(from));
+			int to = near.get(random.nextInt(near.size()));
+			var further = List.copyOf(setup.graph.adjacentNodes(to));
+			int detective = further.get(random.nextInt(further.size()));
+			if (detective == from || detective == to) continue;
+			GameState state;
+			try {
+				state = afterMrX(from, to, detective);
+			} catch (RuntimeException e) {
+				// only a ferry goes there
+				continue;
+			}
+			if (!state.getWinner().isEmpty()) continue;
+			checked++;
+			for (int rounds = 1; rounds <= 2; rounds++) {
+				var prover = prover(state, rounds);
+				boolean expected = captures(state, rounds);
+				assertThat(solve(prover))
+						.as("MrX %d to %d, detective %d, %d rounds", from, to, detective, rounds)
+						.isEqualTo(expected ? CaptureProver.PROVEN : CaptureProver.DISPROVEN);
+				if (expected) {
+					proven++;
+					Move first = state.getAvailableMoves().asList().get(prover.proof());
+					assertThat(captures(state.advance(first), rounds)).isTrue();
+				}
+			}
+		}
+		assertThat(proven).isPositive();
+	}
+
+	@Test public void testCannotProveCaptureOfUnseenMrX() {
+		// one detective next to two of the places MrX could be cannot cover both
+		int detective = 1;
+		var near = List.copyOf(setup.graph.adjacentNodes(detective));
+		long[] belief = new long[distances.kernel().adjacency().words()];
+		for (int at : near.subList(0, 2)) belief[at >>> 6] |= 1L << at;
+		int from = 106;
+		GameState state = afterMrX(from, setup.graph.adjacentNodes(from).iterator().next(),
+				detective);
+		var prover = new CaptureProver(distances.kernel(), state, belief, 1,
+				new CaptureProver.Table(1 << 10));
+		assertThat(solve(prover)).isEqualTo(CaptureProver.DISPROVEN);
+		assertThat(prover.proof()).isEqualTo(-1);
+	}
+}
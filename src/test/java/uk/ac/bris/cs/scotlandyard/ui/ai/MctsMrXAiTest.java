@@ -0,0 +1,220 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.MutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Budget;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket.TAXI;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the bundled {@link MctsMrXAi} keeps to the {@link uk.ac.bris.cs.scotlandyard.model.Ai}
+ * contract
+ */
+public class MctsMrXAiTest {
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static GameState game() {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+	}
+
+	@Test public void testPicksAvailableMoveBeforeDeadline() {
+		var ai = new MctsMrXAi(2);
+		try {
+			GameState game = game();
+			long start = System.nanoTime();
+			Move move = ai.pickMove(game, new Pair<>(500L, TimeUnit.MILLISECONDS));
+			assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(500));
+			assertThat(game.getAvailableMoves()).contains(move);
+			assertThat(ai.playoutsPerSecond()).isPositive();
+		} finally { ai.onTerminate(); }
+	}
+
+	@Test public void testPicksAvailableMoveOnDetectiveTurn() {
+		var ai = new MctsMrXAi(1);
+		GameState game = game();
+		game = game.advance(game.getAvailableMoves().iterator().next());
+		assertThat(game.getAvailableMoves())
+				.contains(ai.pickMove(game, new Pair<>(100L, TimeUnit.MILLISECONDS)));
+	}
+
+	@Test public void testReusesSubtreeAfterDetectivesReply() {
+		var ai = new MctsMrXAi(2);
+		try {
+			// few enough moves that the detective's replies are all searched
+			GameState game = new MyGameStateFactory().build(setup,
+					new Player(MRX, ImmutableMap.of(TAXI, 4), 106),
+					new Player(RED, defaultDetectiveTickets(), 91));
+			game = game.advance(ai.pickMove(game, new Pair<>(1000L, TimeUnit.MILLISECONDS)));
+			assertThat(ai.reusedPlayouts()).isZero();
+			while (!game.getAvailableMoves().iterator().next().commencedBy().isMrX())
+				game = game.advance(game.getAvailableMoves().iterator().next());
+			Move move = ai.pickMove(game, new Pair<>(200L, TimeUnit.MILLISECONDS));
+			assertThat(game.getAvailableMoves()).contains(move);
+			assertThat(ai.reusedPlayouts()).isPositive();
+		} finally { ai.onTerminate(); }
+	}
+
+	@Test public void testRootParallelModesPickAvailableMove() {
+		for (MctsMrXAi.Parallelism mode : MctsMrXAi.Parallelism.values()) {
+			var ai = new MctsMrXAi(3, mode);
+			try {
+				GameState game = game();
+				assertThat(game.getAvailableMoves()).as("%s", mode)
+						.contains(ai.pickMove(game, new Pair<>(300L, TimeUnit.MILLISECONDS)));
+			} finally { ai.onTerminate(); }
+		}
+	}
+
+	@Test public void testPondersBetweenTurns() throws InterruptedException {
+		var ai = new MctsMrXAi(1, MctsMrXAi.Parallelism.TREE, null, 1, 100);
+		try {
+			GameState game = new MyGameStateFactory().build(setup,
+					new Player(MRX, ImmutableMap.of(TAXI, 4), 106),
+					new Player(RED, defaultDetectiveTickets(), 91));
+			game = game.advance(ai.pickMove(game, new Pair<>(300L, TimeUnit.MILLISECONDS)));
+			Thread.sleep(200);
+			while (!game.getAvailableMoves().iterator().next().commencedBy().isMrX())
+				game = game.advance(game.getAvailableMoves().iterator().next());
+			Move move = ai.pickMove(game, new Pair<>(200L, TimeUnit.MILLISECONDS));
+			assertThat(game.getAvailableMoves()).contains(move);
+			assertThat(ai.ponderedPlayouts()).isPositive();
+			assertThat(ai.reusedPlayouts()).isPositive();
+			ai.stopPondering();
+			assertThat(Thread.getAllStackTraces().keySet().stream()
+					.filter(t -> t.getName().startsWith("mcts-mrx-ponder"))
+					.filter(t -> t.getState() == Thread.State.RUNNABLE)).isEmpty();
+		} finally { ai.onTerminate(); }
+	}
+
+	@Test public void testNoPonderingWhenDisabled() {
+		var ai = new MctsMrXAi(1, MctsMrXAi.Parallelism.TREE, null, 0, 50);
+		try {
+			GameState game = game();
+			game.advance(ai.pickMove(game, new Pair<>(200L, TimeUnit.MILLISECONDS)));
+			ai.stopPondering();
+			assertThat(ai.ponderedPlayouts()).isZero();
+		} finally { ai.onTerminate(); }
+	}
+
+	@Test public void testReturnsPromptlyOnceCancelled() throws Exception {
+		var ai = new MctsMrXAi(1, MctsMrXAi.Parallelism.TREE, null, 0, 50);
+		var pool = Executors.newSingleThreadExecutor();
+		try {
+			GameState game = game();
+			var budget = Budget.of(30, TimeUnit.SECONDS);
+			Future<Move> picked = pool.submit(() -> ai.pickMove(game, budget));
+			Thread.sleep(200);
+			long cancelled = System.nanoTime();
+			budget.cancel();
+			assertThat(game.getAvailableMoves()).contains(picked.get(5, TimeUnit.SECONDS));
+			assertThat(System.nanoTime() - cancelled).isLessThan(TimeUnit.SECONDS.toNanos(1));
+		} finally {
+			pool.shutdownNow();
+			ai.onTerminate();
+		}
+	}
+
+	@Test public void testWideningOpensEveryDestinationOnceFirst() {
+		GameState game = game();
+		var root = MctsNode.root(game, 106);
+		root.expand(Distances.of(setup.graph).table());
+		MctsNode[] children = root.children();
+		assertThat(children).hasSize(game.getAvailableMoves().size());
+		long destinations = Arrays.stream(children).mapToInt(c -> c.mrXLocation).distinct().count();
+		Set<Integer> seen = new HashSet<>();
+		for (int i = 0; i < destinations; i++) {
+			int at = children[i].mrXLocation;
+			assertThat(seen.add(at)).as("child %d", i).isTrue();
+			boolean plain = Arrays.stream(children)
+					.anyMatch(c -> c.mrXLocation == at && plain(c.move));
+			assertThat(plain(children[i].move)).as("child %d", i).isEqualTo(plain);
+		}
+		for (int i = 0; i < MctsNode.MIN_WIDTH * 4; i++) {
+			MctsNode child = root.select(Math.sqrt(2));
+			child.addVirtualLoss();
+			assertThat(Arrays.asList(children).indexOf(child))
+					.isLessThan(MctsNode.width(i + 1, children.length));
+		}
+		assertThat(MctsNode.width(0, children.length)).isEqualTo(MctsNode.MIN_WIDTH);
+		assertThat(MctsNode.width(Integer.MAX_VALUE, children.length)).isEqualTo(children.length);
+	}
+
+	@Test public void testDoubleMovesSharingTheirSecondTicketAreProvedApart() {
+		// MrX was seen at 2; TAXI then BUS can only end at 4, next to the detective, while SECRET
+		// then BUS may also end at 6 at the head of a line the detective is far from
+		MutableValueGraph<Integer, ImmutableSet<Transport>> graph =
+				ValueGraphBuilder.undirected().build();
+		int[][] edges = {{1, 2}, {2, 3}, {4, 7}, {7, 8}, {6, 9}, {9, 10}, {10, 11}};
+		for (int[] edge : edges)
+			graph.putEdgeValue(edge[0], edge[1], ImmutableSet.of(Transport.TAXI));
+		graph.putEdgeValue(3, 4, ImmutableSet.of(Transport.BUS));
+		graph.putEdgeValue(5, 6, ImmutableSet.of(Transport.BUS));
+		graph.putEdgeValue(2, 5, ImmutableSet.of(Transport.UNDERGROUND));
+		var rounds = new ArrayList<>(Collections.nCopies(6, false));
+		rounds.set(0, true);
+		var small = new GameSetup(ImmutableValueGraph.copyOf(graph),
+				ImmutableList.copyOf(rounds));
+		GameState game = new MyGameStateFactory().build(small,
+				new Player(MRX, defaultMrXTickets(), 1),
+				new Player(RED, defaultDetectiveTickets(), 8));
+		game = game.advance(new Move.SingleMove(MRX, 1, TAXI, 2));
+		game = game.advance(new Move.SingleMove(RED, 8, TAXI, 7));
+		var taxiBus = new Move.DoubleMove(MRX, 2, TAXI, 3, Ticket.BUS, 4);
+		var secretBus = new Move.DoubleMove(MRX, 2, Ticket.SECRET, 5, Ticket.BUS, 6);
+		assertThat(game.getAvailableMoves()).contains(taxiBus, secretBus);
+
+		var kernel = Distances.of(small.graph).kernel();
+		var budget = Budget.of(30, TimeUnit.SECONDS);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+		assertThat(MctsMrXAi.lostMoves(game, ImmutableList.of(taxiBus, secretBus), 2, kernel,
+				deadline, budget)).containsExactly(true, false);
+		assertThat(MctsMrXAi.lostMoves(game, ImmutableList.of(secretBus, taxiBus), 2, kernel,
+				deadline, budget)).containsExactly(false, true);
+	}
+
+	private static boolean plain(Move move) {
+		return move instanceof Move.SingleMove && ((Move.SingleMove) move).ticket != Ticket.SECRET;
+	}
+}
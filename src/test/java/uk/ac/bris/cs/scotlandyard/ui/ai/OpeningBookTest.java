@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.atlassian.fugue.Pair;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the {@link OpeningBook} file and {@link MctsMrXAi} answering from it
+ */
+public class OpeningBookTest {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+	}
+
+	private static GameState game(int red, int blue) {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), red),
+				new Player(BLUE, defaultDetectiveTickets(), blue));
+	}
+
+	@Test public void testStandardStartsCoverEveryCombination() {
+		// 12 MrX stations against every pair of the 14 detective stations
+		assertThat(OpeningBookGenerator.standardStarts(setup, 2)).hasSize(12 * 91);
+	}
+
+	@Test public void testWrittenBookAnswersSearchedPositions() throws IOException {
+		var searcher = new MctsMrXAi(1, MctsMrXAi.Parallelism.TREE, null);
+		Map<Long, Long> moves;
+		try {
+			moves = OpeningBookGenerator.generate(searcher,
+					ImmutableList.of(game(91, 94)), 2, 300);
+		} finally { searcher.onTerminate(); }
+		assertThat(moves).isNotEmpty();
+		Path file = folder.getRoot().toPath().resolve("book.bin");
+		OpeningBook.write(file, setup, moves);
+		var book = OpeningBook.open(file);
+		assertThat(book).isNotNull();
+		assertThat(book.size()).isEqualTo(moves.size());
+
+		GameState start = game(91, 94);
+		Move booked = book.probe(start);
+		assertThat(booked).isNotNull();
+		assertThat(OpeningBook.encode(booked)).isEqualTo(moves.get(OpeningBook.key(start)));
+		// detective colours are interchangeable
+		assertThat(book.probe(game(94, 91))).isEqualTo(booked);
+		assertThat(book.probe(game(91, 117))).isNull();
+
+		var ai = new MctsMrXAi(1, MctsMrXAi.Parallelism.TREE, book);
+		try {
+			long begin = System.nanoTime();
+			assertThat(ai.pickMove(start, new Pair<>(5000L, TimeUnit.MILLISECONDS)))
+					.isEqualTo(booked);
+			assertThat(System.nanoTime() - begin).isLessThan(TimeUnit.MILLISECONDS.toNanos(500));
+		} finally { ai.onTerminate(); }
+	}
+
+	@Test public void testBookOfAnotherSetupIsIgnored() throws IOException {
+		GameState start = game(91, 94);
+		Path file = folder.getRoot().toPath().resolve("book.bin");
+		var other = new GameSetup(setup.graph, ImmutableList.of(true, false, false));
+		OpeningBook.write(file, other,
+				Map.of(OpeningBook.key(start),
+						OpeningBook.encode(start.getAvailableMoves().iterator().next())));
+		var book = OpeningBook.open(file);
+		assertThat(book).isNotNull();
+		assertThat(book.probe(start)).isNull();
+	}
+
+	@Test public void testMissingOrCorruptFileIsNoBook() throws IOException {
+		Path file = folder.getRoot().toPath().resolve("book.bin");
+		assertThat(OpeningBook.open(file)).isNull();
+		Files.write(file, new byte[]{1, 2, 3});
+		assertThat(OpeningBook.open(file)).isNull();
+	}
+}
@@ -0,0 +1,88 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+
+/**
+ * Tests a {@link PlayoutBoard} stepped along random games lists the moves and winner the game
+ * state does
+ */
+public class PlayoutBoardTest {
+
+	private static GameSetup setup;
+	private static RolloutTables tables;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		tables = RolloutTables.of(setup.graph);
+	}
+
+	private static int winner(GameState state) {
+		var winner = state.getWinner();
+		if (winner.isEmpty()) return PlayoutBoard.NONE;
+		return winner.contains(MRX) ? PlayoutBoard.MRX_WINS : PlayoutBoard.DETECTIVES_WIN;
+	}
+
+	@Test public void testFollowsRandomGames() {
+		var random = new SplittableRandom(49);
+		for (int game = 0; game < 40; game++) {
+			var detectives = ScotlandYard.generateDetectiveLocations(game, 5);
+			var pieces = ScotlandYard.DETECTIVES.asList();
+			var players = ImmutableList.<Player>builder();
+			for (int i = 0; i < detectives.size(); i++)
+				players.add(new Player(pieces.get(i), ScotlandYard.defaultDetectiveTickets(),
+						detectives.get(i)));
+			int mrX = ScotlandYard.generateMrXLocation(game);
+			GameState state = new MyGameStateFactory().build(setup,
+					new Player(MRX, ScotlandYard.defaultMrXTickets(), mrX), players.build());
+			var board = new PlayoutBoard(state, mrX, tables, random);
+			while (true) {
+				assertThat(board.winner()).isEqualTo(winner(state));
+				if (!state.getWinner().isEmpty()) break;
+				var expected = new HashSet<Integer>();
+				for (Move move : state.getAvailableMoves()) expected.add(board.encode(move));
+				var listed = new HashSet<Integer>();
+				for (int i = 0, count = board.generate(); i < count; i++) listed.add(board.move(i));
+				assertThat(listed).isEqualTo(expected);
+
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				board.apply(board.encode(move));
+				state = state.advance(move);
+			}
+		}
+	}
+
+	@Test public void testCopyRestoresPosition() {
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, ScotlandYard.defaultMrXTickets(), 106),
+				new Player(Piece.Detective.RED, ScotlandYard.defaultDetectiveTickets(), 91));
+		var position = new PlayoutBoard(state, 106, tables, new SplittableRandom(1));
+		var board = new PlayoutBoard(position);
+		board.apply(board.encode(state.getAvailableMoves().iterator().next()));
+		board.copy(position);
+		assertThat(board.mrXToMove()).isTrue();
+		var listed = new HashSet<Integer>();
+		for (int i = 0, count = board.generate(); i < count; i++) listed.add(board.move(i));
+		var expected = new HashSet<Integer>();
+		for (Move move : state.getAvailableMoves()) expected.add(position.encode(move));
+		assertThat(listed).isEqualTo(expected);
+	}
+}
@@ -0,0 +1,85 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests the {@link RolloutTables} and the {@link Rollouts} policy played from them
+ */
+public class RolloutsTest {
+
+	private static GameSetup setup;
+	private static RolloutTables tables;
+
+	@BeforeClass public static void setUp() throws IOException {
+		setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		tables = RolloutTables.of(setup.graph);
+	}
+
+	@Test public void testTablesMatchGraph() {
+		byte[][] distances = tables.distances();
+		for (int station : setup.graph.nodes()) {
+			assertThat(tables.end(station) - tables.first(station))
+					.isEqualTo(setup.graph.adjacentNodes(station).size());
+			for (int target : ImmutableList.of(1, 67, 108, 199)) {
+				int chase = tables.chase(station, target);
+				assertThat(chase).isBetween(tables.first(station), tables.end(station) - 1);
+				int closest = Integer.MAX_VALUE;
+				for (int i = tables.first(station); i < tables.end(station); i++)
+					if (tables.transports(i) != 1 << ScotlandYard.Transport.FERRY.ordinal())
+						closest = Math.min(closest, distances[tables.neighbour(i)][target]);
+				assertThat((int) distances[tables.neighbour(chase)][target])
+						.as("%d to %d", station, target).isEqualTo(closest);
+			}
+		}
+	}
+
+	@Test public void testStopsEarlyWhenTheOutcomeIsClear() {
+		var random = new SplittableRandom(49);
+		// the detective as far away as it gets
+		int far = setup.graph.nodes().stream()
+				.max(Comparator.comparingInt(n -> tables.distances()[n][106])).orElseThrow();
+		GameState safe = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), far));
+		assertThat(Rollouts.mrXReward(safe, 106, tables, random)).isEqualTo(1);
+		// 106's only neighbours, 105 and 107, are both next to 91
+		GameState cornered = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91));
+		assertThat(Rollouts.mrXReward(cornered, 106, tables, random)).isZero();
+	}
+
+	@Test public void testRewardsStayInRange() {
+		var random = new SplittableRandom(7);
+		GameState game = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 106),
+				new Player(RED, defaultDetectiveTickets(), 91),
+				new Player(BLUE, defaultDetectiveTickets(), 94));
+		for (int i = 0; i < 200; i++) {
+			var moves = game.getAvailableMoves().asList();
+			var move = moves.get(random.nextInt(moves.size()));
+			assertThat(Rollouts.mrXReward(game.advance(move), MctsNode.destination(move), tables,
+					random, 1 + i % 12)).isBetween(0.0, 1.0);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.ui.ai.TranspositionTable.EXACT;
+import static uk.ac.bris.cs.scotlandyard.ui.ai.TranspositionTable.LOWER;
+import static uk.ac.bris.cs.scotlandyard.ui.ai.TranspositionTable.UPPER;
+
+/**
+ * Tests the {@link TranspositionTable}'s packing and replacement
+ */
+public class TranspositionTableTest {
+
+	@Test public void testStoredEntryRoundTrips() {
+		var table = new TranspositionTable(1);
+		table.store(42, -1234, 7, LOWER, 3);
+		long data = table.probe(42);
+		assertThat(TranspositionTable.score(data)).isEqualTo(-1234);
+		assertThat(TranspositionTable.depth(data)).isEqualTo(7);
+		assertThat(TranspositionTable.bound(data)).isEqualTo(LOWER);
+		assertThat(TranspositionTable.move(data)).isEqualTo(3);
+		assertThat(table.probe(43)).isZero();
+	}
+
+	@Test public void testNoMoveIsKept() {
+		var table = new TranspositionTable(1);
+		table.store(42, 0, 1, EXACT, -1);
+		assertThat(TranspositionTable.move(table.probe(42))).isEqualTo(-1);
+	}
+
+	@Test public void testShallowestSlotOfBucketIsReplaced() {
+		var table = new TranspositionTable(1);
+		long stride = table.capacity();
+		table.store(2, 0, 9, EXACT, 0);
+		table.store(2 + stride, 0, 3, UPPER, 0);
+		table.store(2 + 2 * stride, 0, 5, EXACT, 0);
+		assertThat(table.probe(2)).isNotZero();
+		assertThat(table.probe(2 + stride)).isZero();
+		assertThat(table.probe(2 + 2 * stride)).isNotZero();
+	}
+
+	@Test public void testEntriesOfEarlierSearchesAreReplacedFirst() {
+		var table = new TranspositionTable(1);
+		long stride = table.capacity();
+		table.store(2, 0, 9, EXACT, 0);
+		table.nextSearch();
+		table.store(2 + stride, 0, 3, EXACT, 0);
+		table.store(2 + 2 * stride, 0, 1, EXACT, 0);
+		assertThat(table.probe(2)).isZero();
+		assertThat(table.probe(2 + stride)).isNotZero();
+	}
+
+	@Test public void testShallowerResultDoesNotReplaceSameSearch() {
+		var table = new TranspositionTable(1);
+		table.store(42, 10, 8, EXACT, 0);
+		table.store(42, 20, 2, EXACT, 0);
+		assertThat(TranspositionTable.score(table.probe(42))).isEqualTo(10);
+	}
+
+}
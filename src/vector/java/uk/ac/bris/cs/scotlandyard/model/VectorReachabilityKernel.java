@@ -0,0 +1,72 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ReachabilityKernel} that ORs neighbour rows with {@code jdk.incubator.vector}.
+ * <br>
+ * Only compiled by the {@code vector} build profile and created reflectively by
+ * {@link ReachabilityKernel#create(TransportAdjacency)}.
+ */
+final class VectorReachabilityKernel extends ReachabilityKernel {
+
+	private final VectorSpecies<Long> species;
+	private final int upper;
+
+	VectorReachabilityKernel(@Nonnull TransportAdjacency adjacency) {
+		super(adjacency);
+		// the widest species that still fits a whole bitset, the standard map is 4 words
+		VectorSpecies<Long> widest = LongVector.SPECIES_64;
+		for (var candidate : Arrays.asList(
+				LongVector.SPECIES_128, LongVector.SPECIES_256, LongVector.SPECIES_512)) {
+			if (candidate.length() <= adjacency.words() &&
+					candidate.vectorBitSize() <= LongVector.SPECIES_PREFERRED.vectorBitSize())
+				widest = candidate;
+		}
+		this.species = widest;
+		this.upper = species.loopBound(adjacency.words());
+	}
+
+	@Nonnull @Override public String name() { return "vector(" + species.vectorBitSize() + ")"; }
+
+	@Override public void expandBatch(@Nonnull long[] in, @Nonnull long[] out, int count,
+	                                  int mask, @Nullable long[] exclude) {
+		long[] rows = adjacency.rows(mask);
+		int words = adjacency.words();
+		int lanes = species.length();
+		for (int b = 0; b < count; b++) {
+			int base = b * words;
+			Arrays.fill(out, base, base + words, 0L);
+			for (int w = 0; w < words; w++) {
+				long bits = in[base + w];
+				while (bits != 0) {
+					int row = ((w << 6) + Long.numberOfTrailingZeros(bits)) * words;
+					bits &= bits - 1;
+					int i = 0;
+					for (; i < upper; i += lanes) {
+						LongVector.fromArray(species, out, base + i)
+								.or(LongVector.fromArray(species, rows, row + i))
+								.intoArray(out, base + i);
+					}
+					for (; i < words; i++) out[base + i] |= rows[row + i];
+				}
+			}
+			if (exclude != null) {
+				int e = exclude.length == words ? 0 : base;
+				int i = 0;
+				for (; i < upper; i += lanes) {
+					LongVector.fromArray(species, out, base + i)
+							.and(LongVector.fromArray(species, exclude, e + i).not())
+							.intoArray(out, base + i);
+				}
+				for (; i < words; i++) out[base + i] &= ~exclude[e + i];
+			}
+		}
+	}
+}